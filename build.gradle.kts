@@ -30,6 +30,7 @@ plugins {
     alias(libs.plugins.detekt)
     alias(libs.plugins.nodeGradle)
     alias(libs.plugins.dokka)
+    alias(libs.plugins.jmh)
 }
 
 base {
@@ -294,6 +295,20 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// JMH microbenchmarks (src/jmh)
+// Run with `./gradlew jmh`, narrow down with `-PjmhIncludes=EventDispatchBenchmark`.
+// Results are written as JSON, so runs of different commits can be compared with any JMH visualizer.
+
+jmh {
+    jmhVersion = libs.versions.jmh
+    includes.addAll(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(emptyList()))
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+}
+
 // Detekt check
 
 detekt {
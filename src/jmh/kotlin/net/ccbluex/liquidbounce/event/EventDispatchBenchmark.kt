@@ -0,0 +1,99 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.event
+
+import net.ccbluex.liquidbounce.event.events.GameTickEvent
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures [EventManager.callEvent] for a varying number of hooks.
+ *
+ * [GameTickEvent] is used as payload because it is an object and carries no data,
+ * so the numbers reflect the dispatch path only and not the allocation of the event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class EventDispatchBenchmark {
+
+    /**
+     * Amount of hooks registered for the event
+     */
+    @Param("0", "1", "8", "32", "128")
+    var hookCount: Int = 0
+
+    /**
+     * Share of hooks whose [EventHook.handlerClass] is not running, in percent
+     */
+    @Param("0", "50", "90")
+    var notRunningPercent: Int = 0
+
+    /**
+     * Whether all hooks share one priority or are spread across many
+     */
+    @Param("false", "true")
+    var spreadPriorities: Boolean = false
+
+    private val hooks = mutableListOf<EventHook<GameTickEvent>>()
+
+    @Volatile
+    private var sink = 0L
+
+    @Setup(Level.Trial)
+    fun setup() {
+        val notRunning = hookCount * notRunningPercent / 100
+
+        repeat(hookCount) { i ->
+            val listener = if (i < notRunning) BenchmarkListener.NOT_RUNNING else BenchmarkListener.RUNNING
+            val priority: Short = if (spreadPriorities) (i % 16 - 8).toShort() else 0
+
+            hooks += listener.handler<GameTickEvent>(priority) { sink++ }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        for (hook in hooks) {
+            EventManager.unregisterEventHook(GameTickEvent::class.java, hook)
+        }
+        hooks.clear()
+    }
+
+    @Benchmark
+    fun callEvent(blackhole: Blackhole) {
+        blackhole.consume(EventManager.callEvent(GameTickEvent))
+    }
+
+    internal enum class BenchmarkListener(override val running: Boolean) : EventListener {
+        RUNNING(true),
+        NOT_RUNNING(false),
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.event
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.launch
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the [MutableSharedFlow.tryEmit] tail of [EventManager.callEvent].
+ *
+ * The flow is configured like the ones in [EventManager] (no replay, no extra buffer).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class EventFlowBenchmark {
+
+    private object Payload : Event()
+
+    /**
+     * Amount of collectors of the flow
+     */
+    @Param("0", "1", "4")
+    var collectors: Int = 0
+
+    private val flow = MutableSharedFlow<Event>(replay = 0, extraBufferCapacity = 0)
+    private lateinit var scope: CoroutineScope
+
+    @Setup(Level.Trial)
+    fun setup() {
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+        repeat(collectors) {
+            scope.launch {
+                flow.collect { }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Benchmark
+    fun tryEmit(blackhole: Blackhole) {
+        blackhole.consume(flow.tryEmit(Payload))
+    }
+
+    @Benchmark
+    fun subscriptionCountCheck(blackhole: Blackhole) {
+        if (flow.subscriptionCount.value != 0) {
+            blackhole.consume(flow.tryEmit(Payload))
+        }
+    }
+
+}
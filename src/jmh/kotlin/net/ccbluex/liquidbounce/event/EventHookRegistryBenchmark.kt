@@ -0,0 +1,86 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.event
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the copy-on-write cost of [EventHookRegistry] when hooks are added and removed,
+ * which happens on every [until]/[once] handler and every sequence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class EventHookRegistryBenchmark {
+
+    private class BenchmarkEvent : Event()
+
+    private object BenchmarkListener : EventListener {
+        override val running: Boolean get() = true
+    }
+
+    /**
+     * Amount of hooks already present in the registry
+     */
+    @Param("0", "16", "64", "256")
+    var existingHooks: Int = 0
+
+    private lateinit var registry: EventHookRegistry<BenchmarkEvent>
+    private lateinit var churnHook: EventHook<BenchmarkEvent>
+
+    @Setup(Level.Trial)
+    fun setup() {
+        registry = EventHookRegistry()
+        repeat(existingHooks) { i ->
+            registry.addIfAbsent(BenchmarkListener.newEventHook((i % 16 - 8).toShort()) { })
+        }
+        churnHook = BenchmarkListener.newEventHook(0) { }
+    }
+
+    @Benchmark
+    fun addThenRemove() {
+        registry.addIfAbsent(churnHook)
+        registry.remove(churnHook)
+    }
+
+    @Benchmark
+    fun addDuplicate() {
+        registry.addIfAbsent(churnHook)
+        registry.addIfAbsent(churnHook)
+        registry.remove(churnHook)
+    }
+
+    @Benchmark
+    fun iterate(blackhole: Blackhole) {
+        for (hook in registry) {
+            blackhole.consume(hook)
+        }
+    }
+
+}
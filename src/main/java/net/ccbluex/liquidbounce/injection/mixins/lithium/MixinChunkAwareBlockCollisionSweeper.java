@@ -22,7 +22,6 @@ package net.ccbluex.liquidbounce.injection.mixins.lithium;
 import com.llamalad7.mixinextras.injector.ModifyExpressionValue;
 import com.llamalad7.mixinextras.sugar.Local;
 import net.ccbluex.liquidbounce.common.ShapeFlag;
-import net.ccbluex.liquidbounce.event.EventManager;
 import net.ccbluex.liquidbounce.event.events.BlockShapeEvent;
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.block.state.BlockState;
@@ -60,8 +59,7 @@ public abstract class MixinChunkAwareBlockCollisionSweeper {
             return original;
         }
 
-        final BlockShapeEvent shapeEvent = EventManager.INSTANCE.callEvent(new BlockShapeEvent(blockState, this.pos, original));
-        return shapeEvent.getShape();
+        return BlockShapeEvent.hook(blockState, this.pos, original);
     }
 
 }
@@ -77,6 +77,7 @@ import net.ccbluex.liquidbounce.utils.block.ChunkScanner
 import net.ccbluex.liquidbounce.utils.client.GitInfo
 import net.ccbluex.liquidbounce.utils.client.InteractionTracker
 import net.ccbluex.liquidbounce.utils.client.ServerObserver
+import net.ccbluex.liquidbounce.utils.client.StartupTimeline
 import net.ccbluex.liquidbounce.utils.client.error.ErrorHandler
 import net.ccbluex.liquidbounce.utils.client.mc
 import net.ccbluex.liquidbounce.utils.combat.CombatManager
@@ -87,9 +88,11 @@ import net.ccbluex.liquidbounce.utils.inventory.InventoryManager
 import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.FIRST_PRIORITY
 import net.ccbluex.liquidbounce.utils.kotlin.Minecraft
 import net.ccbluex.liquidbounce.utils.mappings.EnvironmentRemapper
+import net.ccbluex.liquidbounce.utils.world.snapshot.WorldSnapshots
 import net.minecraft.resources.Identifier
 import net.minecraft.server.packs.resources.PreparableReloadListener
 import net.minecraft.server.packs.resources.ReloadableResourceManager
+import java.io.File
 import java.io.InputStream
 import java.util.Locale
 import java.util.concurrent.CompletableFuture
@@ -206,10 +209,10 @@ object LiquidBounce : EventListener {
 
         // Initialize managers and features
         Client
-        initializeManagers(workerDispatcher, renderThreadDispatcher)
-        initializeFeatures()
-        initializeResources(workerDispatcher)
-        prepareGuiStage(renderThreadDispatcher)
+        StartupTimeline.phase("Managers") { initializeManagers(workerDispatcher, renderThreadDispatcher) }
+        StartupTimeline.phase("Features") { initializeFeatures() }
+        StartupTimeline.phase("Resources") { initializeResources(workerDispatcher) }
+        StartupTimeline.phase("GUI stage") { prepareGuiStage(renderThreadDispatcher) }
 
         // Register shutdown hook in case [ClientShutdownEvent] is not called
         Runtime.getRuntime().addShutdownHook(Thread(::shutdownClient))
@@ -230,11 +233,12 @@ object LiquidBounce : EventListener {
             }
         }
 
-        // Load all configurations
-        ConfigSystem.loadAll()
+        // Load all configurations, parsing them off-thread
+        StartupTimeline.phase("Configs") { ConfigSystem.loadAll(workerDispatcher) }
 
         isInitialized = true
         logger.info("$CLIENT_NAME has been successfully initialized.")
+        StartupTimeline.write(File(ConfigSystem.rootFolder, "startup-timeline.txt"))
     }.exceptionally { throwable ->
         ErrorHandler.fatal(throwable, additionalMessage = "$CLIENT_NAME initializer")
     }
@@ -259,6 +263,7 @@ object LiquidBounce : EventListener {
 
         // Utility
         RenderedEntities
+        WorldSnapshots
         ChunkScanner
         InputTracker
 
@@ -293,12 +298,14 @@ object LiquidBounce : EventListener {
      */
     private fun initializeFeatures() {
         // Register commands and modules
-        CommandManager.registerInbuilt()
-        ModuleManager.registerInbuilt()
+        StartupTimeline.phase("Features/Commands") { CommandManager.registerInbuilt() }
+        StartupTimeline.phase("Features/Modules") { ModuleManager.registerInbuilt() }
 
         // Load user scripts
-        runCatching(ScriptManager::loadAll).onFailure { error ->
-            logger.error("ScriptManager was unable to load scripts.", error)
+        StartupTimeline.phase("Features/Scripts") {
+            runCatching(ScriptManager::loadAll).onFailure { error ->
+                logger.error("ScriptManager was unable to load scripts.", error)
+            }
         }
     }
 
@@ -443,6 +450,9 @@ object LiquidBounce : EventListener {
         // Save all configurations
         ConfigSystem.storeAll()
 
+        // Persists the compilation cache of the script engine, if supported
+        ScriptManager.closeEngine()
+
         // Shutdown browser
         BrowserBackendManager.stop()
     }
@@ -452,6 +462,8 @@ object LiquidBounce : EventListener {
      */
     @Suppress("unused")
     private val startHandler = handler<ClientStartEvent> {
+        StartupTimeline.start()
+
         runCatching {
             logger.info("Launching $CLIENT_NAME v$clientVersion by $CLIENT_AUTHOR")
             // Print client information
@@ -26,6 +26,8 @@ import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
 import net.ccbluex.liquidbounce.LiquidBounce
 import net.ccbluex.liquidbounce.api.interceptors.CacheBlacklistInterceptor
+import net.ccbluex.liquidbounce.api.interceptors.DeduplicatingInterceptor
+import net.ccbluex.liquidbounce.api.interceptors.RevalidatingInterceptor
 import net.ccbluex.liquidbounce.authlib.Authlib
 import net.ccbluex.liquidbounce.authlib.interceptor.DefaultHeaderInterceptor
 import net.ccbluex.liquidbounce.config.gson.util.readJson
@@ -34,6 +36,7 @@ import net.ccbluex.liquidbounce.utils.client.error.ErrorHandler
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.ccbluex.liquidbounce.utils.kotlin.Minecraft
 import net.ccbluex.liquidbounce.utils.render.toNativeImage
+import net.fabricmc.loader.api.FabricLoader
 import net.minecraft.ReportedException
 import net.minecraft.util.Util
 import okhttp3.Cache
@@ -55,7 +58,6 @@ import java.io.File
 import java.io.IOException
 import java.io.InputStream
 import java.io.Reader
-import java.util.Locale
 import java.util.concurrent.CancellationException
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.TimeUnit
@@ -115,10 +117,11 @@ object HttpClient {
         .followRedirects(true)
         .followSslRedirects(true).apply {
             try {
-                val file = File(
-                    System.getProperty("java.io.tmpdir"),
-                    "${LiquidBounce.CLIENT_NAME.lowercase(Locale.ROOT)}_http_cache",
-                )
+                // Kept next to the configs, so the cache survives cleanups of the temporary directory
+                val file = FabricLoader.getInstance().gameDir
+                    .resolve(LiquidBounce.CLIENT_NAME)
+                    .resolve("cache/http")
+                    .toFile()
                 file.mkdirs()
                 cache(Cache(file, 128L shl 20))
             } catch (e: IOException) {
@@ -161,9 +164,17 @@ object HttpClient {
      */
     @get:JvmStatic
     val client = defaultClient.newBuilder()
+        .addInterceptor(DeduplicatingInterceptor())
         .addInterceptor(clientHttpApiInterceptor)
+        .addNetworkInterceptor(RevalidatingInterceptor())
         .build()
 
+    /**
+     * Metrics of the requests made with [client]
+     */
+    val metrics: HttpMetrics.Snapshot
+        get() = HttpMetrics.snapshot()
+
     @Suppress("LongParameterList")
     suspend fun request(
         url: String,
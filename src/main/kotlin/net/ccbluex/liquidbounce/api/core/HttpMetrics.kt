@@ -0,0 +1,90 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.api.core
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Counts how requests of the API [HttpClient] were answered.
+ */
+object HttpMetrics {
+
+    private val requests = LongAdder()
+    private val deduplicated = LongAdder()
+    private val cacheHits = LongAdder()
+    private val revalidated = LongAdder()
+    private val networkMisses = LongAdder()
+
+    private val networkMillis = LongAdder()
+    private val maxNetworkMillis = AtomicLong()
+
+    /**
+     * @param cached answered from the cache without contacting the server
+     * @param notModified the server confirmed the cached response (304)
+     * @param networkMillis time between sending the request and receiving the response headers
+     */
+    internal fun recordResponse(cached: Boolean, notModified: Boolean, networkMillis: Long) {
+        requests.increment()
+
+        when {
+            cached -> cacheHits.increment()
+            notModified -> revalidated.increment()
+            else -> networkMisses.increment()
+        }
+
+        if (!cached) {
+            this.networkMillis.add(networkMillis)
+            maxNetworkMillis.accumulateAndGet(networkMillis, Math::max)
+        }
+    }
+
+    /**
+     * A request that got the response of an identical one in flight
+     */
+    internal fun recordDeduplicated() {
+        requests.increment()
+        deduplicated.increment()
+    }
+
+    fun snapshot(): Snapshot {
+        val networkRequests = revalidated.sum() + networkMisses.sum()
+
+        return Snapshot(
+            requests = requests.sum(),
+            deduplicated = deduplicated.sum(),
+            cacheHits = cacheHits.sum(),
+            revalidated = revalidated.sum(),
+            networkMisses = networkMisses.sum(),
+            averageNetworkMillis = if (networkRequests == 0L) 0.0 else networkMillis.sum() / networkRequests.toDouble(),
+            maxNetworkMillis = maxNetworkMillis.get(),
+        )
+    }
+
+    data class Snapshot(
+        val requests: Long,
+        val deduplicated: Long,
+        val cacheHits: Long,
+        val revalidated: Long,
+        val networkMisses: Long,
+        val averageNetworkMillis: Double,
+        val maxNetworkMillis: Long,
+    )
+
+}
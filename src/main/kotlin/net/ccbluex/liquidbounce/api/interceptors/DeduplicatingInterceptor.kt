@@ -0,0 +1,194 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.api.interceptors
+
+import net.ccbluex.liquidbounce.api.core.HttpMetrics
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * Interval in which waiting requests check if their own call has been canceled
+ */
+private const val WAIT_POLL_MILLIS = 50L
+
+/**
+ * Lets concurrent identical GET requests share one call.
+ *
+ * The first request of a URL and header set performs the call. If its body is textual or an image and at most
+ * [maxSharedBytes] large, it is buffered and every identical request which arrived meanwhile gets a copy.
+ * Otherwise, e.g. for downloads, or if the first call fails, the waiting requests perform their own calls.
+ */
+class DeduplicatingInterceptor(
+    private val maxSharedBytes: Long = 8L shl 20,
+) : Interceptor {
+
+    private val inFlight = ConcurrentHashMap<String, CompletableFuture<SharedResponse?>>()
+
+    private class SharedResponse(val response: Response, val body: ByteArray, val contentType: MediaType?) {
+        fun copyFor(request: Request): Response = response.newBuilder()
+            .request(request)
+            .body(body.toResponseBody(contentType))
+            .build()
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        if (request.method != "GET" || request.header("Range") != null) {
+            return proceed(chain, request)
+        }
+
+        val key = "${request.url}\n${request.headers}"
+        val pending = CompletableFuture<SharedResponse?>()
+        val leader = inFlight.putIfAbsent(key, pending)
+
+        if (leader != null) {
+            val shared = awaitLeader(chain, leader)
+            if (shared == null) {
+                return proceed(chain, request)
+            }
+
+            HttpMetrics.recordDeduplicated()
+            return shared.copyFor(request)
+        }
+
+        try {
+            val response = proceed(chain, request)
+
+            val body = readShareableBody(response)
+            if (body == null) {
+                inFlight.remove(key)
+                pending.complete(null)
+                return response
+            }
+
+            val contentType = response.body.contentType()
+            val shared = SharedResponse(response, body, contentType)
+
+            inFlight.remove(key)
+            pending.complete(shared)
+            return shared.copyFor(request)
+        } catch (e: Throwable) {
+            // The failure (e.g. the cancellation of the leading call) is not necessarily one of the waiting calls
+            inFlight.remove(key)
+            pending.complete(null)
+            throw e
+        }
+    }
+
+    /**
+     * Waits for the result of the leading call while honoring the cancellation and the timeout of this call.
+     *
+     * @return null if this call has to be performed on its own
+     */
+    private fun awaitLeader(chain: Interceptor.Chain, leader: CompletableFuture<SharedResponse?>): SharedResponse? {
+        val call = chain.call()
+        val timeoutNanos = call.timeout().timeoutNanos()
+        val start = System.nanoTime()
+
+        while (true) {
+            if (call.isCanceled()) {
+                throw IOException("Canceled")
+            }
+
+            val waitMillis = if (timeoutNanos > 0L) {
+                val remainingMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos - (System.nanoTime() - start))
+                if (remainingMillis <= 0L) {
+                    throw InterruptedIOException("timeout")
+                }
+                minOf(remainingMillis, WAIT_POLL_MILLIS)
+            } else {
+                WAIT_POLL_MILLIS
+            }
+
+            try {
+                return leader.get(waitMillis, TimeUnit.MILLISECONDS)
+            } catch (@Suppress("SwallowedException") _: TimeoutException) {
+                continue
+            } catch (@Suppress("SwallowedException") _: ExecutionException) {
+                return null
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw InterruptedIOException("Interrupted while waiting for an identical request").apply {
+                    initCause(e)
+                }
+            }
+        }
+    }
+
+    private fun proceed(chain: Interceptor.Chain, request: Request): Response {
+        val response = chain.proceed(request)
+        val networkResponse = response.networkResponse
+
+        HttpMetrics.recordResponse(
+            cached = networkResponse == null && response.cacheResponse != null,
+            notModified = networkResponse?.code == 304,
+            networkMillis = response.receivedResponseAtMillis - response.sentRequestAtMillis,
+        )
+        return response
+    }
+
+    private fun isShareable(response: Response): Boolean {
+        val contentLength = response.body.contentLength()
+        if (contentLength > maxSharedBytes) {
+            return false
+        }
+
+        val contentType = response.body.contentType() ?: return false
+        return when {
+            contentType.type == "image" -> contentLength >= 0
+            contentType.type == "text" || "json" in contentType.subtype -> true
+            else -> false
+        }
+    }
+
+    /**
+     * Buffers the body of [response] if it can be shared.
+     *
+     * @return null if the body cannot be shared, in which case it has not been consumed
+     */
+    private fun readShareableBody(response: Response): ByteArray? {
+        if (!isShareable(response)) {
+            return null
+        }
+
+        if (response.body.contentLength() >= 0) {
+            return response.body.bytes()
+        }
+
+        // The length is unknown (e.g. chunked), so it is only shared if it ends within the limit
+        val peeked = response.peekBody(maxSharedBytes + 1).bytes()
+        if (peeked.size > maxSharedBytes) {
+            return null
+        }
+
+        response.body.close()
+        return peeked
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.api.interceptors
+
+import okhttp3.Interceptor
+import okhttp3.Response
+
+/**
+ * Makes the cache revalidate JSON responses on every request.
+ *
+ * API responses usually carry an `ETag` or `Last-Modified` header but no `Cache-Control`. The cache would then
+ * guess a freshness lifetime from `Last-Modified` and serve possibly outdated data without asking the server.
+ * Marking them `no-cache` stores them anyway, but every use becomes a conditional request,
+ * which costs a `304 Not Modified` instead of the whole body.
+ */
+class RevalidatingInterceptor : Interceptor {
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val response = chain.proceed(request)
+
+        if (request.method != "GET" || response.code != 200 || response.header("Cache-Control") != null) {
+            return response
+        }
+
+        if (response.header("ETag") == null && response.header("Last-Modified") == null) {
+            return response
+        }
+
+        if (response.body.contentType()?.subtype?.contains("json") != true) {
+            return response
+        }
+
+        return response.newBuilder()
+            .header("Cache-Control", "no-cache")
+            .build()
+    }
+}
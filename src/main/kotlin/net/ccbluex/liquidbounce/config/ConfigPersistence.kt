@@ -0,0 +1,201 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.config
+
+import com.google.gson.JsonObject
+import net.ccbluex.liquidbounce.LiquidBounce.CLIENT_NAME
+import net.ccbluex.liquidbounce.config.types.Config
+import net.ccbluex.liquidbounce.utils.client.mc
+import org.apache.logging.log4j.LogManager
+import org.apache.logging.log4j.Logger
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Time a config waits after being marked dirty before it is written,
+ * so a burst of changes ends up in a single write
+ */
+private const val DEBOUNCE_MILLIS = 500L
+
+/**
+ * Time a config waits before it is written again after a failed write
+ */
+private const val RETRY_MILLIS = 5_000L
+
+/**
+ * Writes root [Config]s on a background thread.
+ *
+ * [ConfigSystem.store] only marks a config as dirty. Once the debounce window passed, the config is serialized
+ * into a tree on the render thread, which owns the values, and the writer thread atomically replaces its file
+ * with the tree. Pending configs are written by [flush].
+ */
+internal object ConfigPersistence {
+
+    private val logger: Logger = LogManager.getLogger("$CLIENT_NAME/ConfigPersistence")
+
+    private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "$CLIENT_NAME Config Writer").apply { isDaemon = true }
+    }
+
+    private val dirty: MutableSet<Config> = ConcurrentHashMap.newKeySet()
+
+    /**
+     * Makes sure a config is never written by two threads at once
+     */
+    private val writeLock = ReentrantLock()
+
+    private val writeStats = ConcurrentHashMap<String, WriteStats>()
+
+    private val snapshotSequence = AtomicLong()
+
+    /**
+     * Sequence of the latest snapshot written for every config, so an older snapshot never replaces a newer one
+     */
+    private val writtenSequences = ConcurrentHashMap<Config, Long>()
+
+    private class Snapshot(val tree: JsonObject, val sequence: Long)
+
+    /**
+     * Write statistics by [Config.loweredName]
+     */
+    val stats: Map<String, WriteStats>
+        get() = writeStats
+
+    /**
+     * Marks [config] as dirty and schedules a write, unless one is pending already.
+     */
+    fun schedule(config: Config) {
+        schedule(config, DEBOUNCE_MILLIS)
+    }
+
+    private fun schedule(config: Config, delayMillis: Long) {
+        if (dirty.add(config)) {
+            executor.schedule({ mc.execute { snapshotIfDirty(config) } }, delayMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Writes [config] on the calling thread, replacing a pending write. Must be called on the render thread.
+     */
+    fun writeNow(config: Config) {
+        dirty.remove(config)
+        val snapshot = snapshot(config) ?: return
+        writeOrRetry(config, snapshot)
+    }
+
+    /**
+     * Writes all pending configs on the calling thread. Must be called on the render thread.
+     */
+    fun flush() {
+        for (config in dirty.toList()) {
+            if (dirty.remove(config)) {
+                val snapshot = snapshot(config) ?: continue
+                writeOrRetry(config, snapshot)
+            }
+        }
+    }
+
+    /**
+     * Runs on the render thread, so the values are not changed while being serialized.
+     */
+    private fun snapshotIfDirty(config: Config) {
+        if (!dirty.remove(config)) {
+            return
+        }
+
+        val snapshot = snapshot(config) ?: return
+        executor.execute { writeOrRetry(config, snapshot) }
+    }
+
+    /**
+     * @return null if the config could not be serialized, in which case it is retried later
+     */
+    private fun snapshot(config: Config): Snapshot? {
+        return try {
+            Snapshot(ConfigSystem.serializeValueGroup(config), snapshotSequence.incrementAndGet())
+        } catch (e: Exception) {
+            logger.error("Failed to serialize config ${config.loweredName}, retrying", e)
+            schedule(config, RETRY_MILLIS)
+            null
+        }
+    }
+
+    private fun writeOrRetry(config: Config, snapshot: Snapshot) {
+        if (!write(config, snapshot)) {
+            // The dirty flag has been cleared already, so the change would never be written otherwise
+            schedule(config, RETRY_MILLIS)
+        }
+    }
+
+    /**
+     * @return false if the config could not be written
+     */
+    private fun write(config: Config, snapshot: Snapshot): Boolean = writeLock.withLock {
+        if ((writtenSequences[config] ?: 0L) > snapshot.sequence) {
+            // A newer snapshot has been written already
+            return true
+        }
+
+        val start = System.nanoTime()
+
+        if (!ConfigSystem.writeConfig(config, snapshot.tree)) {
+            return false
+        }
+        writtenSequences[config] = snapshot.sequence
+
+        val stats = writeStats.computeIfAbsent(config.loweredName) { WriteStats() }
+        stats.record(System.nanoTime() - start)
+        logger.debug("Wrote config ${config.loweredName} in ${stats.lastNanos / 1_000_000.0}ms")
+        true
+    }
+
+    class WriteStats {
+        @Volatile
+        var count = 0
+            private set
+
+        @Volatile
+        var lastNanos = 0L
+            private set
+
+        @Volatile
+        var maxNanos = 0L
+            private set
+
+        @Volatile
+        var totalNanos = 0L
+            private set
+
+        val averageNanos: Long
+            @Synchronized get() = if (count == 0) 0L else totalNanos / count
+
+        @Synchronized
+        internal fun record(nanos: Long) {
+            count++
+            lastNanos = nanos
+            maxNanos = maxOf(maxNanos, nanos)
+            totalNanos += nanos
+        }
+    }
+
+}
@@ -21,6 +21,13 @@ package net.ccbluex.liquidbounce.config
 import com.google.gson.Gson
 import com.google.gson.JsonElement
 import com.google.gson.JsonObject
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.runBlocking
 import net.ccbluex.liquidbounce.LiquidBounce
 import net.ccbluex.liquidbounce.LiquidBounce.CLIENT_NAME
 import net.ccbluex.liquidbounce.config.gson.fileGson
@@ -33,11 +40,13 @@ import net.ccbluex.liquidbounce.features.module.modules.combat.killaura.ModuleKi
 import net.ccbluex.liquidbounce.utils.client.mc
 import net.ccbluex.liquidbounce.utils.io.createZipArchive
 import net.ccbluex.liquidbounce.utils.io.extractZip
+import net.ccbluex.liquidbounce.utils.io.writeAtomically
 import org.apache.logging.log4j.LogManager
 import org.apache.logging.log4j.Logger
 import java.io.File
 import java.io.Reader
 import java.io.Writer
+import java.util.Locale
 
 /**
  * A hierarchy config system
@@ -87,38 +96,79 @@ object ConfigSystem {
 
     val configs = ArrayList<Config>()
 
+    /**
+     * Index of all value and value group keys, built lazily and dropped whenever keys change
+     */
+    @Volatile
+    private var keyIndex: KeyIndex? = null
+
+    private class KeyIndex(
+        /**
+         * Keyed by the lowercase key, the first value in tree order wins
+         */
+        val values: Map<String, Value<*>>,
+        val valueGroups: Map<String, ValueGroup>,
+        val valueKeys: KeyTrie,
+        val valueGroupKeys: KeyTrie,
+    )
+
     fun findValueByKey(key: String): Value<*>? {
-        ensureRootKeys()
-        val normalizedKey = normalizeKeyInput(key)
-        return configs.asSequence()
-            .flatMap { it.collectValuesRecursively().asSequence() }
-            .firstOrNull { it.key?.equals(normalizedKey, true) == true }
+        return keyIndex().values[normalizeKeyInput(key).lowercase(Locale.ROOT)]
     }
 
     fun findValueGroupByKey(key: String): ValueGroup? {
-        ensureRootKeys()
-        val normalizedKey = normalizeKeyInput(key)
-        return configs.asSequence()
-            .flatMap { it.collectValueGroupsRecursively().asSequence() }
-            .firstOrNull { it.key?.equals(normalizedKey, true) == true }
+        return keyIndex().valueGroups[normalizeKeyInput(key).lowercase(Locale.ROOT)]
     }
 
-    fun valueKeySequence(prefix: String): Sequence<String> = sequence {
-        ensureRootKeys()
-        for (valueGroup in configs) {
-            for (value in valueGroup.collectValuesRecursively(prefix)) {
-                value.key?.let { yield(it) }
-            }
+    /**
+     * Keys of all values starting with [prefix], ignoring case
+     */
+    fun valueKeySequence(prefix: String): Sequence<String> = keyIndex().valueKeys.keysWithPrefix(prefix)
+
+    /**
+     * Keys of all value groups starting with [prefix], ignoring case
+     */
+    fun valueGroupsKeySequence(prefix: String): Sequence<String> =
+        keyIndex().valueGroupKeys.keysWithPrefix(prefix)
+
+    /**
+     * Drops the key index, it is rebuilt on the next lookup.
+     * Called whenever keys are assigned by [ValueGroup.walkKeyPath] or roots are added.
+     */
+    fun invalidateKeyIndex() {
+        keyIndex = null
+    }
+
+    private fun keyIndex(): KeyIndex {
+        keyIndex?.let { return it }
+
+        return synchronized(this) {
+            ensureRootKeys()
+            keyIndex ?: buildKeyIndex().also { keyIndex = it }
         }
     }
 
-    fun valueGroupsKeySequence(prefix: String): Sequence<String> = sequence {
-        ensureRootKeys()
-        for (valueGroup in configs) {
-            for (child in valueGroup.collectValueGroupsRecursively(prefix)) {
-                child.key?.let { yield(it) }
+    private fun buildKeyIndex(): KeyIndex {
+        val values = Object2ObjectOpenHashMap<String, Value<*>>()
+        val valueGroups = Object2ObjectOpenHashMap<String, ValueGroup>()
+        val valueKeys = KeyTrie()
+        val valueGroupKeys = KeyTrie()
+
+        for (config in configs) {
+            for (value in config.collectValuesRecursively()) {
+                val key = value.key ?: continue
+                values.putIfAbsent(key.lowercase(Locale.ROOT), value)
+                valueKeys.add(key)
+            }
+            for (valueGroup in config.collectValueGroupsRecursively()) {
+                val key = valueGroup.key ?: continue
+                valueGroups.putIfAbsent(key.lowercase(Locale.ROOT), valueGroup)
+                valueGroupKeys.add(key)
             }
         }
+
+        logger.debug("Indexed ${values.size} value keys and ${valueGroups.size} value group keys")
+        return KeyIndex(values, valueGroups, valueKeys, valueGroupKeys)
     }
 
     /**
@@ -135,6 +185,7 @@ object ConfigSystem {
     fun root(config: Config): Config {
         config.walkInit()
         configs.add(config)
+        invalidateKeyIndex()
         return config
     }
 
@@ -142,6 +193,8 @@ object ConfigSystem {
      * Create a ZIP file backup of configs
      */
     fun backup(fileName: String, groups: Iterable<Config> = this.configs) {
+        flush()
+
         var zipFile = File(backupFolder, "$fileName.zip")
         var suffix = 1
         while (zipFile.exists()) {
@@ -162,31 +215,58 @@ object ConfigSystem {
         // before we overwrite some of them through [extractZip]
         storeAll()
         extractZip(zipFile, rootFolder)
-        loadAll()
+        runBlocking {
+            loadAll(Dispatchers.IO)
+        }
     }
 
     /**
-     * Loads all registered configs.
+     * Loads all registered configs, reading and parsing their files in parallel on [parseDispatcher].
+     * Only applying the parsed trees happens in the calling context.
      */
-    fun loadAll() {
-        for (valueGroup in configs) { // Make a new .json file to save our root config
-            load(valueGroup)
+    suspend fun loadAll(parseDispatcher: CoroutineDispatcher) {
+        val roots = configs.toList()
+        val trees = coroutineScope {
+            roots.map { config -> async(parseDispatcher) { parse(config) } }.awaitAll()
+        }
+
+        for ((config, tree) in roots.zip(trees)) {
+            applyTree(config, tree)
         }
     }
 
     fun load(config: Config) {
-        config.jsonFile.runCatching {
+        applyTree(config, parse(config))
+    }
+
+    /**
+     * Reads and parses the file of [config]. Does not touch the config itself, so it can run on any thread.
+     *
+     * @return the parsed tree, or null if there is no file or it is unreadable
+     */
+    private fun parse(config: Config): JsonElement? {
+        return config.jsonFile.runCatching {
             if (!exists()) {
                 // Do not try to load a non-existing file
-                return@runCatching
+                return@runCatching null
             }
 
             logger.debug("Reading config ${config.loweredName}...")
-            deserializeValueGroup(config, bufferedReader())
-        }.onSuccess {
-            logger.info("Successfully loaded config '${config.loweredName}'.")
+            fileGson.newJsonReader(bufferedReader()).use { reader -> reader.parseTree() }
         }.onFailure {
-            logger.error("Unable to load config ${config.loweredName}", it)
+            logger.error("Unable to read config ${config.loweredName}", it)
+        }.getOrNull()
+    }
+
+    private fun applyTree(config: Config, tree: JsonElement?) {
+        if (tree != null) {
+            runCatching {
+                deserializeValueGroup(config, tree)
+            }.onSuccess {
+                logger.info("Successfully loaded config '${config.loweredName}'.")
+            }.onFailure {
+                logger.error("Unable to load config ${config.loweredName}", it)
+            }
         }
 
         // After loading the config, we need to store it again to make sure all values are up to date
@@ -198,36 +278,56 @@ object ConfigSystem {
      * This will overwrite all existing files with the new values.
      *
      * These configs are root configs, which always create a new file with their name.
+     * Unlike [store], the files are written before this returns.
      */
     fun storeAll() {
-        configs.forEach(::store)
+        configs.forEach(ConfigPersistence::writeNow)
     }
 
     /**
      * Store config to a file (will be created if not exists).
      *
+     * The file is written in the background shortly after, so calling this many times in a row is cheap.
+     * Use [flush] to make sure the file is up to date.
+     *
      * The config should be known to the config system.
      */
-    fun store(config: Config) { // Make a new .json file to save our root config
-        config.jsonFile.runCatching {
-            if (!exists()) {
-                createNewFile().let { logger.debug("Created new file (status: $it)") }
-            }
+    fun store(config: Config) {
+        ConfigPersistence.schedule(config)
+    }
+
+    /**
+     * Writes all configs which have been stored but not written yet.
+     */
+    fun flush() {
+        ConfigPersistence.flush()
+    }
 
-            logger.debug("Writing config ${config.loweredName}...")
-            serializeValueGroup(config, bufferedWriter())
+    /**
+     * Writes [tree], serialized from [config] by [serializeValueGroup], to the file of [config],
+     * atomically replacing it. Does not touch the config itself, so it can run on any thread.
+     *
+     * @return false if writing failed
+     */
+    internal fun writeConfig(config: Config, tree: JsonObject): Boolean {
+        logger.debug("Writing config ${config.loweredName}...")
+
+        return try {
+            writeAtomically(config.jsonFile) { writer -> writeTree(tree, writer) }
             logger.info("Successfully saved config '${config.loweredName}'.")
-        }.onFailure {
-            logger.error("Unable to store config ${config.loweredName}", it)
+            true
+        } catch (e: Exception) {
+            logger.error("Unable to store config ${config.loweredName}", e)
+            false
         }
     }
 
     /**
-     * Serialize a config to a writer and close it
+     * Write a serialized config to a writer and close it
      */
-    private fun serializeValueGroup(valueGroup: ValueGroup, writer: Writer, gson: Gson = fileGson) {
+    private fun writeTree(tree: JsonElement, writer: Writer, gson: Gson = fileGson) {
         gson.newJsonWriter(writer).use {
-            gson.toJson(valueGroup, ValueGroup::class.javaObjectType, it)
+            gson.toJson(tree, it)
         }
     }
 
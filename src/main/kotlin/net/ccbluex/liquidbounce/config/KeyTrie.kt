@@ -0,0 +1,76 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.config
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.objects.ObjectArrayList
+import java.util.Locale
+
+/**
+ * A trie of dot separated keys, with one node per key segment. Matching ignores case.
+ */
+internal class KeyTrie {
+
+    private class Node {
+        var children: Object2ObjectOpenHashMap<String, Node>? = null
+        var keys: ObjectArrayList<String>? = null
+    }
+
+    private val root = Node()
+
+    var size = 0
+        private set
+
+    fun add(key: String) {
+        var node = root
+        for (segment in key.lowercase(Locale.ROOT).split('.')) {
+            val children = node.children ?: Object2ObjectOpenHashMap<String, Node>().also { node.children = it }
+            node = children.getOrPut(segment, ::Node)
+        }
+
+        (node.keys ?: ObjectArrayList<String>(1).also { node.keys = it }).add(key)
+        size++
+    }
+
+    /**
+     * Yields every key starting with [prefix], ignoring case. The last segment of [prefix] may be incomplete.
+     */
+    fun keysWithPrefix(prefix: String): Sequence<String> = sequence {
+        val segments = prefix.lowercase(Locale.ROOT).split('.')
+
+        var node = root
+        for (i in 0 until segments.lastIndex) {
+            node = node.children?.get(segments[i]) ?: return@sequence
+        }
+
+        val partial = segments.last()
+        val children = node.children ?: return@sequence
+        for ((segment, child) in children) {
+            if (segment.startsWith(partial)) {
+                yieldSubtree(child)
+            }
+        }
+    }
+
+    private suspend fun SequenceScope<String>.yieldSubtree(node: Node) {
+        node.keys?.let { yieldAll(it) }
+        node.children?.values?.forEach { child -> yieldSubtree(child) }
+    }
+
+}
@@ -25,6 +25,7 @@ import net.ccbluex.liquidbounce.config.gson.stategies.ProtocolExclude
 import net.ccbluex.liquidbounce.config.types.ValueType
 import net.ccbluex.liquidbounce.config.types.list.Tagged
 import net.ccbluex.liquidbounce.event.EventListener
+import net.ccbluex.liquidbounce.event.NarrowsParentRunning
 import net.ccbluex.liquidbounce.features.module.MinecraftShortcuts
 import net.ccbluex.liquidbounce.script.ScriptApiRequired
 import java.util.function.ToIntFunction
@@ -129,6 +130,7 @@ abstract class Mode(
      * We check if the parent is active and if the mode is active, if so
      * we handle the events.
      */
+    @get:NarrowsParentRunning
     override val running: Boolean
         get() = super.running && isSelected
 
@@ -24,6 +24,8 @@ import net.ccbluex.liquidbounce.config.gson.stategies.ProtocolExclude
 import net.ccbluex.liquidbounce.config.types.Value
 import net.ccbluex.liquidbounce.config.types.ValueType
 import net.ccbluex.liquidbounce.event.EventListener
+import net.ccbluex.liquidbounce.event.EventManager
+import net.ccbluex.liquidbounce.event.NarrowsParentRunning
 import net.ccbluex.liquidbounce.event.removeEventListenerScope
 import net.ccbluex.liquidbounce.features.misc.Toggleable
 import net.ccbluex.liquidbounce.features.module.MinecraftShortcuts
@@ -47,6 +49,7 @@ abstract class ToggleableValueGroup(
     @ScriptApiRequired
     @get:JvmName("getEnabledValue")
     val enabledValue: Value<Boolean> = boolean("Enabled", enabled)
+        .onChanged { EventManager.rebuildDispatchTables(this) }
         .also(::onEnabledValueRegistration)
         .onChange(::onToggled)
 
@@ -90,9 +93,13 @@ abstract class ToggleableValueGroup(
      * Because we pass the parent to the Listenable, we can simply
      * call the super.handleEvents() and it will return false if the upper-listenable is disabled.
      */
+    @get:NarrowsParentRunning
     override val running: Boolean
         get() = super.running && enabled
 
+    override val isDormant: Boolean
+        get() = !enabled
+
     final override fun parent() = parent
 
     protected fun <T : Mode> choices(name: String, active: T, choices: Array<T>) =
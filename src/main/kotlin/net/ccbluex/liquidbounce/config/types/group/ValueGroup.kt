@@ -138,6 +138,8 @@ open class ValueGroup(
                 currentValue.modes.forEach { choice -> choice.walkKeyPath(currentKey) }
             }
         }
+
+        ConfigSystem.invalidateKeyIndex()
     }
 
     /**
@@ -22,9 +22,11 @@ import it.unimi.dsi.fastutil.objects.ReferenceArrayList
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.suspendCancellableCoroutine
 import net.ccbluex.liquidbounce.event.events.GameTickEvent
-import net.ccbluex.liquidbounce.utils.client.mc
+import net.ccbluex.liquidbounce.utils.collection.TimingWheel
 import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.FIRST_PRIORITY
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.function.BooleanSupplier
+import java.util.function.Consumer
 import java.util.function.IntPredicate
 import java.util.function.Predicate
 import kotlin.coroutines.resume
@@ -36,16 +38,48 @@ object CoroutineTicker : EventListener {
     // Running callbacks
     private val runningList = ReferenceArrayList<BooleanSupplier>()
 
-    // Next tick callbacks
-    private val pendingList = ReferenceArrayList<BooleanSupplier>()
+    // Next tick callbacks, might be added from any thread
+    private val pendingQueue = ConcurrentLinkedQueue<BooleanSupplier>()
+
+    // Fixed delay callbacks, only touched on tick
+    private val timers = TimingWheel<Runnable>()
+
+    // Next tick fixed delay callbacks, might be added from any thread
+    private val pendingTimers = ConcurrentLinkedQueue<PendingTimer>()
+
+    private val fireTimer = Consumer<Runnable>(Runnable::run)
+
+    /**
+     * Amount of tasks registered with [register] which did not finish yet
+     */
+    val pendingTasks: Int
+        get() = runningList.size + pendingQueue.size
 
     /**
-     * Registers a task to be ticked.
+     * Amount of tasks registered with [schedule] which did not fire yet
+     */
+    val pendingTimerCount: Int
+        get() = timers.size + pendingTimers.size
+
+    /**
+     * Registers a task to be ticked. Can be called from any thread.
      *
      * @param task The callback to be run from next tick. It will be removed once returns true.
      */
     fun register(task: BooleanSupplier) {
-        mc.execute { pendingList.add(task) }
+        pendingQueue.add(task)
+    }
+
+    /**
+     * Runs [task] once on the [ticks]th tick, counting the next tick as the first one.
+     * Can be called from any thread.
+     *
+     * Unlike [register], the task costs nothing until it fires.
+     */
+    fun schedule(ticks: Int, task: Runnable) {
+        require(ticks > 0) { "ticks must be > 0" }
+
+        pendingTimers.add(PendingTimer(ticks, task))
     }
 
     /**
@@ -53,21 +87,28 @@ object CoroutineTicker : EventListener {
      * new ones are added and might be ticked in the same tick
      */
     fun tick() {
-        runningList.addAll(pendingList)
-        pendingList.clear()
+        // The pending timers have their first tick now
+        while (true) {
+            val timer = pendingTimers.poll() ?: break
+            timers.schedule(timers.currentTick + timer.ticks, timer.task)
+        }
+        timers.advance(fireTimer)
+
+        while (true) {
+            runningList.add(pendingQueue.poll() ?: break)
+        }
         runningList.removeIf(Predicate(BooleanSupplier::getAsBoolean))
     }
 
+    private class PendingTimer(val ticks: Int, val task: Runnable)
+
 }
 
 /**
  * Schedule a task to run at next [GameTickEvent], before all event handlers.
  */
 fun nextTick(runnable: Runnable) {
-    CoroutineTicker.register {
-        runnable.run()
-        true
-    }
+    CoroutineTicker.schedule(1, runnable)
 }
 
 /**
@@ -124,7 +165,13 @@ suspend fun waitTicks(ticks: Int) {
         return
     }
 
-    tickUntil { it >= ticks }
+    suspendCancellableCoroutine { continuation ->
+        CoroutineTicker.schedule(ticks.coerceAtLeast(1)) {
+            if (continuation.isActive) {
+                continuation.resume(Unit)
+            }
+        }
+    }
 }
 
 /**
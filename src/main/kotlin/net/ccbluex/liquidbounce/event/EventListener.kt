@@ -24,7 +24,7 @@ import java.util.function.Consumer
 import kotlin.properties.ReadWriteProperty
 import kotlin.reflect.KProperty
 
-class EventHook<T : Event>(
+open class EventHook<T : Event>(
     val handlerClass: EventListener,
     val priority: Short = 0,
     val handler: Consumer<T>,
@@ -44,6 +44,16 @@ interface EventListener : DebuggedOwner {
     val running: Boolean
         get() = parent()?.running ?: !isDestructed
 
+    /**
+     * Returns true if the listenable cannot be [running] until its state changes, e.g. a disabled module.
+     *
+     * Hooks of dormant listeners are left out of the dispatch tables of the [EventManager].
+     * This is only respected when every override of [running] in the hierarchy is marked
+     * with [NarrowsParentRunning]. Call [EventManager.rebuildDispatchTables] when the value changes.
+     */
+    val isDormant: Boolean
+        get() = false
+
     /**
      * Parent [EventListener]
      */
@@ -69,6 +79,14 @@ interface EventListener : DebuggedOwner {
 
 }
 
+/**
+ * Marks an override of [EventListener.running] that can only be true when the overridden implementation is,
+ * e.g. `super.running && enabled`.
+ */
+@Target(AnnotationTarget.PROPERTY_GETTER)
+@Retention(AnnotationRetention.RUNTIME)
+annotation class NarrowsParentRunning
+
 inline fun <E : Event> EventListener.newEventHook(
     priority: Short = 0,
     handler: Consumer<E>,
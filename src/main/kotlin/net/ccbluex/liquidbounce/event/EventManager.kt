@@ -129,6 +129,7 @@ import net.ccbluex.liquidbounce.event.events.TagEntityEvent
 import net.ccbluex.liquidbounce.event.events.TargetChangeEvent
 import net.ccbluex.liquidbounce.event.events.TickPacketProcessEvent
 import net.ccbluex.liquidbounce.event.events.TitleEvent
+import net.ccbluex.liquidbounce.event.events.TransferOrigin
 import net.ccbluex.liquidbounce.event.events.UseCooldownEvent
 import net.ccbluex.liquidbounce.event.events.UserLoggedInEvent
 import net.ccbluex.liquidbounce.event.events.UserLoggedOutEvent
@@ -142,6 +143,7 @@ import net.ccbluex.liquidbounce.features.misc.HideAppearance.isDestructed
 import net.ccbluex.liquidbounce.utils.client.error.ErrorHandler
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.minecraft.ReportedException
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Contains all classes of events. Used to create lookup tables ahead of time
@@ -275,27 +277,23 @@ internal val ALL_EVENT_CLASSES: Array<Class<out Event>> = arrayOf(
  */
 object EventManager {
 
-    private val registry: Map<Class<out Event>, EventHookRegistry<in Event>> =
+    private val slots: Map<Class<out Event>, EventSlot> =
         ALL_EVENT_CLASSES.associateWithTo(
             Reference2ObjectOpenHashMap(ALL_EVENT_CLASSES.size)
-        ) { EventHookRegistry() }
-
-    private val flows: Map<Class<out Event>, MutableSharedFlow<Event>> =
-        ALL_EVENT_CLASSES.associateWithTo(
-            Reference2ObjectOpenHashMap(ALL_EVENT_CLASSES.size)
-        ) { MutableSharedFlow(replay = 0, extraBufferCapacity = 0) }
+        ) { eventClass -> if (eventClass === PacketEvent::class.java) PacketEventSlot() else EventSlot() }
 
     /**
      * Used by handler methods
      */
     fun <T : Event> registerEventHook(eventClass: Class<out Event>, eventHook: EventHook<T>): EventHook<T> {
-        val handlers = registry[eventClass]
+        val slot = slots[eventClass]
             ?: error("The event '${eventClass.name}' is not registered in Events.kt::ALL_EVENT_CLASSES.")
 
         @Suppress("UNCHECKED_CAST")
-        val hook = eventHook as EventHook<in Event>
+        val hook = eventHook as EventHook<Event>
 
-        handlers.addIfAbsent(hook)
+        slot.registry.addIfAbsent(hook)
+        slot.invalidate()
 
         return eventHook
     }
@@ -304,22 +302,60 @@ object EventManager {
      * Unregisters a handler.
      */
     fun <T : Event> unregisterEventHook(eventClass: Class<out Event>, eventHook: EventHook<T>) {
+        val slot = slots[eventClass] ?: return
+
         @Suppress("UNCHECKED_CAST")
-        registry[eventClass]?.remove(eventHook as EventHook<in Event>)
+        slot.registry.remove(eventHook as EventHook<Event>)
+        slot.invalidate()
     }
 
     fun unregisterEventHandler(eventListener: EventListener) {
-        registry.values.forEach {
-            it.remove(eventListener)
+        slots.values.forEach {
+            it.registry.remove(eventListener)
+            it.invalidate()
         }
     }
 
     fun unregisterAll() {
-        registry.values.forEach {
-            it.clear()
+        slots.values.forEach {
+            it.registry.clear()
+            it.invalidate()
+        }
+    }
+
+    /**
+     * Rebuilds the dispatch tables of all events the next time they are called.
+     *
+     * Has to be called whenever [EventListener.isDormant] of a listener changes,
+     * otherwise its hooks might be skipped even though it is running.
+     */
+    fun rebuildDispatchTables() {
+        slots.values.forEach(EventSlot::invalidate)
+    }
+
+    /**
+     * Like [rebuildDispatchTables], but only for events which [listener] or one of its children has hooks of.
+     */
+    fun rebuildDispatchTables(listener: EventListener) {
+        for (slot in slots.values) {
+            if (slot.registry.any { it.handlerClass.isInHierarchyOf(listener) }) {
+                slot.invalidate()
+            }
         }
     }
 
+    /**
+     * Returns false if calling an event of [eventClass] currently has no effect,
+     * because no hook of a non-dormant listener is registered and nobody collects its flow.
+     *
+     * Allows very hot paths to skip creating the event at all.
+     */
+    fun hasHooks(eventClass: Class<out Event>): Boolean {
+        val slot = slots[eventClass] ?: return false
+
+        return slot.currentDispatchTable().isNotEmpty() || slot.flow.subscriptionCount.value != 0
+    }
+
     /**
      * Call event to listeners
      *
@@ -331,10 +367,10 @@ object EventManager {
         }
 
         val eventType = event.javaClass
-        val target = registry[eventType] ?: return event
+        val slot = slots[eventType] ?: return event
 
         event.isCompleted = false
-        for (eventHook in target) {
+        for (eventHook in slot.dispatchTableFor(event)) {
             if (!eventHook.handlerClass.running) {
                 continue
             }
@@ -358,8 +394,11 @@ object EventManager {
         }
         event.isCompleted = true
 
-        @Suppress("UNCHECKED_CAST")
-        (flows[event.javaClass] as MutableSharedFlow<T>).tryEmit(event)
+        // Nobody collects the flow, so there is no need to emit
+        val flow = slot.flow
+        if (flow.subscriptionCount.value != 0) {
+            flow.tryEmit(event)
+        }
 
         return event
     }
@@ -371,6 +410,150 @@ object EventManager {
      */
     fun <T : Event> flowOf(eventClass: Class<T>): SharedFlow<T> {
         @Suppress("UNCHECKED_CAST")
-        return flows[eventClass] as SharedFlow<T>
+        return slots[eventClass]!!.flow as SharedFlow<T>
+    }
+}
+
+/**
+ * Holds everything [EventManager] needs to dispatch one event class,
+ * so a call only needs a single lookup.
+ */
+private open class EventSlot {
+
+    val registry = EventHookRegistry<Event>()
+
+    val flow = MutableSharedFlow<Event>(replay = 0, extraBufferCapacity = 0)
+
+    /**
+     * Snapshot of [registry] without the hooks of dormant listeners.
+     *
+     * The remaining hooks still have to check [EventListener.running],
+     * because it might depend on anything (e.g. being in-game).
+     */
+    @Volatile
+    protected var dispatchTable: Array<EventHook<Event>> = emptyArray()
+        private set
+
+    /**
+     * Set when [dispatchTable] is outdated, so changing many hooks at once only rebuilds it once,
+     * on the next call of the event
+     */
+    @Volatile
+    private var dirty = false
+
+    fun invalidate() {
+        dirty = true
+    }
+
+    fun currentDispatchTable(): Array<EventHook<Event>> {
+        if (dirty) {
+            rebuildIfDirty()
+        }
+
+        return dispatchTable
+    }
+
+    private fun rebuildIfDirty() = synchronized(this) {
+        if (!dirty) {
+            return@synchronized
+        }
+
+        // Cleared first, so an invalidation while filtering is not lost
+        dirty = false
+        dispatchTable = registry.filterNot { it.handlerClass.isDormantInHierarchy() }.toTypedArray()
+        onRebuilt()
+    }
+
+    /**
+     * Called after [dispatchTable] has been replaced
+     */
+    protected open fun onRebuilt() {}
+
+    open fun dispatchTableFor(event: Event): Array<EventHook<Event>> = currentDispatchTable()
+
+}
+
+/**
+ * [EventSlot] of [PacketEvent], which derives a dispatch table per packet class and [TransferOrigin]
+ * from [dispatchTable]. [PacketEventHook]s only end up in the tables of packets they accept,
+ * while the order of all hooks stays the one of the [registry].
+ */
+private class PacketEventSlot : EventSlot() {
+
+    /**
+     * Indexed by [TransferOrigin.ordinal], filled lazily and replaced whenever [dispatchTable] is.
+     * It is replaced after [dispatchTable], so tables derived from an outdated one are never kept.
+     */
+    @Volatile
+    private var packetTables = newPacketTables()
+
+    override fun onRebuilt() {
+        packetTables = newPacketTables()
+    }
+
+    override fun dispatchTableFor(event: Event): Array<EventHook<Event>> {
+        val origin = (event as PacketEvent).origin
+        // Only rebuilds if needed, the table is read below after packetTables
+        currentDispatchTable()
+
+        return packetTables[origin.ordinal].computeIfAbsent(event.packet.javaClass) { packetClass ->
+            dispatchTable.filter { hook ->
+                hook !is PacketEventHook<*> || hook.accepts(packetClass, origin)
+            }.toTypedArray()
+        }
+    }
+
+    private fun newPacketTables() = Array(TransferOrigin.entries.size) {
+        ConcurrentHashMap<Class<*>, Array<EventHook<Event>>>()
     }
+
 }
+
+/**
+ * Caches if [EventListener.running] of a class can only be true when the one of its parent is,
+ * which is the case for the default implementation and overrides marked with [NarrowsParentRunning].
+ */
+private val runningNarrowsParent = object : ClassValue<Boolean>() {
+    override fun computeValue(type: Class<*>): Boolean {
+        val getter = runCatching { type.getMethod("getRunning") }.getOrNull() ?: return false
+
+        return getter.declaringClass === EventListener::class.java ||
+            getter.isAnnotationPresent(NarrowsParentRunning::class.java)
+    }
+}
+
+/**
+ * Returns true if this listener is [ancestor] or one of its children.
+ */
+private fun EventListener.isInHierarchyOf(ancestor: EventListener): Boolean = runCatching {
+    var listener: EventListener? = this
+    while (listener != null) {
+        if (listener === ancestor) {
+            return@runCatching true
+        }
+
+        listener = listener.parent()
+    }
+
+    false
+}.getOrDefault(false)
+
+/**
+ * Returns true if this listener or one of its parents is [EventListener.isDormant]
+ * and none of the [EventListener.running] implementations in between could bypass that.
+ *
+ * Hooks are often registered from constructors, so the hierarchy might not be fully initialized yet.
+ * In that case the listener is never considered dormant.
+ */
+private fun EventListener.isDormantInHierarchy(): Boolean = runCatching {
+    var listener = this
+    while (runningNarrowsParent.get(listener.javaClass)) {
+        if (listener.isDormant) {
+            return@runCatching true
+        }
+
+        listener = listener.parent() ?: return@runCatching false
+    }
+
+    false
+}.getOrDefault(false)
@@ -0,0 +1,63 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.event
+
+import net.ccbluex.liquidbounce.event.events.PacketEvent
+import net.ccbluex.liquidbounce.event.events.TransferOrigin
+import net.minecraft.network.protocol.Packet
+import java.util.function.Consumer
+
+/**
+ * An [EventHook] of [PacketEvent] which is only called for packets of [packetClass] (or subclasses)
+ * travelling in [origin], or both directions if it is null.
+ *
+ * The [EventManager] keeps a dispatch table per packet class and origin,
+ * so these hooks are not even called for other packets.
+ */
+class PacketEventHook<P : Packet<*>>(
+    handlerClass: EventListener,
+    priority: Short,
+    val packetClass: Class<P>,
+    val origin: TransferOrigin?,
+    handler: Consumer<PacketEvent>,
+) : EventHook<PacketEvent>(handlerClass, priority, handler) {
+
+    fun accepts(packetClass: Class<*>, origin: TransferOrigin): Boolean =
+        (this.origin == null || this.origin === origin) && this.packetClass.isAssignableFrom(packetClass)
+
+}
+
+/**
+ * Registers a [PacketEventHook] for packets of type [P].
+ *
+ * Example:
+ * ```kotlin
+ * val blockUpdateHandler = packetHandler<ClientboundBlockUpdatePacket>(TransferOrigin.INCOMING) { event, packet ->
+ *     // ...
+ * }
+ * ```
+ */
+inline fun <reified P : Packet<*>> EventListener.packetHandler(
+    origin: TransferOrigin? = null,
+    priority: Short = 0,
+    crossinline handler: (event: PacketEvent, packet: P) -> Unit,
+): PacketEventHook<P> = EventManager.registerEventHook(
+    PacketEvent::class.java,
+    PacketEventHook(this, priority, P::class.java, origin) { event -> handler(event, event.packet as P) },
+)
@@ -38,15 +38,21 @@ class FpsLimitEvent(var fps: Int) : Event()
 
 @Tag("clientPlayerData")
 @Suppress("unused")
-class ClientPlayerDataEvent(val playerData: PlayerData) : Event(), WebSocketEvent
+class ClientPlayerDataEvent(val playerData: PlayerData) : Event(), WebSocketEvent {
+    override val coalesce: Boolean get() = true
+}
 
 @Tag("clientPlayerEffect")
 @Suppress("unused")
-class ClientPlayerEffectEvent(val effects: List<MobEffectInstance>) : Event(), WebSocketEvent
+class ClientPlayerEffectEvent(val effects: List<MobEffectInstance>) : Event(), WebSocketEvent {
+    override val coalesce: Boolean get() = true
+}
 
 @Tag("clientPlayerInventory")
 @Suppress("unused")
-class ClientPlayerInventoryEvent(val inventory: PlayerInventoryData) : Event(), WebSocketEvent
+class ClientPlayerInventoryEvent(val inventory: PlayerInventoryData) : Event(), WebSocketEvent {
+    override val coalesce: Boolean get() = true
+}
 
 sealed class TitleEvent : CancellableEvent(), WebSocketEvent {
     sealed class TextContent : TitleEvent() {
@@ -22,6 +22,7 @@ package net.ccbluex.liquidbounce.event.events
 import net.ccbluex.liquidbounce.annotations.Tag
 import net.ccbluex.liquidbounce.event.CancellableEvent
 import net.ccbluex.liquidbounce.event.Event
+import net.ccbluex.liquidbounce.event.EventManager
 import net.minecraft.client.multiplayer.ClientLevel
 import net.minecraft.core.BlockPos
 import net.minecraft.network.protocol.game.ClientboundSectionBlocksUpdatePacket
@@ -31,7 +32,9 @@ import net.minecraft.world.entity.LivingEntity
 import net.minecraft.world.item.ItemStack
 import net.minecraft.world.level.ChunkPos
 import net.minecraft.world.level.block.Block
+import net.minecraft.world.level.block.Blocks
 import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.phys.shapes.Shapes
 import net.minecraft.world.phys.shapes.VoxelShape
 
 @Tag("worldChange")
@@ -50,7 +53,53 @@ class ChunkDeltaUpdateEvent(val packet: ClientboundSectionBlocksUpdatePacket) :
 class BlockChangeEvent(val blockPos: BlockPos, val newState: BlockState) : Event()
 
 @Tag("blockShape")
-class BlockShapeEvent(var state: BlockState, var pos: BlockPos, var shape: VoxelShape) : Event()
+class BlockShapeEvent(var state: BlockState, var pos: BlockPos, var shape: VoxelShape) : Event() {
+
+    companion object {
+
+        /**
+         * Collision sweeps call this for every visited block, so the event instance is reused per thread.
+         * A handler might run a nested collision query though, which then gets its own instance.
+         */
+        private val reusable = ThreadLocal.withInitial { Reusable() }
+
+        /**
+         * Calls the event without allocating, or not at all if nobody would receive it.
+         *
+         * @return the shape the block should collide with
+         */
+        @JvmStatic
+        fun hook(state: BlockState, pos: BlockPos, shape: VoxelShape): VoxelShape {
+            if (!EventManager.hasHooks(BlockShapeEvent::class.java)) {
+                return shape
+            }
+
+            val reusable = reusable.get()
+            if (reusable.inUse) {
+                return EventManager.callEvent(BlockShapeEvent(state, pos, shape)).shape
+            }
+
+            reusable.inUse = true
+            try {
+                val event = reusable.event
+                event.state = state
+                event.pos = pos
+                event.shape = shape
+
+                return EventManager.callEvent(event).shape
+            } finally {
+                reusable.inUse = false
+            }
+        }
+
+    }
+
+    private class Reusable {
+        val event = BlockShapeEvent(Blocks.AIR.defaultBlockState(), BlockPos.ZERO, Shapes.empty())
+        var inUse = false
+    }
+
+}
 
 @Tag("blockBreakingProgress")
 class BlockBreakingProgressEvent(val pos: BlockPos) : Event()
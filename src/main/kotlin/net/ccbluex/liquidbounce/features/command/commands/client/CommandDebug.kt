@@ -142,6 +142,8 @@ object CommandDebug : Command.Factory {
             }
         })
 
+        add("http", publicGson.toJsonTree(HttpClient.metrics))
+
         addProperty("config", autoConfigPaste)
 
         add("activeModules", JsonArray().apply {
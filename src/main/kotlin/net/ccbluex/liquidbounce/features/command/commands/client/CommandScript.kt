@@ -18,6 +18,7 @@
  */
 package net.ccbluex.liquidbounce.features.command.commands.client
 
+import net.ccbluex.liquidbounce.config.ConfigSystem
 import net.ccbluex.liquidbounce.features.command.Command
 import net.ccbluex.liquidbounce.features.command.builder.CommandBuilder
 import net.ccbluex.liquidbounce.features.command.builder.ParameterBuilder
@@ -25,6 +26,7 @@ import net.ccbluex.liquidbounce.features.command.builder.enumChoice
 import net.ccbluex.liquidbounce.script.DebugProtocol
 import net.ccbluex.liquidbounce.script.ScriptDebugOptions
 import net.ccbluex.liquidbounce.script.ScriptManager
+import net.ccbluex.liquidbounce.script.ScriptProfiler
 import net.ccbluex.liquidbounce.utils.client.chat
 import net.ccbluex.liquidbounce.utils.client.clickablePath
 import net.ccbluex.liquidbounce.utils.client.regular
@@ -47,9 +49,92 @@ object CommandScript : Command.Factory {
             .subcommand(listSubcommand())
             .subcommand(browseSubcommand())
             .subcommand(editSubcommand())
+            .subcommand(profileSubcommand())
             .build()
     }
 
+    private fun profileSubcommand() = CommandBuilder.begin("profile")
+        .hub()
+        .subcommand(CommandBuilder.begin("start").handler {
+            ScriptProfiler.start()
+            chat(regular(command.result("started")))
+        }.build())
+        .subcommand(CommandBuilder.begin("stop").handler {
+            ScriptProfiler.stop()
+            chat(regular(command.result("stopped")))
+        }.build())
+        .subcommand(CommandBuilder.begin("show")
+            .parameter(
+                ParameterBuilder.begin<Int>("limit")
+                    .verifiedBy(ParameterBuilder.POSITIVE_INTEGER_VALIDATOR)
+                    .optional()
+                    .build()
+            )
+            .handler {
+                val limit = args.getOrNull(0) as Int? ?: 10
+                val sections = ScriptProfiler.results
+                    .flatMap { stats -> stats.sections.values.map { stats to it } }
+                    .sortedByDescending { (_, section) -> section.totalNanos }
+                    .take(limit)
+
+                if (sections.isEmpty()) {
+                    chat(regular(command.result("noResults")))
+                    return@handler
+                }
+
+                for ((stats, section) in sections) {
+                    chat(
+                        variable(stats.name),
+                        regular(" ${section.name}: "),
+                        variable(section.count.toString()),
+                        regular("x, total "),
+                        variable("%.2fms".format(section.totalNanos / 1_000_000.0)),
+                        regular(", max "),
+                        variable("%.2fms".format(section.maxNanos / 1_000_000.0)),
+                        regular(", allocated "),
+                        variable(
+                            if (section.allocatedBytes < 0) "n/a" else "%.1fKB".format(section.allocatedBytes / 1024.0)
+                        ),
+                    )
+                }
+            }
+            .build()
+        )
+        .subcommand(CommandBuilder.begin("export").handler {
+            val file = ConfigSystem.rootFolder.resolve("script-profile.csv")
+
+            runCatching {
+                ScriptProfiler.export(file)
+            }.onSuccess {
+                chat(regular(command.result("exported", clickablePath(file))))
+            }.onFailure {
+                chat(regular(command.result("failedToExport", variable(it.message ?: "unknown"))))
+            }
+        }.build())
+        .subcommand(CommandBuilder.begin("budget")
+            .parameter(
+                ParameterBuilder.begin<Int>("milliseconds")
+                    .verifiedBy(ParameterBuilder.INTEGER_VALIDATOR)
+                    .required()
+                    .build()
+            )
+            .parameter(
+                ParameterBuilder.begin<Boolean>("disable")
+                    .verifiedBy(ParameterBuilder.BOOLEAN_VALIDATOR)
+                    .optional()
+                    .build()
+            )
+            .handler {
+                val milliseconds = (args[0] as Int).coerceAtLeast(0)
+
+                ScriptProfiler.tickBudgetNanos = milliseconds * 1_000_000L
+                ScriptProfiler.disableOverBudget = args.getOrNull(1) as Boolean? == true
+                chat(regular(command.result("budget", variable("${milliseconds}ms"))))
+            }
+            .build()
+        )
+        .build()
+
     private fun editSubcommand() = CommandBuilder.begin("edit").parameter(
         ParameterBuilder.begin<String>("name")
             .verifiedBy(ParameterBuilder.STRING_VALIDATOR)
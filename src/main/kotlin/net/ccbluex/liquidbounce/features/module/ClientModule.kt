@@ -30,6 +30,7 @@ import net.ccbluex.liquidbounce.config.types.group.ToggleableValueGroup
 import net.ccbluex.liquidbounce.config.types.group.ValueGroup
 import net.ccbluex.liquidbounce.event.EventListener
 import net.ccbluex.liquidbounce.event.EventManager
+import net.ccbluex.liquidbounce.event.NarrowsParentRunning
 import net.ccbluex.liquidbounce.event.eventListenerScope
 import net.ccbluex.liquidbounce.event.events.ModuleActivationEvent
 import net.ccbluex.liquidbounce.event.events.ModuleToggleEvent
@@ -71,9 +72,13 @@ open class ClientModule(
      *
      * Note: This overwrites [ToggleableValueGroup] declaration of [running].
      */
+    @get:NarrowsParentRunning
     override val running: Boolean
         get() = super<EventListener>.running && inGame && (enabled || notActivatable)
 
+    override val isDormant: Boolean
+        get() = !enabled && !notActivatable
+
     internal val bindValue = bind("Bind", InputBind(InputConstants.Type.KEYSYM, bind, bindAction))
         .doNotIncludeWhen { !AutoConfig.includeConfiguration.includeBinds }
         .independentDescription().apply {
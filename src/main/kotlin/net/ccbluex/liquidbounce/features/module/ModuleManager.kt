@@ -625,6 +625,7 @@ object ModuleManager : EventListener, Collection<ClientModule> by modules {
         }
         module.walkInit()
         module.onRegistration()
+        ConfigSystem.invalidateKeyIndex()
     }
 
     fun removeModule(module: ClientModule) {
@@ -635,6 +636,7 @@ object ModuleManager : EventListener, Collection<ClientModule> by modules {
             module.onDisabled()
         }
         module.unregister()
+        ConfigSystem.invalidateKeyIndex()
     }
 
     fun clear() {
@@ -40,6 +40,8 @@ import net.ccbluex.liquidbounce.utils.client.regular
 import net.ccbluex.liquidbounce.utils.client.toName
 import net.ccbluex.liquidbounce.utils.client.variable
 import net.ccbluex.liquidbounce.utils.collection.Filter
+import net.ccbluex.liquidbounce.utils.io.RecordConverter
+import net.ccbluex.liquidbounce.utils.io.RecordStream
 import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention
 import net.ccbluex.liquidbounce.utils.kotlin.isNotRoot
 import net.ccbluex.liquidbounce.utils.kotlin.toFullString
@@ -49,8 +51,7 @@ import net.minecraft.ChatFormatting
 import net.minecraft.network.chat.MutableComponent
 import net.minecraft.network.protocol.Packet
 import net.minecraft.resources.Identifier
-import okio.appendingSink
-import okio.buffer
+import okio.Buffer
 import java.io.File
 import java.lang.reflect.Field
 import java.lang.reflect.Modifier
@@ -73,8 +74,8 @@ object ModulePacketLogger : ClientModule("PacketLogger", ModuleCategories.MISC)
     private val showFieldType by boolean("ShowFieldType", true)
 
     private val outputTarget by multiEnumChoice("OutputTarget", OutputTarget.CHAT, canBeNone = false).onChanged {
-        if (OutputTarget.FILE in it) {
-            createFileIfNeeded()
+        if (OutputTarget.FILE in it && running) {
+            createStreamIfNeeded()
         }
     }
 
@@ -88,22 +89,43 @@ object ModulePacketLogger : ClientModule("PacketLogger", ModuleCategories.MISC)
         doNotIncludeAlways()
     }
 
-    private val outputFile = atomic<File?>(null)
+    /**
+     * The fields of packets logged to a file are captured on the netty threads, as packets might be modified
+     * or released afterward. Encoding and writing happens on the writer thread, the CSV file is assembled
+     * from the segments once the logger is disabled.
+     */
+    private val outputStream = atomic<RecordStream<LoggedPacket>?>(null)
 
-    private fun createFileIfNeeded() {
-        outputFile.compareAndSet(
-            expect = null,
-            update = outputDir.resolve("${LocalDateTime.now().toUnderlinedString()}.csv"),
-        )
+    private fun createStreamIfNeeded() {
+        if (outputStream.value != null) {
+            return
+        }
+
+        val stream = RecordStream(outputDir, LocalDateTime.now().toUnderlinedString(), encoder = LoggedPacket::toCsvRow)
+        if (!outputStream.compareAndSet(expect = null, update = stream)) {
+            stream.close()
+        }
     }
 
     override fun onEnabled() {
-        createFileIfNeeded()
+        createStreamIfNeeded()
         super.onEnabled()
     }
 
     override fun onDisabled() {
-        outputFile.value = null
+        outputStream.getAndSet(null)?.let { stream ->
+            val file = outputDir.resolve("${stream.baseName}.csv")
+
+            stream.close().thenAccept { segments ->
+                if (segments.isNotEmpty()) {
+                    RecordConverter.toLines(segments, file)
+                }
+                segments.forEach(File::delete)
+            }.exceptionally {
+                logger.error("Failed to write packet log", it)
+                null
+            }
+        }
         classNames.clear()
         fieldNames.clear()
     }
@@ -171,41 +193,62 @@ object ModulePacketLogger : ClientModule("PacketLogger", ModuleCategories.MISC)
 
         FILE("File") {
             override fun handle(origin: TransferOrigin, packet: Packet<*>, canceled: Boolean, packetId: Identifier) {
-                val file = outputFile.value ?: return
-
+                val stream = outputStream.value ?: return
                 val clazz = packet.javaClass
-
                 val packetClassName = classNames.computeIfAbsent(clazz, EnvironmentRemapper::remapClass)
                     .substringAfterLast('.')
 
-                file.appendingSink().buffer().use {
-                    it.writeUtf8(System.currentTimeMillis().toString())
-                        .writeByte(','.code)
-                        .writeUtf8(origin.tag)
-                        .writeByte(','.code)
-                        .writeUtf8(packetClassName)
-                        .writeByte(','.code)
-                        .writeUtf8(packetId.toString())
-                        .writeByte(','.code)
-                        .writeUtf8(canceled.toString())
-                        .writeByte(','.code)
-                        .writeByte('"'.code)
-
-                    collectFields(clazz, packet).forEach { (name, type, value) ->
-                        it.writeUtf8(name)
+                stream.offer(
+                    LoggedPacket(
+                        System.currentTimeMillis(),
+                        origin,
+                        packetClassName,
+                        collectFields(clazz, packet),
+                        canceled,
+                        packetId,
+                    )
+                )
+            }
+        };
+
+        abstract fun handle(origin: TransferOrigin, packet: Packet<*>, canceled: Boolean, packetId: Identifier)
+    }
+
+    @JvmRecord
+    private data class LoggedPacket(
+        val time: Long,
+        val origin: TransferOrigin,
+        val packetClassName: String,
+        val fields: List<PacketField>,
+        val canceled: Boolean,
+        val packetId: Identifier,
+    ) {
+        fun toCsvRow(): ByteArray {
+            return Buffer()
+                .writeUtf8(time.toString())
+                .writeByte(','.code)
+                .writeUtf8(origin.tag)
+                .writeByte(','.code)
+                .writeUtf8(packetClassName)
+                .writeByte(','.code)
+                .writeUtf8(packetId.toString())
+                .writeByte(','.code)
+                .writeUtf8(canceled.toString())
+                .writeByte(','.code)
+                .writeByte('"'.code)
+                .apply {
+                    fields.forEach { (name, type, value) ->
+                        writeUtf8(name)
                             .writeByte(':'.code)
                             .writeUtf8(type.toFullString())
                             .writeByte('='.code)
                             .writeUtf8(value.toString())
                             .writeByte(';'.code)
                     }
-
-                    it.writeByte('"'.code).writeByte('\n'.code)
                 }
-            }
-        };
-
-        abstract fun handle(origin: TransferOrigin, packet: Packet<*>, canceled: Boolean, packetId: Identifier)
+                .writeByte('"'.code)
+                .readByteArray()
+        }
     }
 
     @JvmRecord
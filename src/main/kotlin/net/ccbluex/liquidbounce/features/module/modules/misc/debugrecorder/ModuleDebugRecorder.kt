@@ -34,13 +34,17 @@ import net.ccbluex.liquidbounce.features.module.modules.misc.debugrecorder.modes
 import net.ccbluex.liquidbounce.utils.client.asText
 import net.ccbluex.liquidbounce.utils.client.chat
 import net.ccbluex.liquidbounce.utils.client.markAsError
+import net.ccbluex.liquidbounce.utils.client.mc
 import net.ccbluex.liquidbounce.utils.client.onClick
 import net.ccbluex.liquidbounce.utils.client.onHover
 import net.ccbluex.liquidbounce.utils.client.regular
 import net.ccbluex.liquidbounce.utils.client.underline
 import net.ccbluex.liquidbounce.utils.client.variable
+import net.ccbluex.liquidbounce.utils.io.RecordConverter
+import net.ccbluex.liquidbounce.utils.io.RecordStream
 import net.minecraft.network.chat.ClickEvent
 import net.minecraft.network.chat.HoverEvent
+import java.io.File
 import java.time.LocalDateTime
 
 object ModuleDebugRecorder : ClientModule("DebugRecorder", ModuleCategories.MISC, disableOnQuit = true) {
@@ -60,35 +64,56 @@ object ModuleDebugRecorder : ClientModule("DebugRecorder", ModuleCategories.MISC
         BoxDebugRecorder
     ))
 
-    abstract class DebugRecorderMode<T>(name: String) : Mode(name) {
+    private val compress by boolean("Compress", false)
+    private val segmentSize by int("SegmentSize", 64, 1..1024, "MB")
+
+    abstract class DebugRecorderMode<T : Any>(name: String) : Mode(name) {
         override val parent: ModeValueGroup<*>
             get() = modes
 
         val folder = ConfigSystem.rootFolder.resolve("debug-recorder/$name").apply {
             mkdirs()
         }
-        internal val packets = mutableListOf<T>()
+
+        /**
+         * Streams the samples to disk while recording, they are converted into a JSON file on [disable]
+         */
+        private var stream: RecordStream<T>? = null
+
+        val recordedCount: Long
+            get() = stream?.recorded ?: 0L
 
         protected fun recordPacket(packet: T) {
             if (!this.isSelected) {
                 return
             }
 
-            packets.add(packet)
+            stream?.offer(packet)
         }
 
         override fun enable() {
-            this.packets.clear()
+            stream?.close()
+            stream = RecordStream(
+                folder,
+                LocalDateTime.now().toUnderlinedString(),
+                segmentBytes = segmentSize.toLong() shl 20,
+                compress = compress,
+            ) { sample -> publicGson.toJson(sample).encodeToByteArray() }
             chat(regular("Recording "), variable(name), regular("..."))
         }
 
         override fun disable() {
-            if (this.packets.isEmpty()) {
+            val stream = this.stream ?: return
+            this.stream = null
+
+            if (stream.recorded == 0L) {
+                stream.close().thenAccept { segments -> segments.forEach(File::delete) }
                 chat(regular("No packets recorded."))
                 return
             }
 
-            runCatching {
+            // Converting happens on the writer thread, a long recording must not freeze the game
+            stream.close().thenApply { segments ->
                 // Create parent folder
                 folder.mkdirs()
 
@@ -100,22 +125,22 @@ object ModuleDebugRecorder : ClientModule("DebugRecorder", ModuleCategories.MISC
                     file = folder.resolve("${baseName}_${idx++}.json")
                 }
 
-                file.bufferedWriter().use { writer ->
-                    publicGson.toJson(this.packets, writer)
-                }
+                RecordConverter.toJsonArray(segments, file)
+                segments.forEach(File::delete)
                 file.absolutePath
-            }.onFailure {
-                chat(markAsError("Failed to write log to file $it".asText()))
-            }.onSuccess { path ->
+            }.whenCompleteAsync({ path, error ->
+                if (error != null) {
+                    chat(markAsError("Failed to write log to file $error".asText()))
+                    return@whenCompleteAsync
+                }
+
                 val text = path.asText()
                     .underline(true)
                     .onHover(HoverEvent.ShowText(regular("Browse...")))
                     .onClick(ClickEvent.OpenFile(path))
 
                 chat(regular("Log was written to "), text, regular("."))
-            }
-
-            this.packets.clear()
+            }, mc)
         }
     }
 }
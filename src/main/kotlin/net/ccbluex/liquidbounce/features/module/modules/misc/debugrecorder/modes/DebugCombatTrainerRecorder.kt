@@ -107,7 +107,7 @@ object DebugCombatTrainerRecorder : ModuleDebugRecorder.DebugRecorderMode<Combat
                 false
             }
 
-            chat("✧ Recorded ${packets.size} samples")
+            chat("✧ Recorded $recordedCount samples")
         }
     }
 
@@ -18,15 +18,16 @@
  */
 package net.ccbluex.liquidbounce.features.module.modules.movement
 
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
 import net.ccbluex.fastutil.mapToArray
 import net.ccbluex.liquidbounce.event.events.PlayerMoveEvent
 import net.ccbluex.liquidbounce.event.handler
 import net.ccbluex.liquidbounce.event.tickHandler
 import net.ccbluex.liquidbounce.features.module.ClientModule
 import net.ccbluex.liquidbounce.features.module.ModuleCategories
+import net.ccbluex.liquidbounce.utils.block.hole.Hole
 import net.ccbluex.liquidbounce.utils.block.hole.HoleManager
 import net.ccbluex.liquidbounce.utils.block.hole.HoleManagerSubscriber
-import net.ccbluex.liquidbounce.utils.block.hole.HoleTracker
 import net.ccbluex.liquidbounce.utils.input.InputBind
 import net.ccbluex.liquidbounce.utils.math.boundingBox
 import net.ccbluex.liquidbounce.utils.math.centerPointOf
@@ -58,6 +59,16 @@ object ModuleAnchor : ClientModule(
 
     var goal: Vec3? = null
 
+    private val holes = ReferenceOpenHashSet<Hole>()
+
+    override fun onHoleAdded(hole: Hole) {
+        holes += hole
+    }
+
+    override fun onHoleRemoved(hole: Hole) {
+        holes -= hole
+    }
+
     override fun onEnabled() {
         HoleManager.subscribe(this)
         goal = null
@@ -65,13 +76,14 @@ object ModuleAnchor : ClientModule(
 
     override fun onDisabled() {
         HoleManager.unsubscribe(this)
+        holes.clear()
     }
 
     @Suppress("unused")
     private val tickHandler = tickHandler {
         // if we're already in a hole, we should just center us in that
         val playerBB = player.boundingBox
-        HoleTracker.holes.firstOrNull { hole -> playerBB.intersects(hole.positions.boundingBox) }?.let { hole ->
+        holes.firstOrNull { hole -> playerBB.intersects(hole.positions.boundingBox) }?.let { hole ->
             goal = hole.positions.centerPointOf(Direction.DOWN)
             return@tickHandler
         }
@@ -87,7 +99,7 @@ object ModuleAnchor : ClientModule(
         }
 
         // not in a hole and no valid goal means we need to search one
-        goal = HoleTracker.holes
+        goal = holes
             .filter { hole -> hole.positions.maxY() + 1 <= playerPos.y }
             .mapToArray { hole -> hole.positions.centerPointOf(Direction.DOWN) }
             .filter { vec3d -> vec3d.distanceToSqr(playerPos) <= maxDistanceSq }
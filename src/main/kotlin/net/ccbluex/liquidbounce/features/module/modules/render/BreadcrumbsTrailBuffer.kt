@@ -0,0 +1,314 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.features.module.modules.render
+
+import com.mojang.blaze3d.buffers.GpuBuffer
+import com.mojang.blaze3d.buffers.GpuBufferSlice
+import com.mojang.blaze3d.systems.RenderPass
+import com.mojang.blaze3d.systems.RenderSystem
+import com.mojang.blaze3d.vertex.DefaultVertexFormat
+import com.mojang.blaze3d.vertex.VertexFormat
+import it.unimi.dsi.fastutil.floats.FloatArrayFIFOQueue
+import net.ccbluex.liquidbounce.LiquidBounce
+import net.ccbluex.liquidbounce.render.bindAndDraw
+import net.ccbluex.liquidbounce.utils.client.gpuDevice
+import net.ccbluex.liquidbounce.utils.render.write
+import org.joml.Vector3f
+import org.lwjgl.system.MemoryUtil
+import java.nio.ByteBuffer
+
+/**
+ * Trails longer than this drop their oldest segments
+ */
+private const val MAX_SEGMENTS = 1 shl 16
+
+private const val INITIAL_SEGMENTS = 64
+
+private val VERTEX_FORMAT = DefaultVertexFormat.POSITION_TEX
+
+/**
+ * Segments of one breadcrumb trail, kept in a GPU ring buffer between frames.
+ *
+ * Every segment occupies a fixed slot (`sequence % capacity`) and only the segments appended since the last
+ * [upload] are written to the GPU. Positions are stored relative to the first point of the trail, and every vertex
+ * carries its creation time, so the age fade and expiry are done by the shader without touching the buffer.
+ * Expired segments are only forgotten on the CPU side, their slots are reused by later segments.
+ *
+ * The newest point is not part of the buffer: the segment from [anchorX] to the interpolated entity position
+ * changes every frame and is drawn by the caller.
+ *
+ * Must only be used on the render thread.
+ *
+ * @param lines whether segments are lines or quads of [height]
+ */
+internal class BreadcrumbsTrailBuffer(private val lines: Boolean, private val height: Float) : AutoCloseable {
+
+    private val verticesPerSegment = if (lines) 2 else 4
+    private val segmentBytes = verticesPerSegment * VERTEX_FORMAT.vertexSize
+    private val mode = if (lines) VertexFormat.Mode.DEBUG_LINES else VertexFormat.Mode.QUADS
+
+    private var pointCount = 0
+
+    private var originX = 0.0
+    private var originY = 0.0
+    private var originZ = 0.0
+
+    /**
+     * Second-newest point, start of the segment which is drawn by the caller
+     */
+    var anchorX = 0.0
+        private set
+    var anchorY = 0.0
+        private set
+    var anchorZ = 0.0
+        private set
+    var anchorTime = 0f
+        private set
+
+    /**
+     * Newest point
+     */
+    var latestTime = 0f
+        private set
+    private var latestX = 0.0
+    private var latestY = 0.0
+    private var latestZ = 0.0
+
+    /**
+     * Sequence number of the oldest live segment and of the next segment
+     */
+    private var headSequence = 0L
+    private var tailSequence = 0L
+
+    /**
+     * All segments before this sequence number are on the GPU
+     */
+    private var uploadedSequence = 0L
+
+    /**
+     * Creation time of the older end of every live segment, ordered by sequence
+     */
+    private val segmentTimes = FloatArrayFIFOQueue()
+
+    private var capacity = 0
+
+    /**
+     * CPU copy of the ring, used to upload new segments and to rebuild the GPU buffer when growing
+     */
+    private var mirror: ByteBuffer? = null
+
+    private var gpuBuffer: GpuBuffer? = null
+
+    /**
+     * [GpuBuffer.size] no longer matches [capacity], the whole ring has to be uploaded
+     */
+    private var gpuStale = true
+
+    val isDrawable: Boolean
+        get() = pointCount >= 2
+
+    val liveSegments: Int
+        get() = (tailSequence - headSequence).toInt()
+
+    fun append(x: Double, y: Double, z: Double, time: Float) {
+        if (pointCount == 0) {
+            originX = x
+            originY = y
+            originZ = z
+        }
+
+        if (pointCount >= 2) {
+            addSegment()
+        }
+
+        anchorX = latestX
+        anchorY = latestY
+        anchorZ = latestZ
+        anchorTime = latestTime
+
+        latestX = x
+        latestY = y
+        latestZ = z
+        latestTime = time
+
+        pointCount++
+    }
+
+    /**
+     * Forgets all segments whose older end was created before [expirationTime]. The anchor point expires with them,
+     * in that case the trail has nothing left to draw until two new points were appended.
+     */
+    fun expire(expirationTime: Float) {
+        while (!segmentTimes.isEmpty && segmentTimes.firstFloat() < expirationTime) {
+            segmentTimes.dequeueFloat()
+            headSequence++
+        }
+
+        if (pointCount >= 2 && anchorTime < expirationTime) {
+            pointCount = 1
+        }
+        if (pointCount == 1 && latestTime < expirationTime) {
+            pointCount = 0
+        }
+    }
+
+    private fun addSegment() {
+        if (liveSegments == MAX_SEGMENTS) {
+            segmentTimes.dequeueFloat()
+            headSequence++
+        } else if (liveSegments == capacity) {
+            grow()
+        }
+
+        val mirror = mirror!!
+        var offset = slotOf(tailSequence) * segmentBytes
+
+        // Newer end first, matching the winding of the immediate head segment
+        val newerX = (latestX - originX).toFloat()
+        val newerY = (latestY - originY).toFloat()
+        val newerZ = (latestZ - originZ).toFloat()
+        val olderX = (anchorX - originX).toFloat()
+        val olderY = (anchorY - originY).toFloat()
+        val olderZ = (anchorZ - originZ).toFloat()
+
+        offset = mirror.putVertex(offset, newerX, newerY, newerZ, latestTime, anchorTime)
+        offset = mirror.putVertex(offset, olderX, olderY, olderZ, anchorTime, anchorTime)
+        if (!lines) {
+            offset = mirror.putVertex(offset, olderX, olderY + height, olderZ, anchorTime, anchorTime)
+            mirror.putVertex(offset, newerX, newerY + height, newerZ, latestTime, anchorTime)
+        }
+
+        segmentTimes.enqueue(anchorTime)
+        tailSequence++
+    }
+
+    @Suppress("LongParameterList")
+    private fun ByteBuffer.putVertex(offset: Int, x: Float, y: Float, z: Float, time: Float, segmentTime: Float): Int {
+        putFloat(offset, x)
+        putFloat(offset + 4, y)
+        putFloat(offset + 8, z)
+        putFloat(offset + 12, time)
+        putFloat(offset + 16, segmentTime)
+        return offset + VERTEX_FORMAT.vertexSize
+    }
+
+    /**
+     * Doubles the ring, the live segments are moved to their slots in the new ring
+     */
+    private fun grow() {
+        val newCapacity = if (capacity == 0) INITIAL_SEGMENTS else minOf(capacity * 2, MAX_SEGMENTS)
+        val newMirror = MemoryUtil.memAlloc(newCapacity * segmentBytes)
+
+        mirror?.let { old ->
+            for (sequence in headSequence until tailSequence) {
+                MemoryUtil.memCopy(
+                    MemoryUtil.memAddress(old, slotOf(sequence) * segmentBytes),
+                    MemoryUtil.memAddress(newMirror, (sequence % newCapacity).toInt() * segmentBytes),
+                    segmentBytes.toLong(),
+                )
+            }
+            MemoryUtil.memFree(old)
+        }
+
+        mirror = newMirror
+        capacity = newCapacity
+        gpuStale = true
+    }
+
+    private fun slotOf(sequence: Long) = (sequence % capacity).toInt()
+
+    /**
+     * Writes the segments appended since the last call to the GPU. Must not be called during a render pass.
+     */
+    fun upload() {
+        val mirror = mirror ?: return
+
+        if (gpuStale) {
+            gpuBuffer?.close()
+            gpuBuffer = gpuDevice.createBuffer(
+                { "${LiquidBounce.CLIENT_NAME} ${ModuleBreadcrumbs.name} Trail" },
+                GpuBuffer.USAGE_VERTEX or GpuBuffer.USAGE_COPY_DST,
+                mirror.clear(),
+            )
+            gpuStale = false
+            uploadedSequence = tailSequence
+            return
+        }
+
+        val buffer = gpuBuffer ?: return
+        val from = maxOf(uploadedSequence, headSequence)
+        forEachSlotRange(from, tailSequence) { slot, count ->
+            val offset = slot * segmentBytes
+            val length = count * segmentBytes
+            buffer.slice(offset.toLong(), length.toLong()).write(MemoryUtil.memSlice(mirror, offset, length))
+        }
+        uploadedSequence = tailSequence
+    }
+
+    /**
+     * Draws all live segments. The pipeline and the uniforms have to be bound already.
+     */
+    fun draw(pass: RenderPass) {
+        val buffer = gpuBuffer ?: return
+
+        forEachSlotRange(headSequence, tailSequence) { slot, count ->
+            val vertexCount = count * verticesPerSegment
+            val indexCount = mode.indexCount(vertexCount)
+            val indexBuffer = RenderSystem.getSequentialBuffer(mode)
+            val indexType = indexBuffer.type()
+
+            pass.bindAndDraw(
+                buffer.slice((slot * segmentBytes).toLong(), (count * segmentBytes).toLong()),
+                indexBuffer.getBuffer(indexCount).slice(0L, indexCount.toLong() * indexType.bytes),
+                VERTEX_FORMAT,
+                indexType,
+                indexCount,
+            )
+        }
+    }
+
+    /**
+     * Splits the sequence range into at most two contiguous slot ranges
+     */
+    private inline fun forEachSlotRange(from: Long, to: Long, action: (slot: Int, count: Int) -> Unit) {
+        if (from >= to) {
+            return
+        }
+
+        val slot = slotOf(from)
+        val count = (to - from).toInt()
+        val untilEnd = capacity - slot
+        if (count <= untilEnd) {
+            action(slot, count)
+        } else {
+            action(slot, untilEnd)
+            action(0, count - untilEnd)
+        }
+    }
+
+    fun originOffset(cameraX: Double, cameraY: Double, cameraZ: Double, dest: Vector3f): Vector3f =
+        dest.set(originX - cameraX, originY - cameraY, originZ - cameraZ)
+
+    override fun close() {
+        gpuBuffer?.close()
+        gpuBuffer = null
+        mirror?.let(MemoryUtil::memFree)
+        mirror = null
+    }
+}
@@ -29,10 +29,9 @@ import net.ccbluex.liquidbounce.render.ClientRenderPipelines
 import net.ccbluex.liquidbounce.render.GenericRainbowColorMode
 import net.ccbluex.liquidbounce.render.GenericStaticColorMode
 import net.ccbluex.liquidbounce.render.MapColorMode
-import net.ccbluex.liquidbounce.render.RenderPassRenderState
+import net.ccbluex.liquidbounce.render.SectionMeshCache
 import net.ccbluex.liquidbounce.render.addBoxFaces
 import net.ccbluex.liquidbounce.render.addBoxOutlines
-import net.ccbluex.liquidbounce.render.buildMesh
 import net.ccbluex.liquidbounce.render.drawGenericBlockESP
 import net.ccbluex.liquidbounce.render.engine.type.Color4b
 import net.ccbluex.liquidbounce.render.getDynamicTransformsUniform
@@ -49,6 +48,7 @@ import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.phys.AABB
 import org.joml.Matrix4fc
 import java.util.concurrent.ConcurrentSkipListSet
+import java.util.function.Predicate
 
 /**
  * BlockESP module
@@ -90,8 +90,18 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
         final override val parent get() = modes
 
         protected var useColor = false
+
+        /**
+         * Set if all sections have to be rebuilt
+         */
         val dirtyFlag = atomic(true)
 
+        protected abstract val meshCaches: Array<SectionMeshCache>
+
+        fun markSectionDirty(sectionPos: Long) {
+            meshCaches.forEach { it.markDirty(sectionPos) }
+        }
+
         final override fun enable() {
             dirtyFlag.value = true
             super.enable()
@@ -114,17 +124,17 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
     private object BoxMode : Mode("Box") {
         private val outline by boolean("Outline", true).onChanged {
             if (!it && running) {
-                outlinesRenderState.clearStates()
+                outlinesMeshCache.clear()
             }
         }
-        private val facesRenderState = RenderPassRenderState("${ModuleBlockESP.name} $name Faces")
-        private val outlinesRenderState = RenderPassRenderState("${ModuleBlockESP.name} $name Outlines")
+        private val facesMeshCache = SectionMeshCache("${ModuleBlockESP.name} $name Faces")
+        private val outlinesMeshCache = SectionMeshCache("${ModuleBlockESP.name} $name Outlines")
+
+        override val meshCaches = arrayOf(facesMeshCache, outlinesMeshCache)
 
         override fun disable() {
-            facesRenderState.clearStates()
-            facesRenderState.clearBuffers()
-            outlinesRenderState.clearStates()
-            outlinesRenderState.clearBuffers()
+            facesMeshCache.clear()
+            outlinesMeshCache.clear()
             super.disable()
         }
 
@@ -132,7 +142,7 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
         private val renderHandler = handler<WorldRenderEvent> { event ->
             if (outline) {
                 mc.mainRenderTarget.drawGenericBlockESP(
-                    outlinesRenderState,
+                    outlinesMeshCache,
                     ClientRenderPipelines.relativeLines(useColor),
                     distanceFade,
                 ) {
@@ -144,7 +154,7 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
             }
 
             mc.mainRenderTarget.drawGenericBlockESP(
-                facesRenderState,
+                facesMeshCache,
                 ClientRenderPipelines.relativeQuads(useColor),
                 distanceFade,
             ) {
@@ -154,23 +164,19 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
 
         @Suppress("unused")
         private val tickHandler = handler<GameTickEvent> {
-            if (BlockTracker.isEmpty()) {
-                facesRenderState.clearStates()
-                outlinesRenderState.clearStates()
-                return@handler
-            }
-
-            if (!dirtyFlag.compareAndSet(expect = true, update = false)) {
-                return@handler
+            if (dirtyFlag.compareAndSet(expect = true, update = false)) {
+                facesMeshCache.markAllDirty()
+                outlinesMeshCache.markAllDirty()
             }
 
             val colorMode = colorMode.activeMode
             useColor = colorMode.isParamSensitive
 
-            facesRenderState.buildMesh(
+            facesMeshCache.update(
                 pipeline = ClientRenderPipelines.relativeQuads(useColor),
-            ) { pose ->
-                forEachTrackedBlocks { blockPos, blockState, outlineBox ->
+                forEachSection = BlockTracker::forEachSection,
+            ) { pose, sectionPos ->
+                forEachTrackedBlocks(sectionPos) { blockPos, blockState, outlineBox ->
                     val color = if (useColor) colorMode.getColor(blockPos to blockState) else null
 
                     pose.withPush {
@@ -181,10 +187,11 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
             }
 
             if (outline) {
-                outlinesRenderState.buildMesh(
+                outlinesMeshCache.update(
                     pipeline = ClientRenderPipelines.relativeLines(useColor),
-                ) { pose ->
-                    forEachTrackedBlocks { blockPos, blockState, outlineBox ->
+                    forEachSection = BlockTracker::forEachSection,
+                ) { pose, sectionPos ->
+                    forEachTrackedBlocks(sectionPos) { blockPos, blockState, outlineBox ->
                         val color = if (useColor) colorMode.getColor(blockPos to blockState) else null
 
                         pose.withPush {
@@ -199,11 +206,12 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
     }
 
     private class OutlineMode(name: String, type: DrawOutlinesEvent.OutlineType) : Mode(name) {
-        private val renderState = RenderPassRenderState("${ModuleBlockESP.name} $name")
+        private val meshCache = SectionMeshCache("${ModuleBlockESP.name} $name")
+
+        override val meshCaches = arrayOf(meshCache)
 
         override fun disable() {
-            renderState.clearStates()
-            renderState.clearBuffers()
+            meshCache.clear()
             super.disable()
         }
 
@@ -214,7 +222,7 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
             }
 
             val dirty = event.renderTarget.drawGenericBlockESP(
-                renderState,
+                meshCache,
                 ClientRenderPipelines.outlineQuads(useColor),
                 distanceFade,
             ) {
@@ -228,22 +236,18 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
 
         @Suppress("unused")
         private val tickHandler = handler<GameTickEvent> {
-            if (BlockTracker.isEmpty()) {
-                renderState.clearStates()
-                return@handler
-            }
-
-            if (!dirtyFlag.compareAndSet(expect = true, update = false)) {
-                return@handler
+            if (dirtyFlag.compareAndSet(expect = true, update = false)) {
+                meshCache.markAllDirty()
             }
 
             val colorMode = colorMode.activeMode
             useColor = colorMode.isParamSensitive
 
-            renderState.buildMesh(
+            meshCache.update(
                 pipeline = ClientRenderPipelines.outlineQuads(useColor),
-            ) { pose ->
-                forEachTrackedBlocks { blockPos, blockState, outlineBox ->
+                forEachSection = BlockTracker::forEachSection,
+            ) { pose, sectionPos ->
+                forEachTrackedBlocks(sectionPos) { blockPos, blockState, outlineBox ->
                     val color = if (useColor) colorMode.getColor(blockPos to blockState) else null
 
                     pose.withPush {
@@ -269,19 +273,20 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
         modes.modes.forEach { it.dirtyFlag.value = true }
     }
 
-    private inline fun forEachTrackedBlocks(
+    private fun forEachTrackedBlocks(
+        sectionPos: Long,
         block: (blockPos: BlockPos, blockState: BlockState, outlineBox: AABB) -> Unit,
     ) {
-        for ((blockPos, t) in BlockTracker.iterate()) {
-            val blockState = t.state
-            val outlineBox = t.box
-            block(blockPos, blockState, outlineBox)
+        BlockTracker.forEachInSection(sectionPos) { blockPos, t ->
+            block(blockPos, t.state, t.box)
         }
     }
 
     private class TrackedState(@JvmField val state: BlockState, @JvmField val box: AABB)
 
-    private object BlockTracker : AbstractBlockLocationTracker.BlockPos2State<TrackedState>() {
+    private object BlockTracker : AbstractBlockLocationTracker.ChunkBucketed<TrackedState>() {
+        override val chunkScanFilter = Predicate<BlockState> { !it.isAir && it.block in targets }
+
         override fun getStateFor(pos: BlockPos, state: BlockState): TrackedState? {
             return if (!state.isAir && state.block in targets) {
                 TrackedState(state, state.outlineBox(pos))
@@ -290,8 +295,9 @@ object ModuleBlockESP : ClientModule("BlockESP", ModuleCategories.RENDER) {
             }
         }
 
-        override fun onUpdated() {
-            markDirtyForModes()
+        override fun onSectionUpdated(sectionPos: Long) {
+            // Inactive modes never drain their dirty sections, they are rebuilt entirely once enabled
+            modes.activeMode.markSectionDirty(sectionPos)
         }
     }
 
@@ -18,12 +18,6 @@
  */
 package net.ccbluex.liquidbounce.features.module.modules.render
 
-import com.mojang.blaze3d.vertex.VertexConsumer
-import it.unimi.dsi.fastutil.objects.ObjectFloatMutablePair
-import it.unimi.dsi.fastutil.objects.ObjectFloatPair
-import net.ccbluex.fastutil.component1
-import net.ccbluex.fastutil.component2
-import net.ccbluex.fastutil.mapToArray
 import net.ccbluex.liquidbounce.config.types.group.ToggleableValueGroup
 import net.ccbluex.liquidbounce.event.events.GameTickEvent
 import net.ccbluex.liquidbounce.event.events.WorldChangeEvent
@@ -32,32 +26,44 @@ import net.ccbluex.liquidbounce.event.handler
 import net.ccbluex.liquidbounce.features.module.ClientModule
 import net.ccbluex.liquidbounce.features.module.ModuleCategories
 import net.ccbluex.liquidbounce.render.ClientRenderPipelines
+import net.ccbluex.liquidbounce.render.ClientUniformDefine
 import net.ccbluex.liquidbounce.render.addVertex
+import net.ccbluex.liquidbounce.render.bindDefaultUniforms
+import net.ccbluex.liquidbounce.render.bindDynamicTransformsUniform
+import net.ccbluex.liquidbounce.render.createRenderPass
 import net.ccbluex.liquidbounce.render.drawCustomMesh
 import net.ccbluex.liquidbounce.render.engine.type.Color4b
+import net.ccbluex.liquidbounce.render.getDynamicTransformsUniform
 import net.ccbluex.liquidbounce.render.renderEnvironmentForWorld
 import net.ccbluex.liquidbounce.render.utils.rainbow
 import net.ccbluex.liquidbounce.utils.math.copy
-import net.minecraft.client.Camera
+import net.ccbluex.liquidbounce.utils.render.writeStd140
 import net.minecraft.world.entity.Entity
 import net.minecraft.world.phys.Vec3
-import org.joml.Matrix4fc
 import org.joml.Vector3f
-import org.joml.Vector4f
-import java.util.ArrayDeque
 import java.util.IdentityHashMap
 
 /**
  * Breadcrumbs module
  *
  * Leaves traces behind players.
+ *
+ * The segments of every trail stay on the GPU in a [BreadcrumbsTrailBuffer], so a frame only uploads the segments
+ * added since the last one. Only the newest segment, which ends at the interpolated entity position, is built
+ * every frame.
  */
 object ModuleBreadcrumbs : ClientModule("Breadcrumbs", ModuleCategories.RENDER, aliases = listOf("PlayerTrails")) {
 
     private val onlyOwn by boolean("OnlyOwn", true)
     private val color by color("Color", Color4b(70, 119, 255, 120))
     private val colorRainbow by boolean("Rainbow", false)
-    private val height by float("Height", 0.5f, 0f..2f)
+
+    /**
+     * The height is part of the uploaded segments, so the trails are started over when it changes
+     */
+    private val height by float("Height", 0.5f, 0f..2f).onChanged {
+        clear()
+    }
 
     private object TemporaryValueGroup : ToggleableValueGroup(this, "Temporary", true) {
         val alive by int("Alive", 900, 10..10000, "ms")
@@ -68,9 +74,20 @@ object ModuleBreadcrumbs : ClientModule("Breadcrumbs", ModuleCategories.RENDER,
         tree(TemporaryValueGroup)
     }
 
-    private val trails = IdentityHashMap<Entity, Trail>()
+    private val trails = IdentityHashMap<Entity, BreadcrumbsTrailBuffer>()
     private val lastPositions = IdentityHashMap<Entity, Vec3>()
 
+    private val ubo = ClientUniformDefine.BREADCRUMBS.createRingBuffer()
+
+    /**
+     * Point times are stored as seconds since this timestamp, so they fit into the float vertex attribute
+     */
+    private var epoch = System.currentTimeMillis()
+
+    private val modelOffset = Vector3f()
+
+    private fun secondsSinceEpoch(time: Long) = (time - epoch) / 1000f
+
     override fun onDisabled() {
         clear()
     }
@@ -80,20 +97,104 @@ object ModuleBreadcrumbs : ClientModule("Breadcrumbs", ModuleCategories.RENDER,
             return@handler
         }
 
-        val matrixStack = event.matrixStack
+        val camera = mc.entityRenderDispatcher.camera ?: return@handler
         val color = if (colorRainbow) rainbow() else color
+        val now = secondsSinceEpoch(System.currentTimeMillis())
+        val aliveSeconds = TemporaryValueGroup.alive / 1000f
+        val lines = height == 0f
+
+        if (TemporaryValueGroup.enabled) {
+            val expirationTime = now - aliveSeconds
+            trails.values.forEach { trail -> trail.expire(expirationTime) }
+        }
+
+        // Buffers can't be written while a render pass is open, so everything is uploaded up front
+        ubo.rotate()
+        val uboSlice = ubo.currentBuffer().slice()
+        uboSlice.writeStd140 {
+            putVec4(
+                now,
+                aliveSeconds,
+                if (TemporaryValueGroup.fade && TemporaryValueGroup.enabled) 1f else 0f,
+                if (TemporaryValueGroup.enabled) 1f else 0f,
+            )
+        }
+
+        val modelView = event.matrixStack.last().pose()
+        val cameraPos = camera.position()
+        val transforms = trails.values.mapNotNull { trail ->
+            if (trail.liveSegments == 0) {
+                return@mapNotNull null
+            }
+
+            trail.upload()
+            val transform = getDynamicTransformsUniform(
+                modelView = modelView,
+                colorModulator = color,
+                modelOffset = trail.originOffset(cameraPos.x, cameraPos.y, cameraPos.z, modelOffset),
+            )
+            trail to transform
+        }
+
+        if (transforms.isNotEmpty()) {
+            mc.mainRenderTarget.createRenderPass({ "$name Pass" }).use { pass ->
+                pass.setPipeline(ClientRenderPipelines.breadcrumbs(lines))
+                pass.bindDefaultUniforms()
+                pass.setUniform(ClientUniformDefine.BREADCRUMBS.uboName, uboSlice)
+
+                for ((trail, transform) in transforms) {
+                    pass.bindDynamicTransformsUniform(transform)
+                    trail.draw(pass)
+                }
+            }
+        }
+
+        renderHeadSegments(event, color, now, aliveSeconds, lines)
+    }
+
+    /**
+     * Draws the segment from the last buffered point to the interpolated position of every entity
+     */
+    private fun renderHeadSegments(event: WorldRenderEvent, color: Color4b, now: Float, alive: Float, lines: Boolean) {
+        val shouldFade = TemporaryValueGroup.fade && TemporaryValueGroup.enabled
+        val tickDelta = mc.deltaTracker.getGameTimeDeltaPartialTick(true)
+
+        fun alphaAt(time: Float) = if (shouldFade) {
+            (1f - (now - time) / alive) * color.a / 255f
+        } else {
+            color.a / 255f
+        }
+
+        renderEnvironmentForWorld(event.matrixStack) {
+            val cameraPos = camera.position()
+            val red = color.r / 255f
+            val green = color.g / 255f
+            val blue = color.b / 255f
 
-        renderEnvironmentForWorld(matrixStack) {
-            val camera = mc.entityRenderDispatcher.camera ?: return@handler
-            val time = System.currentTimeMillis()
-            val colorF = Vector4f(color.r / 255f, color.g / 255f, color.b / 255f, color.a / 255f)
-            val lines = height == 0f
             drawCustomMesh(
                 if (lines) ClientRenderPipelines.Lines else ClientRenderPipelines.Quads
             ) { pose ->
-                val renderData = RenderData(pose.pose(), this, colorF, lines)
                 trails.forEach { (entity, trail) ->
-                    trail.verifyAndRenderTrail(renderData, camera, entity, time)
+                    if (!trail.isDrawable) {
+                        return@forEach
+                    }
+
+                    val interpolated = entity.getPosition(tickDelta)
+                    val x0 = (interpolated.x - cameraPos.x).toFloat()
+                    val y0 = (interpolated.y - cameraPos.y).toFloat()
+                    val z0 = (interpolated.z - cameraPos.z).toFloat()
+                    val x1 = (trail.anchorX - cameraPos.x).toFloat()
+                    val y1 = (trail.anchorY - cameraPos.y).toFloat()
+                    val z1 = (trail.anchorZ - cameraPos.z).toFloat()
+                    val alpha0 = alphaAt(trail.latestTime)
+                    val alpha1 = alphaAt(trail.anchorTime)
+
+                    addVertex(pose, x0, y0, z0).setColor(red, green, blue, alpha0)
+                    addVertex(pose, x1, y1, z1).setColor(red, green, blue, alpha1)
+                    if (!lines) {
+                        addVertex(pose, x1, y1 + height, z1).setColor(red, green, blue, alpha1)
+                        addVertex(pose, x0, y0 + height, z0).setColor(red, green, blue, alpha0)
+                    }
                 }
             }
         }
@@ -108,17 +209,28 @@ object ModuleBreadcrumbs : ClientModule("Breadcrumbs", ModuleCategories.RENDER,
 
         if (onlyOwn) {
             updateEntityTrail(time, player)
-            trails.keys.retainAll { it === player || !it.isAlive }
+            removeTrails { it !== player && it.isAlive }
             return@handler
         }
 
         val actualPresent = world.players()
         actualPresent.forEach { player -> updateEntityTrail(time, player) }
-        trails.keys.removeIf { key ->
+        removeTrails { key ->
             actualPresent.none { it === key } || !key.isAlive
         }
     }
 
+    private inline fun removeTrails(predicate: (Entity) -> Boolean) {
+        val iterator = trails.entries.iterator()
+        while (iterator.hasNext()) {
+            val (entity, trail) = iterator.next()
+            if (predicate(entity)) {
+                trail.close()
+                iterator.remove()
+            }
+        }
+    }
+
     private fun updateEntityTrail(time: Long, entity: Entity) {
         val last = lastPositions[entity]
         if (last != null && entity.position() == last) {
@@ -126,7 +238,8 @@ object ModuleBreadcrumbs : ClientModule("Breadcrumbs", ModuleCategories.RENDER,
         }
 
         lastPositions[entity] = entity.position().copy()
-        trails.getOrPut(entity, ::Trail).positions.add(TrailPart(entity.x, entity.y, entity.z, time))
+        trails.getOrPut(entity) { BreadcrumbsTrailBuffer(height == 0f, height) }
+            .append(entity.x, entity.y, entity.z, secondsSinceEpoch(time))
     }
 
     @Suppress("unused")
@@ -136,88 +249,9 @@ object ModuleBreadcrumbs : ClientModule("Breadcrumbs", ModuleCategories.RENDER,
 
     private fun clear() {
         lastPositions.clear()
+        trails.values.forEach(BreadcrumbsTrailBuffer::close)
         trails.clear()
-    }
-
-    @JvmRecord
-    private data class TrailPart(val x: Double, val y: Double, val z: Double, val creationTime: Long)
-
-    private class RenderData(
-        val pose: Matrix4fc,
-        val bufferBuilder: VertexConsumer,
-        val color: Vector4f,
-        val lines: Boolean
-    )
-
-    private class Trail {
-
-        val positions = ArrayDeque<TrailPart>()
-
-        fun verifyAndRenderTrail(renderData: RenderData, camera: Camera, entity: Entity, time: Long) {
-            val aliveDurationF = TemporaryValueGroup.alive.toFloat()
-            val initialAlpha = renderData.color.w
-
-            if (TemporaryValueGroup.enabled) {
-                val aliveDuration = TemporaryValueGroup.alive.toLong()
-                val expirationTime = time - aliveDuration
-
-                // Remove outdated positions, the positions are ordered by time (ascending)
-                while (positions.isNotEmpty() && positions.peekFirst().creationTime < expirationTime) {
-                    positions.removeFirst()
-                }
-            }
-
-            if (positions.isEmpty()) {
-                return
-            }
-
-            val shouldFade = TemporaryValueGroup.fade && TemporaryValueGroup.enabled
-            val pointsWithAlpha = positions.mapToArray { position ->
-                val alpha = if (shouldFade) {
-                    val deltaTime = time - position.creationTime
-                    val multiplier = (1F - deltaTime.toFloat() / aliveDurationF)
-                    multiplier * initialAlpha
-                } else {
-                    initialAlpha
-                }
-
-                val point = calculatePoint(camera, position.x, position.y, position.z)
-                ObjectFloatMutablePair.of(point, alpha)
-            }
-
-            val interpolatedPos = entity.getPosition(mc.deltaTracker.getGameTimeDeltaPartialTick(true))
-            val point = calculatePoint(camera, interpolatedPos.x, interpolatedPos.y, interpolatedPos.z)
-            pointsWithAlpha.last().left(point)
-
-            addVerticesToBuffer(renderData, pointsWithAlpha)
-        }
-
-        private fun calculatePoint(camera: Camera, x: Double, y: Double, z: Double): Vector3f {
-            val point = Vector3f(x.toFloat(), y.toFloat(), z.toFloat())
-            point.sub(camera.position().x.toFloat(), camera.position().y.toFloat(), camera.position().z.toFloat())
-            return point
-        }
-
-        private fun addVerticesToBuffer(renderData: RenderData, list: Array<out ObjectFloatPair<Vector3f>>) {
-            val red = renderData.color.x
-            val green = renderData.color.y
-            val blue = renderData.color.z
-
-            with(renderData.bufferBuilder) {
-                for (i in 1..<list.size) {
-                    val (v0, alpha0) = list[i]
-                    val (v2, alpha2) = list[i - 1]
-
-                    addVertex(renderData.pose, v0).setColor(red, green, blue, alpha0)
-                    addVertex(renderData.pose, v2).setColor(red, green, blue, alpha2)
-                    if (!renderData.lines) {
-                        addVertex(renderData.pose, v2.x, v2.y + height, v2.z).setColor(red, green, blue, alpha2)
-                        addVertex(renderData.pose, v0.x, v0.y + height, v0.z).setColor(red, green, blue, alpha0)
-                    }
-                }
-            }
-        }
-
+        epoch = System.currentTimeMillis()
     }
 
 }
@@ -18,6 +18,7 @@
  */
 package net.ccbluex.liquidbounce.features.module.modules.render
 
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
 import net.ccbluex.liquidbounce.config.types.group.Mode
 import net.ccbluex.liquidbounce.config.types.group.ModeValueGroup
 import net.ccbluex.liquidbounce.event.events.WorldRenderEvent
@@ -33,7 +34,6 @@ import net.ccbluex.liquidbounce.render.withPositionRelativeToCamera
 import net.ccbluex.liquidbounce.utils.block.hole.Hole
 import net.ccbluex.liquidbounce.utils.block.hole.HoleManager
 import net.ccbluex.liquidbounce.utils.block.hole.HoleManagerSubscriber
-import net.ccbluex.liquidbounce.utils.block.hole.HoleTracker
 import net.ccbluex.liquidbounce.utils.math.box
 import net.ccbluex.liquidbounce.utils.math.from
 import net.minecraft.core.BlockPos
@@ -61,15 +61,26 @@ object ModuleHoleESP : ClientModule("HoleESP", ModuleCategories.RENDER), HoleMan
     private val color1by2 by color("1x2", Color4b.fullAlpha(0x35bacc))
     private val color2by2 by color("2x2", Color4b.fullAlpha(0xf7cf1b))
 
+    private val holes = ReferenceOpenHashSet<Hole>()
+
     override fun horizontalDistance(): Int = horizontalDistance
     override fun verticalDistance(): Int = verticalDistance
 
+    override fun onHoleAdded(hole: Hole) {
+        holes += hole
+    }
+
+    override fun onHoleRemoved(hole: Hole) {
+        holes -= hole
+    }
+
     override fun onEnabled() {
         HoleManager.subscribe(this)
     }
 
     override fun onDisabled() {
         HoleManager.unsubscribe(this)
+        holes.clear()
     }
 
     private object BoxMode : Mode("Box") {
@@ -87,7 +98,7 @@ object ModuleHoleESP : ClientModule("HoleESP", ModuleCategories.RENDER), HoleMan
 
             renderEnvironmentForWorld(event.matrixStack) {
                 startBatch()
-                HoleTracker.holes.forEach {
+                holes.forEach {
                     val positions = it.positions
 
                     val valOutOfRange = abs(pos.y - positions.minY()) > vDistance
@@ -129,7 +140,7 @@ object ModuleHoleESP : ClientModule("HoleESP", ModuleCategories.RENDER), HoleMan
             val hDistance = horizontalDistance
 
             renderEnvironmentForWorld(event.matrixStack) {
-                HoleTracker.holes.forEach {
+                holes.forEach {
                     val positions = it.positions
 
                     val valOutOfRange = abs(pos.y - positions.minY()) > vDistance
@@ -16,29 +16,39 @@
  * You should have received a copy of the GNU General Public License
  * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
  */
-
 package net.ccbluex.liquidbounce.features.module.modules.render
 
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import kotlinx.coroutines.launch
+import net.ccbluex.liquidbounce.api.core.ioScope
 import net.ccbluex.liquidbounce.event.events.PacketEvent
 import net.ccbluex.liquidbounce.event.events.WorldChangeEvent
 import net.ccbluex.liquidbounce.event.events.WorldRenderEvent
 import net.ccbluex.liquidbounce.event.handler
 import net.ccbluex.liquidbounce.features.module.ClientModule
 import net.ccbluex.liquidbounce.features.module.ModuleCategories
-import net.ccbluex.liquidbounce.render.drawPlane
+import net.ccbluex.liquidbounce.render.ClientRenderPipelines
+import net.ccbluex.liquidbounce.render.drawCustomMesh
 import net.ccbluex.liquidbounce.render.engine.type.Color4b
 import net.ccbluex.liquidbounce.render.renderEnvironmentForWorld
 import net.ccbluex.liquidbounce.render.withPositionRelativeToCamera
+import net.ccbluex.liquidbounce.utils.io.worldStorageFolder
 import net.minecraft.network.protocol.game.ClientboundBlockUpdatePacket
 import net.minecraft.network.protocol.game.ClientboundForgetLevelChunkPacket
 import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket
 import net.minecraft.network.protocol.game.ClientboundSectionBlocksUpdatePacket
 import net.minecraft.world.level.ChunkPos
 import net.minecraft.world.phys.Vec3
-import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.abs
+import kotlin.math.floor
 import kotlin.math.max
 
+/**
+ * Size of a tile in blocks
+ */
+private const val TILE_BLOCKS = NEW_CHUNKS_TILE_SIZE * 16
+
 /**
  * NewChunks module
  *
@@ -50,16 +60,57 @@ object ModuleNewChunks : ClientModule("NewChunks", ModuleCategories.RENDER) {
     private val renderY by float("RenderY", 0.0f, -64.0f..320.0f)
     private val autoY by boolean("AutoY", false)
 
-    private val smooth by boolean("Smooth", true)
+    private val smooth by boolean("Smooth", true).onChanged { invalidateMeshes() }
     private val persist by boolean("Persist", true)
 
-    private val newColor by color("NewColor", Color4b(0, 255, 0, 80))
-    private val oldColor by color("OldColor", Color4b(255, 0, 0, 80))
+    private val newColor by color("NewColor", Color4b(0, 255, 0, 80)).onChanged { invalidateMeshes() }
+    private val oldColor by color("OldColor", Color4b(255, 0, 0, 80)).onChanged { invalidateMeshes() }
 
-    private val chunks = ConcurrentHashMap<ChunkPos, Boolean>()
+    @Volatile
+    private var store: NewChunksStore? = null
+
+    /**
+     * Planes of every visible tile: chunk slot in the tile, fill color and outline color per chunk.
+     * Only accessed on the render thread.
+     */
+    private val meshes = Long2ObjectOpenHashMap<IntArray>()
+
+    @Volatile
+    private var meshesInvalid = false
+
+    private fun invalidateMeshes() {
+        meshesInvalid = true
+    }
+
+    /**
+     * Returns the store of the current world. When persisted, the chunks seen before are loaded in the background.
+     */
+    private fun store(): NewChunksStore? {
+        store?.let { return it }
+
+        return synchronized(this) {
+            store ?: run {
+                if (mc.level == null) {
+                    return null
+                }
+
+                NewChunksStore(if (persist) worldStorageFolder("new-chunks") else null).also { store ->
+                    this.store = store
+                    ioScope.launch { store.load() }
+                }
+            }
+        }
+    }
 
     private fun reset() {
-        chunks.clear()
+        val store = synchronized(this) {
+            store.also { store = null }
+        }
+        invalidateMeshes()
+
+        if (store != null && persist) {
+            ioScope.launch { store.save() }
+        }
     }
 
     override fun onDisabled() = reset()
@@ -74,21 +125,21 @@ object ModuleNewChunks : ClientModule("NewChunks", ModuleCategories.RENDER) {
         when (val packet = event.packet) {
             is ClientboundForgetLevelChunkPacket -> {
                 if (!persist) {
-                    chunks.remove(packet.pos)
+                    store?.forget(packet.pos.x, packet.pos.z)
                 }
             }
 
             is ClientboundLevelChunkWithLightPacket -> {
-                val pos = ChunkPos(packet.x, packet.z)
-
-                chunks.putIfAbsent(pos, false)
+                store()?.markSeen(packet.x, packet.z)
             }
 
             is ClientboundSectionBlocksUpdatePacket -> {
+                val store = store() ?: return@handler
+
                 packet.runUpdates { bp, state ->
                     val fluid = state.fluidState
                     if (!fluid.isEmpty && !fluid.isSource) {
-                        chunks[ChunkPos(bp)] = true
+                        store.markNew(bp.x shr 4, bp.z shr 4)
                     }
                 }
             }
@@ -96,7 +147,7 @@ object ModuleNewChunks : ClientModule("NewChunks", ModuleCategories.RENDER) {
             is ClientboundBlockUpdatePacket -> {
                 val fluid = packet.blockState.fluidState
                 if (!fluid.isEmpty && !fluid.isSource) {
-                    chunks[ChunkPos(packet.pos)] = true
+                    store()?.markNew(packet.pos.x shr 4, packet.pos.z shr 4)
                 }
             }
         }
@@ -104,52 +155,164 @@ object ModuleNewChunks : ClientModule("NewChunks", ModuleCategories.RENDER) {
 
     @Suppress("unused")
     private val renderHandler = handler<WorldRenderEvent> { event ->
-        if (chunks.isEmpty()) return@handler
+        if (meshesInvalid) {
+            meshesInvalid = false
+            meshes.clear()
+        }
+
+        val store = store ?: return@handler
+        for (tile in store.takeDirtyTiles()) {
+            meshes.remove(tile)
+        }
+
+        if (store.isEmpty) return@handler
 
         val maxDist = renderDistance.toDouble() * 16.0
         val renderDistSq = maxDist * maxDist
 
         val drawY = if (autoY) player.y - 100.0 else renderY.toDouble()
 
+        val playerX = player.x
+        val playerZ = player.z
+        val minTileX = Math.floorDiv(floor(playerX - maxDist).toInt(), TILE_BLOCKS)
+        val maxTileX = Math.floorDiv(floor(playerX + maxDist).toInt(), TILE_BLOCKS)
+        val minTileZ = Math.floorDiv(floor(playerZ - maxDist).toInt(), TILE_BLOCKS)
+        val maxTileZ = Math.floorDiv(floor(playerZ + maxDist).toInt(), TILE_BLOCKS)
+
+        // Tiles out of range are rebuilt once they come back
+        meshes.keys.removeIf { tile ->
+            ChunkPos.getX(tile) !in minTileX..maxTileX || ChunkPos.getZ(tile) !in minTileZ..maxTileZ
+        }
+
         renderEnvironmentForWorld(event.matrixStack) {
             startBatch()
-            for ((chunk, isNew) in chunks) {
-                val chunkX = chunk.minBlockX
-                val chunkZ = chunk.minBlockZ
+            for (tileX in minTileX..maxTileX) {
+                for (tileZ in minTileZ..maxTileZ) {
+                    if (!store.hasTile(tileX, tileZ)) {
+                        continue
+                    }
 
-                if (player.distanceToSqr(chunkX + 8.0, player.y, chunkZ + 8.0) > renderDistSq) {
-                    continue
-                }
+                    val mesh = meshes.computeIfAbsent(ChunkPos.asLong(tileX, tileZ)) {
+                        buildMesh(store, tileX, tileZ)
+                    }
+                    if (mesh.isEmpty()) {
+                        continue
+                    }
+
+                    val originX = tileX * TILE_BLOCKS
+                    val originZ = tileZ * TILE_BLOCKS
+
+                    // Relative to the player, squared distances to the chunk centers stay exact enough as floats
+                    val offsetX = originX + 8.0 - playerX
+                    val offsetZ = originZ + 8.0 - playerZ
 
-                var color = if (isNew) newColor else oldColor
+                    withPositionRelativeToCamera(Vec3(originX.toDouble(), drawY, originZ.toDouble())) {
+                        drawCustomMesh(ClientRenderPipelines.Quads) { pose ->
+                            forEachPlane(mesh, offsetX, offsetZ, renderDistSq) { x, z, fill, _ ->
+                                if (fill ushr 24 != 0) {
+                                    addVertex(pose, x, 0f, z).setColor(fill)
+                                    addVertex(pose, x, 0f, z + 16f).setColor(fill)
+                                    addVertex(pose, x + 16f, 0f, z + 16f).setColor(fill)
+                                    addVertex(pose, x + 16f, 0f, z).setColor(fill)
+                                }
+                            }
+                        }
 
-                if (smooth && !isNew) {
-                    var totalWeight = 0.0
+                        drawCustomMesh(ClientRenderPipelines.Lines) { pose ->
+                            forEachPlane(mesh, offsetX, offsetZ, renderDistSq) { x, z, _, outline ->
+                                if (outline ushr 24 != 0) {
+                                    addVertex(pose, x, 0f, z).setColor(outline)
+                                    addVertex(pose, x, 0f, z + 16f).setColor(outline)
 
-                    for (dx in -2..2) {
-                        for (dz in -2..2) {
-                            if (dx == 0 && dz == 0) continue
+                                    addVertex(pose, x, 0f, z + 16f).setColor(outline)
+                                    addVertex(pose, x + 16f, 0f, z + 16f).setColor(outline)
 
-                            if (chunks[ChunkPos(chunk.x + dx, chunk.z + dz)] == true) {
-                                val dist = max(abs(dx), abs(dz))
+                                    addVertex(pose, x + 16f, 0f, z + 16f).setColor(outline)
+                                    addVertex(pose, x + 16f, 0f, z).setColor(outline)
 
-                                totalWeight += (3.0 - dist) / 2.0
+                                    addVertex(pose, x + 16f, 0f, z).setColor(outline)
+                                    addVertex(pose, x, 0f, z).setColor(outline)
+                                }
                             }
                         }
                     }
+                }
+            }
+            commitBatch()
+        }
+    }
 
-                    if (totalWeight > 0.0) {
-                        val ratio = (totalWeight / 12.0).coerceAtMost(1.0)
+    /**
+     * Calls [action] with the position relative to the tile origin and the colors of every plane of [mesh]
+     * whose chunk center is within the render distance.
+     *
+     * @param offsetX x of the center of the first chunk of the tile, relative to the player
+     */
+    private inline fun forEachPlane(
+        mesh: IntArray,
+        offsetX: Double,
+        offsetZ: Double,
+        renderDistSq: Double,
+        action: (x: Float, z: Float, fill: Int, outline: Int) -> Unit,
+    ) {
+        for (i in mesh.indices step 3) {
+            val slot = mesh[i]
+            val x = (slot % NEW_CHUNKS_TILE_SIZE) * 16
+            val z = (slot / NEW_CHUNKS_TILE_SIZE) * 16
 
-                        color = oldColor.interpolateTo(newColor, ratio)
+            val dx = offsetX + x
+            val dz = offsetZ + z
+            if (dx * dx + dz * dz > renderDistSq) {
+                continue
+            }
+
+            action(x.toFloat(), z.toFloat(), mesh[i + 1], mesh[i + 2])
+        }
+    }
+
+    private fun buildMesh(store: NewChunksStore, tileX: Int, tileZ: Int): IntArray = store.read { reader ->
+        val mesh = IntArrayList()
+        val baseChunkX = tileX * NEW_CHUNKS_TILE_SIZE
+        val baseChunkZ = tileZ * NEW_CHUNKS_TILE_SIZE
+
+        for (slot in 0 until NEW_CHUNKS_TILE_SIZE * NEW_CHUNKS_TILE_SIZE) {
+            val chunkX = baseChunkX + slot % NEW_CHUNKS_TILE_SIZE
+            val chunkZ = baseChunkZ + slot / NEW_CHUNKS_TILE_SIZE
+
+            if (!reader.isSeen(chunkX, chunkZ)) {
+                continue
+            }
+
+            val isNew = reader.isNew(chunkX, chunkZ)
+            var color = if (isNew) newColor else oldColor
+
+            if (smooth && !isNew) {
+                var totalWeight = 0.0
+
+                for (dx in -2..2) {
+                    for (dz in -2..2) {
+                        if (dx == 0 && dz == 0) continue
+
+                        if (reader.isNew(chunkX + dx, chunkZ + dz)) {
+                            val dist = max(abs(dx), abs(dz))
+
+                            totalWeight += (3.0 - dist) / 2.0
+                        }
                     }
                 }
 
-                withPositionRelativeToCamera(Vec3(chunkX.toDouble(), drawY, chunkZ.toDouble())) {
-                    drawPlane(16f, 16f, color, color.darker())
+                if (totalWeight > 0.0) {
+                    val ratio = (totalWeight / 12.0).coerceAtMost(1.0)
+
+                    color = oldColor.interpolateTo(newColor, ratio)
                 }
             }
-            commitBatch()
+
+            mesh.add(slot)
+            mesh.add(color.argb)
+            mesh.add(color.darker().argb)
         }
+
+        mesh.toIntArray()
     }
 }
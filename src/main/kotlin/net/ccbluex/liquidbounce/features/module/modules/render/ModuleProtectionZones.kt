@@ -42,6 +42,7 @@ import net.minecraft.world.level.block.Blocks
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.phys.AABB
 import net.minecraft.world.phys.Vec3
+import java.util.function.Predicate
 import kotlin.math.max
 import kotlin.math.min
 import kotlin.math.roundToInt
@@ -106,6 +107,8 @@ object ModuleProtectionZones : ClientModule("ProtectionZones", ModuleCategories.
     }
 
     private object BlockTracker : AbstractBlockLocationTracker.BlockPos2State<Block>() {
+        override val chunkScanFilter = Predicate<BlockState> { it.block in protBlocks }
+
         override fun getStateFor(pos: BlockPos, state: BlockState): Block? =
             state.block?.takeIf { it in protBlocks }
     }
@@ -31,10 +31,9 @@ import net.ccbluex.liquidbounce.features.module.ModuleCategories
 import net.ccbluex.liquidbounce.features.module.modules.player.cheststealer.ModuleChestStealer
 import net.ccbluex.liquidbounce.features.module.modules.player.cheststealer.features.FeatureChestAura
 import net.ccbluex.liquidbounce.render.ClientRenderPipelines
-import net.ccbluex.liquidbounce.render.RenderPassRenderState
+import net.ccbluex.liquidbounce.render.SectionMeshCache
 import net.ccbluex.liquidbounce.render.addBoxFaces
 import net.ccbluex.liquidbounce.render.addBoxOutlines
-import net.ccbluex.liquidbounce.render.buildMesh
 import net.ccbluex.liquidbounce.render.drawBox
 import net.ccbluex.liquidbounce.render.drawGenericBlockESP
 import net.ccbluex.liquidbounce.render.drawLine
@@ -78,6 +77,7 @@ import net.minecraft.world.level.block.entity.ShulkerBoxBlockEntity
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.phys.AABB
 import java.awt.Color
+import java.util.function.Predicate
 
 /**
  * StorageESP module
@@ -147,25 +147,30 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
         override val parent: ModeValueGroup<Mode>
             get() = modes
 
+        /**
+         * Set if all sections have to be rebuilt
+         */
         val dirtyFlag = atomic(true)
 
-        private val blockFacesRenderState = RenderPassRenderState("${ModuleStorageESP.name} $name BlockFaces")
-        private val blockOutlinesRenderState = RenderPassRenderState("${ModuleStorageESP.name} $name BlockOutlines")
+        val blockFacesMeshCache = SectionMeshCache("${ModuleStorageESP.name} $name BlockFaces")
+        val blockOutlinesMeshCache = SectionMeshCache("${ModuleStorageESP.name} $name BlockOutlines")
 
         override fun enable() {
             dirtyFlag.value = true
             super.enable()
         }
 
-        private val outline by boolean("Outline", true)
+        private val outline by boolean("Outline", true).onChanged {
+            if (!it && running) {
+                blockOutlinesMeshCache.clear()
+            }
+        }
 
         private val entityBoxes = mutableListOf<EntityBox>()
 
         override fun disable() {
-            blockFacesRenderState.clearStates()
-            blockFacesRenderState.clearBuffers()
-            blockOutlinesRenderState.clearStates()
-            blockOutlinesRenderState.clearBuffers()
+            blockFacesMeshCache.clear()
+            blockOutlinesMeshCache.clear()
             entityBoxes.clear()
             super.disable()
         }
@@ -174,7 +179,7 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
         private val renderHandler = handler<WorldRenderEvent> { event ->
             if (outline) {
                 mc.mainRenderTarget.drawGenericBlockESP(
-                    renderState = blockOutlinesRenderState,
+                    meshCache = blockOutlinesMeshCache,
                     pipeline = ClientRenderPipelines.relativeLines(useColor = true),
                     distanceFade = distanceFade,
                 ) {
@@ -183,7 +188,7 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
             }
 
             mc.mainRenderTarget.drawGenericBlockESP(
-                renderState = blockFacesRenderState,
+                meshCache = blockFacesMeshCache,
                 pipeline = ClientRenderPipelines.relativeQuads(useColor = true),
                 distanceFade = distanceFade,
             ) {
@@ -233,20 +238,16 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
             }
 
 
-            if (StorageScanner.isEmpty()) {
-                blockFacesRenderState.clearStates()
-                blockOutlinesRenderState.clearStates()
-                return@handler
-            }
-
-            if (!dirtyFlag.compareAndSet(expect = true, update = false)) {
-                return@handler
+            if (dirtyFlag.compareAndSet(expect = true, update = false)) {
+                blockFacesMeshCache.markAllDirty()
+                blockOutlinesMeshCache.markAllDirty()
             }
 
-            blockFacesRenderState.buildMesh(
+            blockFacesMeshCache.update(
                 pipeline = ClientRenderPipelines.relativeQuads(useColor = true),
-            ) { pose ->
-                forEachTrackedBlockBoxes { blockPos, type, outlineBox ->
+                forEachSection = StorageScanner::forEachSection,
+            ) { pose, sectionPos ->
+                forEachTrackedBlockBoxes(sectionPos) { blockPos, type, outlineBox ->
                     pose.withPush {
                         translate(blockPos)
                         addBoxFaces(last().pose(), outlineBox, type.color.alpha(50))
@@ -255,10 +256,11 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
             }
 
             if (outline) {
-                blockOutlinesRenderState.buildMesh(
+                blockOutlinesMeshCache.update(
                     pipeline = ClientRenderPipelines.relativeLines(useColor = true),
-                ) { pose ->
-                    forEachTrackedBlockBoxes { blockPos, type, outlineBox ->
+                    forEachSection = StorageScanner::forEachSection,
+                ) { pose, sectionPos ->
+                    forEachTrackedBlockBoxes(sectionPos) { blockPos, type, outlineBox ->
                         pose.withPush {
                             translate(blockPos)
                             addBoxOutlines(last().pose(), outlineBox, type.color.alpha(100))
@@ -273,7 +275,7 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
     object GlowMode : Mode("Glow") {
         internal val dirtyFlag = atomic(true)
 
-        private val renderState = RenderPassRenderState("${ModuleStorageESP.name} $name")
+        internal val meshCache = SectionMeshCache("${ModuleStorageESP.name} $name")
 
         override fun enable() {
             dirtyFlag.value = true
@@ -281,8 +283,7 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
         }
 
         override fun disable() {
-            renderState.clearStates()
-            renderState.clearBuffers()
+            meshCache.clear()
             super.disable()
         }
 
@@ -296,7 +297,7 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
             }
 
             val dirty = event.renderTarget.drawGenericBlockESP(
-                renderState = renderState,
+                meshCache = meshCache,
                 pipeline = ClientRenderPipelines.outlineQuads(useColor = true),
                 distanceFade = distanceFade,
             )
@@ -308,24 +309,20 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
 
         @Suppress("unused")
         private val tickHandler = handler<GameTickEvent> {
-            if (StorageScanner.isEmpty()) {
-                renderState.clearStates()
-                return@handler
+            if (dirtyFlag.compareAndSet(expect = true, update = false)) {
+                meshCache.markAllDirty()
             }
 
-            if (!dirtyFlag.compareAndSet(expect = true, update = false)) {
-                return@handler
-            }
-
-            renderState.buildMesh(
+            meshCache.update(
                 pipeline = ClientRenderPipelines.outlineQuads(useColor = true),
-            ) { pose ->
+                forEachSection = StorageScanner::forEachSection,
+            ) { pose, sectionPos ->
                 // non-model blocks are already processed by WorldRenderer where we injected code which renders
                 // their outline
-                forEachTrackedBlockBoxes({ it.renderShape != RenderShape.MODEL }) { blockPos, type, outlineBox ->
+                forEachTrackedBlockBoxes(sectionPos, { it.renderShape != RenderShape.MODEL }) { blockPos, type, box ->
                     pose.withPush {
                         translate(blockPos)
-                        addBoxFaces(last().pose(), outlineBox, type.color)
+                        addBoxFaces(last().pose(), box, type.color)
                     }
                 }
             }
@@ -344,15 +341,16 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
                 .rotateX(-camera.xRot().toRadians())
                 .rotateY(-camera.yRot().toRadians())
 
+            // Only sections within the fade distance are visited, the block center is up to a block further away
+            val maxDistance = distanceFade.farEnd + 1.0
+
             startBatch()
             longLines {
-                for (type in types) {
-                    for (blockPos in StorageScanner.iterate(type)) {
-                        if (!type.shouldRender(blockPos)) continue
-                        val pos = relativeToCamera(blockPos.center).toVec3f()
+                StorageScanner.forEachInRange(camera.position(), maxDistance) { blockPos, type ->
+                    if (type !in types || !type.shouldRender(blockPos)) return@forEachInRange
+                    val pos = relativeToCamera(blockPos.center).toVec3f()
 
-                        drawLine(eyeVector, pos, type.color.argb)
-                    }
+                    drawLine(eyeVector, pos, type.color.argb)
                 }
             }
             commitBatch()
@@ -389,16 +387,17 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
         }
     }
 
-    private inline fun forEachTrackedBlockBoxes(
+    private fun forEachTrackedBlockBoxes(
+        sectionPos: Long,
         skipWhen: (BlockState) -> Boolean = { false },
         block: (blockPos: BlockPos, type: ChestType, outlineBox: AABB) -> Unit,
     ) {
-        for ((blockPos, type) in StorageScanner.iterate()) {
-            if (type.color.isTransparent || !type.shouldRender(blockPos, ignoreDistance = true)) continue
+        StorageScanner.forEachInSection(sectionPos) { blockPos, type ->
+            if (type.color.isTransparent || !type.shouldRender(blockPos, ignoreDistance = true)) return@forEachInSection
 
             val blockState = world.getBlockState(blockPos)
 
-            if (blockState.isAir || skipWhen(blockState)) continue
+            if (blockState.isAir || skipWhen(blockState)) return@forEachInSection
 
             val boundingBox = blockState.outlineBox(blockPos)
 
@@ -406,15 +405,23 @@ object ModuleStorageESP : ClientModule("StorageESP", ModuleCategories.RENDER, al
         }
     }
 
-    private object StorageScanner : AbstractBlockLocationTracker.State2BlockPos<ChestType>() {
+    private object StorageScanner : AbstractBlockLocationTracker.ChunkBucketed<ChestType>() {
+        override val chunkScanFilter = Predicate(BlockState::hasBlockEntity)
+
         override fun getStateFor(pos: BlockPos, state: BlockState): ChestType? {
             val chunk = mc.level?.getChunk(pos) ?: return null
             return chunk.getBlockEntity(pos)?.categorize()
         }
 
-        override fun onUpdated() {
-            GlowMode.dirtyFlag.value = true
-            BoxMode.dirtyFlag.value = true
+        override fun onSectionUpdated(sectionPos: Long) {
+            // Inactive modes never drain their dirty sections, they are rebuilt entirely once enabled
+            when (modes.activeMode) {
+                GlowMode -> GlowMode.meshCache.markDirty(sectionPos)
+                BoxMode -> {
+                    BoxMode.blockFacesMeshCache.markDirty(sectionPos)
+                    BoxMode.blockOutlinesMeshCache.markDirty(sectionPos)
+                }
+            }
         }
     }
 
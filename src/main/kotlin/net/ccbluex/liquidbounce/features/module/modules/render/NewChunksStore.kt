@@ -0,0 +1,291 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.features.module.modules.render
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.ccbluex.liquidbounce.utils.client.logger
+import net.ccbluex.liquidbounce.utils.io.writeBytesAtomically
+import net.minecraft.world.level.ChunkPos
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+
+/**
+ * Size of a tile in chunks (size x size)
+ */
+internal const val NEW_CHUNKS_TILE_SIZE = 32
+
+private const val WORDS_PER_TILE = NEW_CHUNKS_TILE_SIZE * NEW_CHUNKS_TILE_SIZE / Long.SIZE_BITS
+
+private const val FILE_VERSION = 1
+
+/**
+ * Classification of the chunks seen by [ModuleNewChunks].
+ *
+ * Chunks are grouped into tiles of 32x32 chunks, keyed by [ChunkPos.asLong] of the tile. Every tile holds
+ * two bitsets of 1024 bits: chunks which have been seen and chunks which have been classified as new.
+ * Changed tiles are collected, so their meshes can be rebuilt.
+ *
+ * This class is thread-safe.
+ */
+internal class NewChunksStore(
+    /**
+     * Folder to persist the store in, null if it is not persisted
+     */
+    val folder: File?,
+) {
+
+    private class Tile {
+        val seen = LongArray(WORDS_PER_TILE)
+        val new = LongArray(WORDS_PER_TILE)
+    }
+
+    private val tiles = Long2ObjectOpenHashMap<Tile>()
+
+    private val dirtyTiles = LongOpenHashSet()
+
+    private var modified = false
+
+    val isEmpty: Boolean
+        get() = synchronized(tiles) { tiles.isEmpty() }
+
+    /**
+     * Marks the chunk as seen, unless it is known already.
+     */
+    fun markSeen(chunkX: Int, chunkZ: Int) = update(chunkX, chunkZ) { tile, word, bit ->
+        if (tile.seen[word] and bit != 0L) {
+            return@update false
+        }
+
+        tile.seen[word] = tile.seen[word] or bit
+        true
+    }
+
+    fun markNew(chunkX: Int, chunkZ: Int) = update(chunkX, chunkZ) { tile, word, bit ->
+        if (tile.new[word] and bit != 0L) {
+            return@update false
+        }
+
+        tile.seen[word] = tile.seen[word] or bit
+        tile.new[word] = tile.new[word] or bit
+        true
+    }
+
+    fun forget(chunkX: Int, chunkZ: Int) = synchronized(tiles) {
+        val key = tileKey(chunkX, chunkZ)
+        val tile = tiles[key] ?: return@synchronized
+        val slot = slot(chunkX, chunkZ)
+        val word = slot ushr 6
+        val bit = 1L shl slot
+
+        if (tile.seen[word] and bit == 0L) {
+            return@synchronized
+        }
+
+        tile.seen[word] = tile.seen[word] and bit.inv()
+        tile.new[word] = tile.new[word] and bit.inv()
+        if (tile.seen.all { it == 0L }) {
+            tiles.remove(key)
+        }
+        markDirty(chunkX, chunkZ)
+    }
+
+    private inline fun update(chunkX: Int, chunkZ: Int, change: (Tile, word: Int, bit: Long) -> Boolean) {
+        synchronized(tiles) {
+            val tile = tiles.computeIfAbsent(tileKey(chunkX, chunkZ)) { Tile() }
+            val slot = slot(chunkX, chunkZ)
+
+            if (change(tile, slot ushr 6, 1L shl slot)) {
+                modified = true
+                markDirty(chunkX, chunkZ)
+            }
+        }
+    }
+
+    /**
+     * Marks the tile of the chunk dirty, and its neighbors if the chunk is close enough to the edge
+     * to change their smoothing.
+     */
+    private fun markDirty(chunkX: Int, chunkZ: Int) {
+        val minTileX = Math.floorDiv(chunkX - 2, NEW_CHUNKS_TILE_SIZE)
+        val maxTileX = Math.floorDiv(chunkX + 2, NEW_CHUNKS_TILE_SIZE)
+        val minTileZ = Math.floorDiv(chunkZ - 2, NEW_CHUNKS_TILE_SIZE)
+        val maxTileZ = Math.floorDiv(chunkZ + 2, NEW_CHUNKS_TILE_SIZE)
+
+        for (tileX in minTileX..maxTileX) {
+            for (tileZ in minTileZ..maxTileZ) {
+                dirtyTiles.add(ChunkPos.asLong(tileX, tileZ))
+            }
+        }
+    }
+
+    /**
+     * Tests chunks while [read] holds the lock, so a whole tile is read at once. Must not escape [read].
+     */
+    inner class Reader internal constructor() {
+
+        /**
+         * @return whether the chunk has been seen
+         */
+        fun isSeen(chunkX: Int, chunkZ: Int): Boolean = test(chunkX, chunkZ, seen = true)
+
+        /**
+         * @return whether the chunk has been classified as new
+         */
+        fun isNew(chunkX: Int, chunkZ: Int): Boolean = test(chunkX, chunkZ, seen = false)
+
+        private fun test(chunkX: Int, chunkZ: Int, seen: Boolean): Boolean {
+            val tile = tiles[tileKey(chunkX, chunkZ)] ?: return false
+            val slot = slot(chunkX, chunkZ)
+            val words = if (seen) tile.seen else tile.new
+
+            return words[slot ushr 6] and (1L shl slot) != 0L
+        }
+
+    }
+
+    private val reader = Reader()
+
+    /**
+     * Calls [block] with the lock held once, instead of locking for every tested chunk.
+     */
+    fun <T> read(block: (Reader) -> T): T = synchronized(tiles) { block(reader) }
+
+    fun hasTile(tileX: Int, tileZ: Int): Boolean = synchronized(tiles) {
+        tiles.containsKey(ChunkPos.asLong(tileX, tileZ))
+    }
+
+    /**
+     * Removes and returns the tiles changed since the last call
+     */
+    fun takeDirtyTiles(): LongArray = synchronized(tiles) {
+        val dirty = dirtyTiles.toLongArray()
+        dirtyTiles.clear()
+        dirty
+    }
+
+    /**
+     * Writes all tiles to [folder], if anything changed since they were loaded or saved.
+     */
+    fun save() {
+        val folder = folder ?: return
+
+        val snapshot = synchronized(tiles) {
+            if (!modified) {
+                return
+            }
+            modified = false
+
+            tiles.long2ObjectEntrySet().map { entry ->
+                Triple(entry.longKey, entry.value.seen.copyOf(), entry.value.new.copyOf())
+            }
+        }
+
+        try {
+            folder.mkdirs()
+
+            writeBytesAtomically(folder.resolve("chunks.bin")) { stream ->
+                val output = DataOutputStream(stream)
+                output.writeInt(FILE_VERSION)
+                output.writeInt(snapshot.size)
+
+                for ((key, seen, new) in snapshot) {
+                    output.writeLong(key)
+                    seen.forEach(output::writeLong)
+                    new.forEach(output::writeLong)
+                }
+                output.flush()
+            }
+        } catch (e: IOException) {
+            synchronized(tiles) {
+                modified = true
+            }
+            logger.warn("Failed to save new chunks to $folder", e)
+        }
+    }
+
+    /**
+     * Reads the tiles saved in [folder], merging them into the tiles seen so far.
+     */
+    fun load() {
+        val file = folder?.resolve("chunks.bin")?.takeIf(File::isFile) ?: return
+
+        try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                if (input.readInt() != FILE_VERSION) {
+                    logger.warn("Ignoring new chunks of an unknown version in $file")
+                    return
+                }
+
+                val count = input.readInt()
+                val loaded = Long2ObjectOpenHashMap<Tile>(count)
+                repeat(count) {
+                    val tile = Tile()
+                    val key = input.readLong()
+
+                    for (i in 0 until WORDS_PER_TILE) {
+                        tile.seen[i] = input.readLong()
+                    }
+                    for (i in 0 until WORDS_PER_TILE) {
+                        tile.new[i] = input.readLong()
+                    }
+                    loaded.put(key, tile)
+                }
+
+                merge(loaded)
+            }
+        } catch (e: EOFException) {
+            logger.warn("New chunks in $file are truncated", e)
+        } catch (e: IOException) {
+            logger.warn("Failed to load new chunks from $file", e)
+        }
+    }
+
+    /**
+     * Merges tiles read from disk into the tiles seen so far, so the lock is not held during the read.
+     */
+    private fun merge(loaded: Long2ObjectOpenHashMap<Tile>) = synchronized(tiles) {
+        val iterator = loaded.long2ObjectEntrySet().fastIterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            val key = entry.longKey
+            val tile = tiles[key]
+
+            if (tile == null) {
+                tiles.put(key, entry.value)
+            } else {
+                for (i in 0 until WORDS_PER_TILE) {
+                    tile.seen[i] = tile.seen[i] or entry.value.seen[i]
+                    tile.new[i] = tile.new[i] or entry.value.new[i]
+                }
+            }
+            dirtyTiles.add(key)
+        }
+    }
+
+    private fun tileKey(chunkX: Int, chunkZ: Int): Long =
+        ChunkPos.asLong(Math.floorDiv(chunkX, NEW_CHUNKS_TILE_SIZE), Math.floorDiv(chunkZ, NEW_CHUNKS_TILE_SIZE))
+
+    private fun slot(chunkX: Int, chunkZ: Int): Int =
+        Math.floorMod(chunkZ, NEW_CHUNKS_TILE_SIZE) * NEW_CHUNKS_TILE_SIZE + Math.floorMod(chunkX, NEW_CHUNKS_TILE_SIZE)
+
+}
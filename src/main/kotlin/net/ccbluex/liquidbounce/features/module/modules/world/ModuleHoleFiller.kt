@@ -20,6 +20,7 @@ package net.ccbluex.liquidbounce.features.module.modules.world
 
 import it.unimi.dsi.fastutil.booleans.BooleanDoubleImmutablePair
 import it.unimi.dsi.fastutil.doubles.DoubleLongPair
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
 import net.ccbluex.liquidbounce.config.types.list.Tagged
 import net.ccbluex.liquidbounce.event.events.RotationUpdateEvent
 import net.ccbluex.liquidbounce.event.handler
@@ -28,7 +29,6 @@ import net.ccbluex.liquidbounce.features.module.ModuleCategories
 import net.ccbluex.liquidbounce.utils.block.hole.Hole
 import net.ccbluex.liquidbounce.utils.block.hole.HoleManager
 import net.ccbluex.liquidbounce.utils.block.hole.HoleManagerSubscriber
-import net.ccbluex.liquidbounce.utils.block.hole.HoleTracker
 import net.ccbluex.liquidbounce.utils.block.placer.BlockPlacer
 import net.ccbluex.liquidbounce.utils.collection.Filter
 import net.ccbluex.liquidbounce.utils.collection.blockSortedSetOf
@@ -93,22 +93,33 @@ object ModuleHoleFiller : ClientModule("HoleFiller", ModuleCategories.WORLD), Ho
 
     private val range: Int get() = ceil(max(placer.range, placer.wallRange)).toInt()
 
+    private val trackedHoles = ReferenceOpenHashSet<Hole>()
+
     override fun horizontalDistance(): Int = range
     override fun verticalDistance(): Int = range
 
+    override fun onHoleAdded(hole: Hole) {
+        trackedHoles += hole
+    }
+
+    override fun onHoleRemoved(hole: Hole) {
+        trackedHoles -= hole
+    }
+
     override fun onEnabled() {
         HoleManager.subscribe(this)
     }
 
     override fun onDisabled() {
         HoleManager.unsubscribe(this)
+        trackedHoles.clear()
         placer.disable()
     }
 
     @Suppress("unused")
     private val targetUpdater = handler<RotationUpdateEvent> {
         // all holes, if required 1x1 holes filtered out
-        val holes = HoleTracker.holes.filter { Features.ONLY_ONE_BY_ONE !in features || it.type == Hole.Type.ONE_ONE }
+        val holes = trackedHoles.filter { Features.ONLY_ONE_BY_ONE !in features || it.type == Hole.Type.ONE_ONE }
 
         val blockPos = player.blockPosition()
         val selfInHole = holes.any { it.contains(blockPos) }
@@ -32,7 +32,12 @@ import net.minecraft.world.entity.item.ItemEntity
 import net.minecraft.world.item.BoneMealItem
 import net.minecraft.world.phys.Vec3
 
-object AutoFarmAutoWalk : NavigationBaseValueGroup<Vec3?>(ModuleAutoFarm, "AutoWalk", false) {
+object AutoFarmAutoWalk : NavigationBaseValueGroup<Vec3?>(
+    ModuleAutoFarm,
+    "AutoWalk",
+    enabled = false,
+    defaultPathfinding = true,
+) {
 
     private val minimumDistance by float("MinimumDistance", 2f, 1f..4f)
 
@@ -19,6 +19,12 @@
 package net.ccbluex.liquidbounce.integration.interop.protocol.event
 
 import com.google.gson.stream.JsonWriter
+import io.netty.channel.Channel
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap
+import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap
 import net.ccbluex.liquidbounce.event.ALL_EVENT_CLASSES
 import net.ccbluex.liquidbounce.event.Event
@@ -26,35 +32,266 @@ import net.ccbluex.liquidbounce.event.EventHook
 import net.ccbluex.liquidbounce.event.EventListener
 import net.ccbluex.liquidbounce.event.EventManager
 import net.ccbluex.liquidbounce.event.eventName
+import net.ccbluex.liquidbounce.event.events.GameTickEvent
+import net.ccbluex.liquidbounce.event.handler
 import net.ccbluex.liquidbounce.event.newEventHook
 import net.ccbluex.liquidbounce.integration.interop.ClientInteropServer.httpServer
+import net.ccbluex.liquidbounce.utils.client.env
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.minecraft.util.Util
 import org.apache.commons.io.output.StringBuilderWriter
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
 
+/**
+ * Subscriber used until the first UI subscribes explicitly, keeping themes which do not know about
+ * subscriptions working. It receives every [WebSocketEvent].
+ */
+internal const val LEGACY_SUBSCRIBER = "*"
+
+/**
+ * Forwards [WebSocketEvent]s to the connected UIs.
+ *
+ * Only events which at least one subscriber asked for are hooked, so all other events are never serialized.
+ * Events marked with [WebSocketEvent.coalesce] are collected for [coalesceWindow] milliseconds and only the
+ * latest instance of each class is sent.
+ *
+ * Subscribers are identified by an id chosen by the UI and bound to the socket of the UI, which is announced to it
+ * by a `socketConnected` event. Their subscriptions are removed when the socket disconnects.
+ * Every socket only receives the events its subscribers subscribed to, or every event while the
+ * [LEGACY_SUBSCRIBER] is active.
+ */
 internal object SocketEventListener : EventListener {
 
     private val events = ALL_EVENT_CLASSES
         .filter { WebSocketEvent::class.java.isAssignableFrom(it) }
         .associateBy { it.eventName }
 
+    val eventNames: Set<String>
+        get() = events.keys
+
     /**
      * Contains all events that are registered in the current context
      */
     private val registeredEvents = Reference2ObjectOpenHashMap<Class<out Event>, EventHook<in Event>>()
 
+    /**
+     * Amount of subscribers of every registered event
+     */
+    private val subscriberCounts = Reference2IntOpenHashMap<Class<out Event>>()
+
+    private val subscriptions = Object2ObjectOpenHashMap<String, Set<Class<out Event>>>()
+
+    /**
+     * Socket every subscriber except the [LEGACY_SUBSCRIBER] is bound to
+     */
+    private val subscriberSockets = Object2ObjectOpenHashMap<String, SocketState>()
+
+    /**
+     * Connected sockets by [socketIdOf]
+     */
+    private val sockets = ConcurrentHashMap<String, SocketState>()
+
+    private class SocketState(val channel: Channel) {
+
+        /**
+         * Sends events as `["name",{...}]` instead of `{"name":"name","event":{...}}`
+         */
+        @Volatile
+        var compact = false
+
+        /**
+         * Subscribers bound to this socket, guarded by [lock]
+         */
+        val subscribers = ObjectOpenHashSet<String>()
+
+        /**
+         * Union of the subscriptions of [subscribers], replaced under [lock] and read while broadcasting
+         */
+        @Volatile
+        var eventClasses: Set<Class<out Event>> = emptySet()
+
+    }
+
+    /**
+     * Whether the [LEGACY_SUBSCRIBER] is active, in which case every socket receives every hooked event
+     */
+    @Volatile
+    private var legacy = false
+
+    /**
+     * Latest not yet sent instance of every coalesced event, in order of their first arrival
+     */
+    private val pendingEvents = Reference2ObjectLinkedOpenHashMap<Class<out Event>, Event>()
+
+    private var flushScheduled = false
+
+    private val lock = Any()
+
+    /**
+     * Time in milliseconds coalesced events are collected before being sent. 0 disables coalescing.
+     */
+    @Volatile
+    var coalesceWindow: Long = env("LB_INTEROP_COALESCE_WINDOW", "net.ccbluex.liquidbounce.interop.coalesceWindow")
+        ?.toLongOrNull()?.coerceAtLeast(0L) ?: 50L
+
     private val writeBuffer = ThreadLocal.withInitial { StringBuilderWriter(DEFAULT_BUFFER_SIZE) }
 
+    /**
+     * The web socket controller has no connect hook, so new sockets are looked for every tick and before sending
+     */
+    @Suppress("unused")
+    private val tickHandler = handler<GameTickEvent> {
+        discoverSockets()
+    }
+
     fun registerAll() {
-        events.keys.forEach { register(it) }
+        synchronized(lock) {
+            subscribeUnlocked(LEGACY_SUBSCRIBER, events.values.toSet())
+            legacy = true
+        }
     }
 
-    fun register(name: String) {
-        val eventClass = events[name] ?:
-            throw IllegalArgumentException("Unknown event: $name")
+    /**
+     * Replaces the subscriptions of [subscriber] with [names] and binds it to [socket].
+     * The first explicit subscription ends the [LEGACY_SUBSCRIBER].
+     *
+     * @throws IllegalArgumentException if an event or the socket is unknown
+     */
+    fun subscribe(subscriber: String, socket: String, names: Collection<String>) {
+        val eventClasses = names.mapTo(HashSet(names.size)) { name ->
+            events[name] ?: throw IllegalArgumentException("Unknown event: $name")
+        }
+        val state = sockets[socket] ?: throw IllegalArgumentException("Unknown socket: $socket")
 
+        synchronized(lock) {
+            // The socket might have disconnected in the meantime
+            require(sockets[socket] === state) { "Unknown socket: $socket" }
+
+            subscriptions.remove(LEGACY_SUBSCRIBER)?.forEach(::release)
+            legacy = false
+            subscribeUnlocked(subscriber, eventClasses)
+
+            val previousState = subscriberSockets.put(subscriber, state)
+            if (previousState != null && previousState !== state) {
+                previousState.subscribers.remove(subscriber)
+                updateEventClasses(previousState)
+            }
+            state.subscribers.add(subscriber)
+            updateEventClasses(state)
+        }
+    }
+
+    /**
+     * Must be called while holding [lock]
+     */
+    private fun updateEventClasses(state: SocketState) {
+        state.eventClasses = state.subscribers.flatMapTo(HashSet()) { subscriptions[it].orEmpty() }
+    }
+
+    private fun subscribeUnlocked(subscriber: String, eventClasses: Set<Class<out Event>>) {
+        val previous = subscriptions.put(subscriber, eventClasses)
+        // Acquire first, so events kept by both sets are not unhooked in between
+        eventClasses.forEach(::acquire)
+        previous?.forEach(::release)
+    }
+
+    /**
+     * Removes all subscriptions of [subscriber]. If no subscriber is left, the [LEGACY_SUBSCRIBER] is restored.
+     *
+     * @return false if [subscriber] had no subscriptions
+     */
+    fun unsubscribe(subscriber: String): Boolean {
+        synchronized(lock) {
+            val previous = subscriptions.remove(subscriber) ?: return false
+            previous.forEach(::release)
+            subscriberSockets.remove(subscriber)?.let { state ->
+                state.subscribers.remove(subscriber)
+                updateEventClasses(state)
+            }
+
+            if (subscriptions.isEmpty()) {
+                registerAll()
+            }
+            return true
+        }
+    }
+
+    /**
+     * @return null if the socket is unknown
+     */
+    fun isCompact(socket: String): Boolean? = sockets[socket]?.compact
+
+    /**
+     * Sets whether events are sent to [socket] as `["name",{...}]` instead of `{"name":"name","event":{...}}`.
+     *
+     * @return false if the socket is unknown
+     */
+    fun setCompact(socket: String, compact: Boolean): Boolean {
+        val state = sockets[socket] ?: return false
+        state.compact = compact
+        return true
+    }
+
+    private fun socketIdOf(channel: Channel): String = channel.id().asLongText()
+
+    /**
+     * Tracks sockets which connected since the last call and announces their id to them
+     */
+    private fun discoverSockets() {
+        val controller = httpServer.webSocketController ?: return
+
+        for (context in controller.activeContexts) {
+            val channel = context.channel()
+            val id = socketIdOf(channel)
+            if (sockets.containsKey(id) || !channel.isActive) {
+                continue
+            }
+
+            val state = SocketState(channel)
+            if (sockets.putIfAbsent(id, state) != null) {
+                continue
+            }
+
+            channel.closeFuture().addListener { disconnected(id) }
+            send(state, "{\"name\":\"socketConnected\",\"event\":{\"socket\":\"$id\"}}", "socketConnected")
+        }
+    }
+
+    /**
+     * Removes the subscriptions of all subscribers bound to the socket
+     */
+    private fun disconnected(id: String) {
+        val state = sockets.remove(id) ?: return
+
+        synchronized(lock) {
+            state.subscribers.toTypedArray().forEach(::unsubscribe)
+        }
+    }
+
+    fun subscriptionsOf(subscriber: String): Set<String> {
+        return synchronized(lock) {
+            subscriptions[subscriber]?.mapTo(HashSet()) { it.eventName } ?: emptySet()
+        }
+    }
+
+    private fun acquire(eventClass: Class<out Event>) {
+        if (subscriberCounts.addTo(eventClass, 1) == 0) {
+            register(eventClass)
+        }
+    }
+
+    private fun release(eventClass: Class<out Event>) {
+        if (subscriberCounts.addTo(eventClass, -1) == 1) {
+            subscriberCounts.removeInt(eventClass)
+            unregister(eventClass)
+        }
+    }
+
+    private fun register(eventClass: Class<out Event>) {
         if (registeredEvents.containsKey(eventClass)) {
-            error("Event $name is already registered")
+            error("Event ${eventClass.eventName} is already registered")
         }
 
         val eventHook = newEventHook(
@@ -66,41 +303,106 @@ internal object SocketEventListener : EventListener {
         EventManager.registerEventHook(eventClass, eventHook)
     }
 
-    fun unregister(name: String) {
-        val eventClass = events[name] ?:
-            throw IllegalArgumentException("Unknown event: $name")
-        val eventHook = registeredEvents[eventClass] ?:
+    private fun unregister(eventClass: Class<out Event>) {
+        val eventHook = registeredEvents.remove(eventClass) ?:
             throw IllegalArgumentException("No EventHook for event: $eventClass")
 
         EventManager.unregisterEventHook(eventClass, eventHook)
+        pendingEvents.remove(eventClass)
     }
 
     private fun writeToSockets(event: Event) {
-        if ((event as WebSocketEvent).serializeAsync) {
+        val webSocketEvent = event as WebSocketEvent
+        val window = coalesceWindow
+
+        if (webSocketEvent.coalesce && webSocketEvent.serializeAsync && window > 0L) {
+            synchronized(lock) {
+                pendingEvents[event.javaClass] = event
+                if (flushScheduled) {
+                    return
+                }
+                flushScheduled = true
+            }
+
+            CompletableFuture.delayedExecutor(window, TimeUnit.MILLISECONDS, Util.backgroundExecutor())
+                .execute(::flushPending)
+        } else if (webSocketEvent.serializeAsync) {
             Util.backgroundExecutor().execute { serializeAndBroadcast(event) }
         } else {
             serializeAndBroadcast(event)
         }
     }
 
+    private fun flushPending() {
+        val pending = synchronized(lock) {
+            flushScheduled = false
+            pendingEvents.values.toTypedArray().also { pendingEvents.clear() }
+        }
+
+        for (event in pending) {
+            serializeAndBroadcast(event)
+        }
+    }
+
     private fun serializeAndBroadcast(event: Event) {
-        val json = try {
-            val writer = writeBuffer.get()
+        discoverSockets()
+
+        var json: String? = null
+        var compactJson: String? = null
+        val eventClass = event.javaClass
+        val everySocket = legacy
+
+        for (state in sockets.values) {
+            if (!everySocket && eventClass !in state.eventClasses) {
+                continue
+            }
+
+            val message = if (state.compact) {
+                compactJson ?: serialize(event, compact = true)?.also { compactJson = it }
+            } else {
+                json ?: serialize(event, compact = false)?.also { json = it }
+            } ?: return
+
+            send(state, message, event.javaClass.eventName)
+        }
+    }
+
+    private fun serialize(event: Event, compact: Boolean): String? {
+        val writer = writeBuffer.get()
+        return try {
             JsonWriter(writer).use { writer ->
-                writer.beginObject()
-                writer.name("name").value(event.javaClass.eventName)
-                writer.name("event")
-                (event as WebSocketEvent).serializer.toJson(event, event.javaClass, writer)
-                writer.endObject()
+                if (compact) {
+                    writer.beginArray()
+                    writer.value(event.javaClass.eventName)
+                    (event as WebSocketEvent).serializer.toJson(event, event.javaClass, writer)
+                    writer.endArray()
+                } else {
+                    writer.beginObject()
+                    writer.name("name").value(event.javaClass.eventName)
+                    writer.name("event")
+                    (event as WebSocketEvent).serializer.toJson(event, event.javaClass, writer)
+                    writer.endObject()
+                }
             }
-            writer.toString().also { writer.builder.clear() }
+            writer.toString()
         } catch (e: Exception) {
             logger.error("Failed to serialize event $event", e)
+            null
+        } finally {
+            // A failed serialization must not leave its partial output in front of the next event
+            writer.builder.clear()
+        }
+    }
+
+    private fun send(state: SocketState, message: String, eventName: String) {
+        if (!state.channel.isActive) {
             return
         }
 
-        httpServer.webSocketController!!.broadcast(json) { _, t ->
-            logger.error("WebSocket event broadcast failed, event: ${event.javaClass.eventName}", t)
+        state.channel.writeAndFlush(TextWebSocketFrame(message)).addListener { future ->
+            if (!future.isSuccess) {
+                logger.error("WebSocket event broadcast failed, event: $eventName", future.cause())
+            }
         }
     }
 
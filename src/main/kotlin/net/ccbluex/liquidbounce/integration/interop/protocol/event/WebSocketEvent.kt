@@ -37,5 +37,13 @@ interface WebSocketEvent {
      * that is modified after the event is created.
      */
     val serializeAsync: Boolean get() = true
+
+    /**
+     * Indicates whether only the latest event of this type within the coalescing window should be sent.
+     * Meant for events fired every tick or frame, whose older instances are outdated by newer ones anyway.
+     *
+     * Only applies to events which are serialized asynchronously.
+     */
+    val coalesce: Boolean get() = false
 }
 
@@ -22,6 +22,7 @@
 package net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1
 
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.deleteAccount
+import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.deleteEventSubscription
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.deleteFavoriteAccount
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.deleteFavoriteProxy
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.deleteLocalStorage
@@ -33,6 +34,7 @@ import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getA
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getAllLocalStorage
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getClientInfo
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getComponents
+import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getEvents
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getGlobalConfig
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getLocalStorage
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.getLocationInfo
@@ -83,6 +85,8 @@ import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.post
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.postSwapAccounts
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.postToggleShader
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.putAllLocalStorage
+import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.putEventOptions
+import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.putEventSubscription
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.putFavoriteAccount
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.putFavoriteProxy
 import net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client.putGlobalConfig
@@ -146,6 +150,13 @@ internal fun Node.registerInteropFunctions() = withPath("/api/v1/client") {
         post("/logout", ::logoutUser)
     }
 
+    // Event Functions
+    get("/events", ::getEvents).apply {
+        put("/subscription", ::putEventSubscription)
+        delete("/subscription", ::deleteEventSubscription)
+        put("/options", ::putEventOptions)
+    }
+
     // OS File Functions
     post("/browsePath", ::postBrowsePath)
     post("/fileDialog", ::postFileDialog)
@@ -0,0 +1,98 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.integration.interop.protocol.rest.v1.client
+
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import net.ccbluex.liquidbounce.integration.interop.protocol.event.SocketEventListener
+import net.ccbluex.netty.http.model.RequestObject
+import net.ccbluex.netty.http.util.httpBadRequest
+import net.ccbluex.netty.http.util.httpForbidden
+import net.ccbluex.netty.http.util.httpNoContent
+import net.ccbluex.netty.http.util.httpOk
+
+/**
+ * Event stream RestAPI
+ *
+ * Lets a UI choose which events it receives over the WebSocket and how they are sent.
+ * A subscriber is any id chosen by the UI, e.g. one per page. A socket is the id announced by the
+ * `socketConnected` event on the WebSocket of the UI.
+ */
+
+// GET /api/v1/client/events
+fun getEvents(requestObject: RequestObject) = with(requestObject) {
+    httpOk(JsonObject().apply {
+        add("events", JsonArray().apply {
+            SocketEventListener.eventNames.forEach { add(it) }
+        })
+        queryParams["subscriber"]?.let { subscriber ->
+            add("subscriptions", JsonArray().apply {
+                SocketEventListener.subscriptionsOf(subscriber).forEach { add(it) }
+            })
+        }
+        addProperty("coalesceWindow", SocketEventListener.coalesceWindow)
+        queryParams["socket"]?.let(SocketEventListener::isCompact)?.let { compact ->
+            addProperty("compact", compact)
+        }
+    })
+}
+
+// PUT /api/v1/client/events/subscription
+fun putEventSubscription(requestObject: RequestObject) = with(requestObject) {
+    val body = asJson<JsonObject>()
+    val subscriber = body["subscriber"]?.asString ?: return@with httpForbidden("No subscriber")
+    val socket = body["socket"]?.asString ?: return@with httpForbidden("No socket")
+    val events = body["events"]?.asJsonArray?.map { it.asString } ?: return@with httpForbidden("No events")
+
+    try {
+        SocketEventListener.subscribe(subscriber, socket, events)
+    } catch (e: IllegalArgumentException) {
+        return@with httpBadRequest(e.message ?: "Invalid events")
+    }
+    httpNoContent()
+}
+
+// DELETE /api/v1/client/events/subscription
+fun deleteEventSubscription(requestObject: RequestObject) = with(requestObject) {
+    val subscriber = queryParams["subscriber"] ?: return@with httpForbidden("No subscriber")
+
+    if (!SocketEventListener.unsubscribe(subscriber)) {
+        return@with httpForbidden("No subscription for $subscriber")
+    }
+    httpNoContent()
+}
+
+// PUT /api/v1/client/events/options
+fun putEventOptions(requestObject: RequestObject) = with(requestObject) {
+    val body = asJson<JsonObject>()
+
+    body["coalesceWindow"]?.asLong?.let { coalesceWindow ->
+        if (coalesceWindow < 0L) {
+            return@with httpBadRequest("Coalesce window must not be negative")
+        }
+        SocketEventListener.coalesceWindow = coalesceWindow
+    }
+    body["compact"]?.asBoolean?.let { compact ->
+        val socket = body["socket"]?.asString ?: return@with httpForbidden("No socket")
+        if (!SocketEventListener.setCompact(socket, compact)) {
+            return@with httpBadRequest("Unknown socket: $socket")
+        }
+    }
+    httpNoContent()
+}
@@ -18,11 +18,11 @@
  */
 package net.ccbluex.liquidbounce.integration.theme.component.components.minimap
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
 import net.ccbluex.liquidbounce.utils.block.ChunkScanner
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.ccbluex.liquidbounce.utils.client.mc
-import net.ccbluex.liquidbounce.utils.math.dotProduct
-import net.ccbluex.liquidbounce.utils.math.similarity
+import net.ccbluex.liquidbounce.utils.io.worldStorageFolder
 import net.minecraft.client.gui.render.TextureSetup
 import net.minecraft.core.BlockPos
 import net.minecraft.world.level.ChunkPos
@@ -35,8 +35,10 @@ import org.joml.component1
 import org.joml.component2
 import java.awt.Color
 import kotlin.math.PI
+import kotlin.math.abs
 import kotlin.math.roundToInt
 import kotlin.math.sin
+import kotlin.math.sqrt
 
 object ChunkRenderer {
     private val textureAtlasManager = MinimapTextureAtlasManager()
@@ -45,168 +47,274 @@ object ChunkRenderer {
     @JvmField
     val SUN_DIRECTION: Vector2ic = Vector2i(2, 1)
 
+    /**
+     * Tiles of the current server and dimension on disk, opened on first use
+     */
+    @Volatile
+    private var tileStore: MinimapTileStore? = null
+
+    /**
+     * Incremented by [unloadEverything]. Work started for a previous world compares the generation it started with,
+     * so it neither reopens [tileStore] for the current world nor writes its colors into it.
+     */
+    @Volatile
+    private var generation = 0
+
+    /**
+     * Chunks which are not loaded in the world, but have been paged into the atlas from [tileStore]
+     */
+    private val pagedInChunks = LongOpenHashSet()
+
+    private val tileBuffer = IntArray(16 * 16)
+
     fun unloadEverything() {
+        synchronized(this) {
+            generation++
+            tileStore?.close()
+            tileStore = null
+        }
+
         heightmapManager.unloadAllChunks()
         textureAtlasManager.deallocateAll()
+        synchronized(pagedInChunks) {
+            pagedInChunks.clear()
+        }
+    }
+
+    /**
+     * Returns the store of [generation], opening it if needed, or null if [generation] is outdated.
+     */
+    private fun tileStore(generation: Int = this.generation): MinimapTileStore? {
+        openedTileStore(generation)?.let { return it }
+
+        return synchronized(this) {
+            if (generation != this.generation) {
+                return null
+            }
+
+            tileStore ?: worldStorageFolder("minimap")?.let(::MinimapTileStore)?.also { tileStore = it }
+        }
+    }
+
+    /**
+     * Returns the store of [generation] if it has been opened already.
+     *
+     * The store is read before the generation is compared, as a store opened after an unload always belongs
+     * to a newer generation, while a store closed in between ignores all writes.
+     */
+    private fun openedTileStore(generation: Int): MinimapTileStore? {
+        val store = tileStore
+        return store.takeIf { generation == this.generation }
     }
 
+    /**
+     * Returns the atlas position of [chunkPos]. Chunks which are not loaded are paged in from disk, if explored before.
+     */
     fun getAtlasPosition(chunkPos: Long): MinimapTextureAtlasManager.AtlasPosition {
+        textureAtlasManager.get(chunkPos)?.let { return it }
+
+        // Loaded chunks are on their way through the coloring pipeline
+        if (heightmapManager.getHeightmap(chunkPos) != null) {
+            return textureAtlasManager.getOrNotLoadedTexture(chunkPos)
+        }
+
+        val store = tileStore() ?: return textureAtlasManager.getOrNotLoadedTexture(chunkPos)
+        if (!textureAtlasManager.hasFreePosition() ||
+            !store.readTile(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos), tileBuffer)
+        ) {
+            return textureAtlasManager.getOrNotLoadedTexture(chunkPos)
+        }
+
+        textureAtlasManager.editChunk(chunkPos) { texture, atlasPosition ->
+            for (offZ in 0..15) {
+                for (offX in 0..15) {
+                    val (texX, texY) = atlasPosition.getPosOnAtlas(offX, offZ)
+                    texture.pixels!!.setPixel(texX, texY, tileBuffer[offZ shl 4 or offX])
+                }
+            }
+        }
+        synchronized(pagedInChunks) {
+            pagedInChunks.add(chunkPos)
+        }
+
         return textureAtlasManager.getOrNotLoadedTexture(chunkPos)
     }
 
+    /**
+     * Frees the atlas positions of paged in chunks which are further than [radius] chunks away.
+     */
+    fun evictPagedInChunks(centerX: Int, centerZ: Int, radius: Int) {
+        synchronized(pagedInChunks) {
+            val iterator = pagedInChunks.longIterator()
+            while (iterator.hasNext()) {
+                val chunkPos = iterator.nextLong()
+                val distance = maxOf(abs(ChunkPos.getX(chunkPos) - centerX), abs(ChunkPos.getZ(chunkPos) - centerZ))
+                if (distance > radius) {
+                    iterator.remove()
+                    textureAtlasManager.deallocate(chunkPos)
+                }
+            }
+        }
+    }
+
     fun prepareRendering(): TextureSetup {
         return textureAtlasManager.prepareRendering()
     }
 
+    /**
+     * Colors chunks on the [ChunkScanner] workers and stages the results on the texture atlas,
+     * which copies them into the texture once per frame.
+     */
     object MinimapChunkUpdateSubscriber : ChunkScanner.BlockChangeSubscriber {
         override val shouldCallRecordBlockOnChunkUpdate: Boolean
             get() = false
 
+        private val threadLocalPos = ThreadLocal.withInitial(BlockPos::MutableBlockPos)
+
         override fun recordBlock(
             pos: BlockPos,
             state: BlockState,
             cleared: Boolean,
         ) {
+            val generation = ChunkRenderer.generation
             val heightmapUpdated = heightmapManager.updatePosition(pos, state)
 
-            val positionsToUpdate =
-                if (heightmapUpdated) {
-                    arrayOf(
-                        pos,
-                        pos.offset(1, 0, 0),
-                        pos.offset(-1, 0, 0),
-                        pos.offset(0, 0, 1),
-                        pos.offset(0, 0, -1),
-                    )
-                } else {
-                    arrayOf(pos)
-                }
+            updatePixel(pos.x, pos.z, generation)
 
-            for (posToUpdate in positionsToUpdate) {
-                val color = getColor(posToUpdate.x, posToUpdate.z)
+            if (heightmapUpdated) {
+                // The shading of the neighbors depends on the height of this column
+                updatePixel(pos.x + 1, pos.z, generation)
+                updatePixel(pos.x - 1, pos.z, generation)
+                updatePixel(pos.x, pos.z + 1, generation)
+                updatePixel(pos.x, pos.z - 1, generation)
+            }
+        }
 
-                textureAtlasManager.editChunk(ChunkPos.asLong(posToUpdate)) { texture, atlasPosition ->
-                    val (x, y) = atlasPosition.getPosOnAtlas(posToUpdate.x and 15, posToUpdate.z and 15)
+        private fun updatePixel(x: Int, z: Int, generation: Int) {
+            // Columns of chunks which are not loaded would be colored as air and overwrite explored tiles
+            if (heightmapManager.getHeightmap(ChunkPos.asLong(x shr 4, z shr 4)) == null) {
+                return
+            }
 
-                    texture.pixels!!.setPixel(x, y, color)
-                }
+            val chunk = mc.level?.getChunk(x shr 4, z shr 4) ?: return
+            val color = getColor(chunk, x, z, threadLocalPos.get())
+
+            if (generation != ChunkRenderer.generation) {
+                return
             }
+
+            openedTileStore(generation)?.writePixel(x, z, color)
+            textureAtlasManager.stagePixel(x, z, color)
         }
 
-        private val offsetsToCheck = arrayOf(
-            Vector2i(-1, 0),
-            Vector2i(1, 0),
-            Vector2i(0, -1),
-            Vector2i(0, 1),
-            Vector2i(-1, 1),
-            Vector2i(1, 1),
-            Vector2i(-1, -1),
-            Vector2i(1, -1),
+        /**
+         * Offsets of the neighbors which shade a column, x and z interleaved
+         */
+        private val offsetsToCheck = intArrayOf(
+            -1, 0,
+            1, 0,
+            0, -1,
+            0, 1,
+            -1, 1,
+            1, 1,
+            -1, -1,
+            1, -1,
         )
 
         private val AIR_COLOR = Color(179, 207, 255).rgb
 
-        private fun getColor(x: Int, z: Int): Int {
-            try {
-                val chunk = mc.level?.getChunk(x shr 4, z shr 4) ?: return AIR_COLOR
+        private val SUN_DIRECTION_LENGTH_SQUARED = SUN_DIRECTION.lengthSquared()
 
+        private fun getColor(chunk: LevelChunk, x: Int, z: Int, pos: BlockPos.MutableBlockPos): Int {
+            try {
                 val height = heightmapManager.getHeight(x, z)
 
-                val higherOffsets = offsetsToCheck.filter { offset ->
-                    heightmapManager.getHeight(x + offset.x, z + offset.y) > height
+                var higherCount = 0
+                var higherX = 0
+                var higherZ = 0
+                for (i in offsetsToCheck.indices step 2) {
+                    val offX = offsetsToCheck[i]
+                    val offZ = offsetsToCheck[i + 1]
+
+                    if (heightmapManager.getHeight(x + offX, z + offZ) > height) {
+                        higherCount++
+                        higherX += offX
+                        higherZ += offZ
+                    }
                 }
 
-                val higherOffsetVec = Vector2i(0, 0)
-                higherOffsets.forEach { higherOffsetVec.add(it) }
-
                 val brightness =
-                    if (higherOffsets.size < 2) {
+                    if (higherCount < 2) {
                         220.0 / 255.0
-                    } else if (higherOffsetVec.x == 0 && higherOffsetVec.y == 0) {
+                    } else if (higherX == 0 && higherZ == 0) {
                         130.0 / 255.0
                     } else {
-                        val similarityToSunDirection = higherOffsetVec.similarity(SUN_DIRECTION)
-                        val eee = higherOffsetVec.dotProduct(x, z).toDouble() / higherOffsetVec.length()
+                        val lengthSquared = higherX * higherX + higherZ * higherZ
+                        val similarityToSunDirection =
+                            (higherX * SUN_DIRECTION.x() + higherZ * SUN_DIRECTION.y()) /
+                                sqrt((lengthSquared * SUN_DIRECTION_LENGTH_SQUARED).toDouble())
+                        val eee = (higherX.toLong() * x + higherZ.toLong() * z) / sqrt(lengthSquared.toDouble())
                         val sine = sin(eee * 0.5 * PI)
 
                         (190.0 + (similarityToSunDirection * 55.0) + sine * 10.0) / 255.0
                     }
 
-                val surfaceBlockPos = BlockPos(x, height, z)
-                val surfaceBlockState = chunk.getBlockState(surfaceBlockPos)
+                pos.set(x, height, z)
+                val surfaceBlockState = chunk.getBlockState(pos)
 
                 if (surfaceBlockState.isAir) {
                     return AIR_COLOR
                 }
 
-                val baseColor = surfaceBlockState.getMapColor(chunk, surfaceBlockPos)
+                val baseColor = surfaceBlockState.getMapColor(chunk, pos)
                     .calculateARGBColor(Brightness.HIGH)
 
-                val color = Color(baseColor)
+                val red = ((baseColor shr 16 and 0xFF) * brightness).roundToInt().coerceIn(0, 255)
+                val green = ((baseColor shr 8 and 0xFF) * brightness).roundToInt().coerceIn(0, 255)
+                val blue = ((baseColor and 0xFF) * brightness).roundToInt().coerceIn(0, 255)
 
-                return Color(
-                    (color.red * brightness).roundToInt(),
-                    (color.green * brightness).roundToInt(),
-                    (color.blue * brightness).roundToInt(),
-                ).rgb
+                return (0xFF shl 24) or (red shl 16) or (green shl 8) or blue
             } catch (e: Exception) {
                 logger.error("Failed to get color for chunk at $x, $z", e)
                 return AIR_COLOR
             }
         }
 
-        /**
-         * [0] -> (0, 0)
-         * [1] -> (0, 15)
-         * [2] -> (15, 0)
-         * [3] -> (15, 15)
-         */
-        private val borderOffsets = arrayOf(
-            Vector2i(0, 0),
-            Vector2i(0, 15),
-            Vector2i(15, 0),
-            Vector2i(15, 15),
-        )
-
         override fun chunkUpdate(chunk: LevelChunk) {
+            val generation = ChunkRenderer.generation
             val chunkPos = chunk.pos
             val x = chunkPos.x
             val z = chunkPos.z
 
-            val chunkBordersToUpdate =
-                arrayOf(
-                    Triple(ChunkPos(x + 1, z), borderOffsets[0], borderOffsets[1]),
-                    Triple(ChunkPos(x - 1, z), borderOffsets[2], borderOffsets[3]),
-                    Triple(ChunkPos(x, z + 1), borderOffsets[0], borderOffsets[2]),
-                    Triple(ChunkPos(x, z - 1), borderOffsets[1], borderOffsets[3]),
-                )
-
             heightmapManager.updateChunk(chunkPos)
 
-            textureAtlasManager.editChunk(chunkPos.toLong()) { texture, atlasPosition ->
-                for (offX in 0..15) {
-                    for (offZ in 0..15) {
-                        val (texX, texY) = atlasPosition.getPosOnAtlas(offX, offZ)
-
-                        val color = getColor(offX or (x shl 4), offZ or (z shl 4))
+            // The chunk is loaded now, so it is unloaded with the world instead of being evicted
+            synchronized(pagedInChunks) {
+                pagedInChunks.remove(chunkPos.toLong())
+            }
 
-                        texture.pixels!!.setPixel(texX, texY, color)
-                    }
+            val pos = threadLocalPos.get()
+            val colors = IntArray(16 * 16)
+            for (offZ in 0..15) {
+                for (offX in 0..15) {
+                    colors[offZ shl 4 or offX] = getColor(chunk, offX or (x shl 4), offZ or (z shl 4), pos)
                 }
             }
 
-            for ((otherPos, from, to) in chunkBordersToUpdate) {
-                textureAtlasManager.editChunk(otherPos.toLong()) { texture, atlasPosition ->
-                    for (offX in from.x..to.x) {
-                        for (offZ in from.y..to.y) {
-                            val (texX, texY) = atlasPosition.getPosOnAtlas(offX, offZ)
+            // The world has been unloaded while coloring
+            if (generation != ChunkRenderer.generation) {
+                return
+            }
 
-                            val color = getColor(offX or otherPos.minBlockX, offZ or otherPos.minBlockZ)
+            textureAtlasManager.stageTile(chunkPos.toLong(), colors)
+            tileStore(generation)?.writeTile(x, z, colors)
 
-                            texture.pixels!!.setPixel(texX, texY, color)
-                        }
-                    }
-                }
+            // The borders of the neighbors are shaded by the heights of this chunk
+            for (i in 0..15) {
+                updatePixel(chunkPos.maxBlockX + 1, chunkPos.minBlockZ + i, generation)
+                updatePixel(chunkPos.minBlockX - 1, chunkPos.minBlockZ + i, generation)
+                updatePixel(chunkPos.minBlockX + i, chunkPos.maxBlockZ + 1, generation)
+                updatePixel(chunkPos.minBlockX + i, chunkPos.minBlockZ - 1, generation)
             }
         }
 
@@ -18,6 +18,7 @@
  */
 package net.ccbluex.liquidbounce.integration.theme.component.components.minimap
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.ccbluex.liquidbounce.utils.client.mc
 import net.minecraft.core.BlockPos
@@ -25,48 +26,72 @@ import net.minecraft.world.level.ChunkPos
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.chunk.ChunkAccess
 import net.minecraft.world.level.material.MapColor
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
+/**
+ * Height of columns whose chunk has no heightmap (yet)
+ */
+private const val DEFAULT_HEIGHT = 255
+
+/**
+ * Stores the surface height of every column of the loaded chunks.
+ *
+ * Every chunk is a plain `IntArray(16 * 16)` indexed by `z shl 4 or x`, keyed by [ChunkPos.asLong],
+ * so height lookups while coloring do not allocate.
+ */
 class MinimapHeightmapManager {
-    private val heightmaps = ConcurrentHashMap<ChunkPos, HeightmapForChunk>()
+    private val heightmaps = Long2ObjectOpenHashMap<IntArray>()
+
+    private val lock = ReentrantReadWriteLock()
 
     fun getHeight(x: Int, z: Int): Int {
-        val chunkPos = ChunkPos(x shr 4, z shr 4)
-        val heightmap = getHeightmap(chunkPos)
+        val heightmap = getHeightmap(ChunkPos.asLong(x shr 4, z shr 4)) ?: return DEFAULT_HEIGHT
 
-        return heightmap.getHeight(x and 15, z and 15)
+        return heightmap[(z and 15) shl 4 or (x and 15)]
     }
 
-    private fun getHeightmap(chunkPos: ChunkPos): HeightmapForChunk {
-        return heightmaps.computeIfAbsent(chunkPos) { HeightmapForChunk() }
+    /**
+     * @return the heights of the chunk indexed by `z shl 4 or x`, do not modify
+     */
+    fun getHeightmap(chunkPos: Long): IntArray? {
+        return lock.read { heightmaps[chunkPos] }
     }
 
     fun updateChunk(chunkPos: ChunkPos) {
         val chunk = mc.level?.getChunk(chunkPos.x, chunkPos.z) ?: return
 
-        val heightmap = getHeightmap(chunkPos)
+        val heightmap = IntArray(16 * 16)
+        val pos = BlockPos.MutableBlockPos()
 
-        for (x in 0..15) {
-            for (z in 0..15) {
-                heightmap.setHeight(x, z, chunk.calculateHeight(x, z))
+        for (z in 0..15) {
+            for (x in 0..15) {
+                heightmap[z shl 4 or x] = chunk.calculateHeight(x, z, pos)
             }
         }
+
+        lock.write {
+            heightmaps.put(chunkPos.toLong(), heightmap)
+        }
     }
 
     /**
      * @return true if the heightmap was changed
      */
     fun updatePosition(pos: BlockPos, newState: BlockState): Boolean {
-        val chunkPos = ChunkPos(pos)
-        val heightmap = getHeightmap(chunkPos)
+        val chunkX = pos.x shr 4
+        val chunkZ = pos.z shr 4
+        val heightmap = getHeightmap(ChunkPos.asLong(chunkX, chunkZ)) ?: return false
+        val index = (pos.z and 15) shl 4 or (pos.x and 15)
 
-        val currentHeight = heightmap.getHeight(pos.x and 15, pos.z and 15)
+        val currentHeight = heightmap[index]
 
-        val newHeight = mc.level?.getChunk(chunkPos.x, chunkPos.z)
+        val newHeight = mc.level?.getChunk(chunkX, chunkZ)
             ?.calculateHeightIfNeeded(currentHeight, pos, newState)
 
         return if (newHeight != null) {
-            heightmap.setHeight(pos.x and 15, pos.z and 15, newHeight)
+            heightmap[index] = newHeight
 
             true
         } else {
@@ -84,7 +109,7 @@ class MinimapHeightmapManager {
                 // The changed block is the world surface. If it is not a surface block anymore,
                 // we need to find a new surface block under it
                 if (!isSurface(pos, newState)) {
-                    calculateHeight(pos.x, pos.z, maxY = currentHeight)
+                    calculateHeight(pos.x and 15, pos.z and 15, BlockPos.MutableBlockPos(), maxY = currentHeight)
                 } else {
                     null
                 }
@@ -102,10 +127,15 @@ class MinimapHeightmapManager {
         }
     }
 
-    private fun ChunkAccess.calculateHeight(x: Int, z: Int, maxY: Int? = null): Int {
+    private fun ChunkAccess.calculateHeight(
+        x: Int,
+        z: Int,
+        pos: BlockPos.MutableBlockPos,
+        maxY: Int? = null,
+    ): Int {
         val maxHeight = (maxY ?: height) - 1
 
-        val pos = BlockPos.MutableBlockPos(x, maxHeight, z)
+        pos.set(x, maxHeight, z)
 
         try {
             while (pos.y > minY) {
@@ -127,29 +157,14 @@ class MinimapHeightmapManager {
     }
 
     fun unloadChunk(chunkPos: ChunkPos) {
-        this.heightmaps.remove(chunkPos)
+        lock.write {
+            heightmaps.remove(chunkPos.toLong())
+        }
     }
 
     fun unloadAllChunks() {
-        heightmaps.clear()
-    }
-}
-
-class HeightmapForChunk {
-    private val heightmap = IntArray(16 * 16) { 255 }
-
-    fun getHeight(
-        x: Int,
-        z: Int,
-    ): Int {
-        return heightmap[(z shl 4) or x]
-    }
-
-    fun setHeight(
-        x: Int,
-        z: Int,
-        height: Int,
-    ) {
-        heightmap[(z shl 4) or x] = height
+        lock.write {
+            heightmaps.clear()
+        }
     }
 }
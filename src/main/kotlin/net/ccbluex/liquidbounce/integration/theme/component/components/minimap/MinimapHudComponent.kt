@@ -170,6 +170,8 @@ object MinimapHudComponent : NativeHudComponent("Minimap", false, Alignment(
 
         val chunksToRenderAround = ceil(Mth.SQRT_OF_TWO * (viewDistance + 1)).toInt()
 
+        ChunkRenderer.evictPagedInChunks(baseX, baseZ, chunksToRenderAround + 1)
+
         val scale = minimapSize / (2.0F * viewDistance)
 
         with(event.context) {
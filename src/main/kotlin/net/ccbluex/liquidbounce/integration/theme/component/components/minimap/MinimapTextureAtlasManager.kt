@@ -18,6 +18,7 @@
  */
 package net.ccbluex.liquidbounce.integration.theme.component.components.minimap
 
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import it.unimi.dsi.fastutil.objects.ObjectArrayList
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet
@@ -28,6 +29,8 @@ import net.ccbluex.liquidbounce.utils.render.textureSetup
 import net.ccbluex.liquidbounce.utils.render.uploadRect
 import net.minecraft.client.gui.render.TextureSetup
 import net.minecraft.client.renderer.texture.DynamicTexture
+import net.minecraft.core.BlockPos
+import net.minecraft.world.level.ChunkPos
 import org.joml.Vector2i
 import java.util.concurrent.locks.ReentrantReadWriteLock
 import java.util.function.BiConsumer
@@ -70,6 +73,19 @@ class MinimapTextureAtlasManager {
 
     private val lock = ReentrantReadWriteLock()
 
+    /**
+     * Tiles colored by the chunk workers, waiting to be copied into the texture on the render thread.
+     * Key -> ChunkPos, value -> colors indexed by `z shl 4 or x`
+     */
+    private val stagedTiles = Long2ObjectOpenHashMap<IntArray>()
+
+    /**
+     * Single pixels colored by the chunk workers. Key -> [BlockPos.asLong] with y = 0
+     */
+    private val stagedPixels = Long2IntOpenHashMap()
+
+    private val stagingLock = Any()
+
     private var allocated = false
 
     init {
@@ -94,12 +110,19 @@ class MinimapTextureAtlasManager {
     }
 
     fun deallocate(chunkPos: Long) {
+        synchronized(stagingLock) {
+            stagedTiles.remove(chunkPos)
+        }
         lock.write {
             chunkPosAtlasPosMap.remove(chunkPos)?.apply(availableAtlasPositions::push)
         }
     }
 
     fun deallocateAll() {
+        synchronized(stagingLock) {
+            stagedTiles.clear()
+            stagedPixels.clear()
+        }
         lock.write {
             availableAtlasPositions.addAll(chunkPosAtlasPosMap.values)
             chunkPosAtlasPosMap.clear()
@@ -111,6 +134,10 @@ class MinimapTextureAtlasManager {
         return get(chunkPos) ?: NOT_LOADED_ATLAS_POSITION
     }
 
+    fun hasFreePosition(): Boolean {
+        return lock.read { availableAtlasPositions.isNotEmpty() }
+    }
+
     fun get(chunkPos: Long): AtlasPosition? {
         return lock.read { chunkPosAtlasPosMap[chunkPos] }
     }
@@ -119,6 +146,88 @@ class MinimapTextureAtlasManager {
         return chunkPosAtlasPosMap[chunkPos] ?: allocate(chunkPos)
     }
 
+    /**
+     * Stages the colors of a whole chunk. They are written into the texture by the next [prepareRendering].
+     *
+     * @param colors indexed by `z shl 4 or x`, must not be modified afterward
+     */
+    fun stageTile(chunkPos: Long, colors: IntArray) {
+        synchronized(stagingLock) {
+            stagedTiles.put(chunkPos, colors)
+        }
+    }
+
+    /**
+     * Stages the color of a single column. It is only written by the next [prepareRendering] if its chunk
+     * has a position on the atlas by then.
+     */
+    fun stagePixel(blockX: Int, blockZ: Int, color: Int) {
+        synchronized(stagingLock) {
+            val staged = stagedTiles[ChunkPos.asLong(blockX shr 4, blockZ shr 4)]
+            if (staged != null) {
+                staged[(blockZ and 15) shl 4 or (blockX and 15)] = color
+            } else {
+                stagedPixels.put(BlockPos.asLong(blockX, 0, blockZ), color)
+            }
+        }
+    }
+
+    /**
+     * Copies the staged tiles and pixels into the texture. Must be called on the render thread.
+     */
+    private fun applyStaged() {
+        val pixels = this.texture.pixels!!
+
+        synchronized(stagingLock) {
+            if (stagedTiles.isEmpty() && stagedPixels.isEmpty()) {
+                return
+            }
+
+            lock.write {
+                // Pixels staged here predate the tile of their chunk, so the tiles are written last
+                for (entry in stagedPixels.long2IntEntrySet()) {
+                    val blockX = BlockPos.getX(entry.longKey)
+                    val blockZ = BlockPos.getZ(entry.longKey)
+                    val atlasPosition = chunkPosAtlasPosMap[ChunkPos.asLong(blockX shr 4, blockZ shr 4)] ?: continue
+
+                    pixels.setPixel(
+                        atlasPosition.baseXOnAtlas or (blockX and 15),
+                        atlasPosition.baseYOnAtlas or (blockZ and 15),
+                        entry.intValue,
+                    )
+                    dirtyAtlasPositions.add(atlasPosition)
+                }
+
+                // Tiles which do not fit into the atlas anymore stay staged until a position is freed
+                val iterator = stagedTiles.long2ObjectEntrySet().fastIterator()
+                while (iterator.hasNext()) {
+                    val entry = iterator.next()
+                    val colors = entry.value
+                    val atlasPosition = chunkPosAtlasPosMap[entry.longKey]
+                        ?: availableAtlasPositions.removeLastOrNull()?.also {
+                            chunkPosAtlasPosMap.put(entry.longKey, it)
+                        }
+                        ?: break
+                    iterator.remove()
+
+                    val baseX = atlasPosition.baseXOnAtlas
+                    val baseY = atlasPosition.baseYOnAtlas
+                    for (z in 0..15) {
+                        for (x in 0..15) {
+                            pixels.setPixel(baseX or x, baseY or z, colors[z shl 4 or x])
+                        }
+                    }
+                    dirtyAtlasPositions.add(atlasPosition)
+                }
+            }
+
+            stagedPixels.clear()
+        }
+    }
+
+    /**
+     * Writes directly into the texture. Must be called on the render thread.
+     */
     fun editChunk(
         chunkPos: Long,
         editor: BiConsumer<DynamicTexture, AtlasPosition>,
@@ -138,6 +247,8 @@ class MinimapTextureAtlasManager {
      * @return the [TextureSetup] of the texture
      */
     fun prepareRendering(): TextureSetup {
+        applyStaged()
+
         lock.read {
             if (this.dirtyAtlasPositions.isEmpty()) {
                 return this.texture.textureSetup
@@ -0,0 +1,214 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.integration.theme.component.components.minimap
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.ccbluex.liquidbounce.utils.client.logger
+import net.minecraft.world.level.ChunkPos
+import sun.misc.Unsafe
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * Size of a region in chunks (size x size)
+ */
+private const val REGION_SIZE = 32
+
+private const val CHUNKS_PER_REGION = REGION_SIZE * REGION_SIZE
+
+/**
+ * Colors (ARGB int) of one chunk
+ */
+private const val TILE_BYTES = 16 * 16 * Int.SIZE_BYTES
+
+/**
+ * One presence byte per chunk followed by the tiles
+ */
+private const val REGION_FILE_SIZE = CHUNKS_PER_REGION + CHUNKS_PER_REGION * TILE_BYTES.toLong()
+
+/**
+ * Amount of regions which are kept mapped at the same time
+ */
+private const val MAX_MAPPED_REGIONS = 16
+
+/**
+ * Used to unmap regions right away, null if the runtime does not provide it
+ */
+private val unsafe: Unsafe? = runCatching {
+    Unsafe::class.java.getDeclaredField("theUnsafe").apply { isAccessible = true }.get(null) as Unsafe
+}.onFailure {
+    logger.warn("Unable to unmap minimap regions, they are released on garbage collection", it)
+}.getOrNull()
+
+/**
+ * Persists colored minimap tiles of one server and dimension in [folder].
+ *
+ * Chunks are grouped into regions of 32x32 chunks. Every region is a memory-mapped file with a fixed slot
+ * per chunk, so tiles are written incrementally while chunks are colored and can be paged back
+ * into the atlas without parsing anything or keeping them on the heap.
+ *
+ * This class is thread-safe. Regions are only accessed while holding the lock, because they are unmapped
+ * when evicted or closed.
+ */
+class MinimapTileStore(private val folder: File) : Closeable {
+
+    private val regions = Long2ObjectLinkedOpenHashMap<MappedByteBuffer>()
+
+    /**
+     * Regions which do not exist on disk, so reads do not hit the file system every frame
+     */
+    private val absentRegions = LongOpenHashSet()
+
+    private var closed = false
+
+    /**
+     * Writes a whole tile and marks it as present.
+     *
+     * @param colors 16x16 ARGB colors, indexed by `z << 4 | x`
+     */
+    fun writeTile(chunkX: Int, chunkZ: Int, colors: IntArray): Unit = synchronized(regions) {
+        val buffer = region(chunkX, chunkZ, create = true) ?: return
+        val slot = slotIndex(chunkX, chunkZ)
+        val offset = tileOffset(slot)
+
+        for (i in 0 until 256) {
+            buffer.putInt(offset + i * Int.SIZE_BYTES, colors[i])
+        }
+        buffer.put(slot, 1)
+    }
+
+    /**
+     * Updates a single pixel of a tile which has already been written.
+     */
+    fun writePixel(blockX: Int, blockZ: Int, color: Int): Unit = synchronized(regions) {
+        val chunkX = blockX shr 4
+        val chunkZ = blockZ shr 4
+        val buffer = region(chunkX, chunkZ, create = false) ?: return
+        val slot = slotIndex(chunkX, chunkZ)
+        if (buffer.get(slot).toInt() == 0) {
+            return
+        }
+
+        buffer.putInt(tileOffset(slot) + ((blockZ and 15) shl 4 or (blockX and 15)) * Int.SIZE_BYTES, color)
+    }
+
+    /**
+     * Reads the colors of a tile into [colors].
+     *
+     * @return false if the tile has never been written
+     */
+    fun readTile(chunkX: Int, chunkZ: Int, colors: IntArray): Boolean = synchronized(regions) {
+        val buffer = region(chunkX, chunkZ, create = false) ?: return false
+        val slot = slotIndex(chunkX, chunkZ)
+        if (buffer.get(slot).toInt() == 0) {
+            return false
+        }
+
+        val offset = tileOffset(slot)
+        for (i in 0 until 256) {
+            colors[i] = buffer.getInt(offset + i * Int.SIZE_BYTES)
+        }
+        true
+    }
+
+    /**
+     * Must be called while holding the lock of [regions].
+     */
+    private fun region(chunkX: Int, chunkZ: Int, create: Boolean): MappedByteBuffer? {
+        if (closed) {
+            return null
+        }
+
+        val regionX = Math.floorDiv(chunkX, REGION_SIZE)
+        val regionZ = Math.floorDiv(chunkZ, REGION_SIZE)
+        val key = ChunkPos.asLong(regionX, regionZ)
+
+        regions.getAndMoveToLast(key)?.let { return it }
+
+        if (!create && key in absentRegions) {
+            return null
+        }
+
+        val file = folder.resolve("r.$regionX.$regionZ.lbmap")
+        if (!create && !file.exists()) {
+            absentRegions.add(key)
+            return null
+        }
+
+        val buffer = try {
+            folder.mkdirs()
+            FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+            ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_FILE_SIZE)
+            }
+        } catch (e: IOException) {
+            logger.warn("Failed to map minimap region $file", e)
+            absentRegions.add(key)
+            return null
+        }
+
+        absentRegions.remove(key)
+        if (regions.size >= MAX_MAPPED_REGIONS) {
+            release(regions.removeFirst())
+        }
+        regions.put(key, buffer)
+        return buffer
+    }
+
+    /**
+     * Flushes all regions to disk and unmaps them.
+     */
+    override fun close() {
+        synchronized(regions) {
+            closed = true
+            regions.values.forEach(::release)
+            regions.clear()
+        }
+    }
+
+    /**
+     * Flushes [buffer] and unmaps it right away instead of on garbage collection, which would keep the file
+     * open until then. [buffer] must not be accessed afterwards.
+     */
+    @Suppress("DEPRECATION")
+    private fun release(buffer: MappedByteBuffer) {
+        buffer.force()
+
+        try {
+            unsafe?.invokeCleaner(buffer)
+        } catch (e: IllegalArgumentException) {
+            logger.warn("Failed to unmap minimap region", e)
+        }
+    }
+
+    private fun slotIndex(chunkX: Int, chunkZ: Int): Int =
+        Math.floorMod(chunkZ, REGION_SIZE) * REGION_SIZE + Math.floorMod(chunkX, REGION_SIZE)
+
+    private fun tileOffset(slot: Int): Int = CHUNKS_PER_REGION + slot * TILE_BYTES
+
+}
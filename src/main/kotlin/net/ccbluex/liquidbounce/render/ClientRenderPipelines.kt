@@ -310,6 +310,30 @@ object ClientRenderPipelines {
 
     fun roundedRect(noDepthTest: Boolean) = if (noDepthTest) RoundedRectNoDepthTest else RoundedRect
 
+    private fun RenderPipeline.Builder.breadcrumbsSnippet(mode: VertexFormat.Mode) {
+        withSnippet(RenderPipelines.DEBUG_FILLED_SNIPPET)
+        withVertexShader(ClientShaders.Vertex.BreadcrumbsTrail)
+        withFragmentShader("core/position_color")
+        withVertexFormat(DefaultVertexFormat.POSITION_TEX, mode)
+        withUniformBuffer(ClientUniformDefine.BREADCRUMBS)
+    }
+
+    /**
+     * @see net.ccbluex.liquidbounce.features.module.modules.render.ModuleBreadcrumbs
+     */
+    private val BreadcrumbsLines = newPipeline("breadcrumbs_lines") {
+        breadcrumbsSnippet(VertexFormat.Mode.DEBUG_LINES)
+        forWorldRender()
+    }
+
+    private val BreadcrumbsQuads = newPipeline("breadcrumbs_quads") {
+        breadcrumbsSnippet(VertexFormat.Mode.QUADS)
+        forWorldRender()
+    }
+
+    @JvmStatic
+    fun breadcrumbs(lines: Boolean) = if (lines) BreadcrumbsLines else BreadcrumbsQuads
+
     // Special
 
     /**
@@ -51,6 +51,9 @@ sealed class ClientShaders(val type: ShaderType) : ShaderSource {
         @JvmField
         val Circle = "circle"("shaders/circle/circle.vsh")
 
+        @JvmField
+        val BreadcrumbsTrail = "breadcrumbs_trail"("shaders/breadcrumbs/trail.vsh")
+
     }
 
     object Fragment : ClientShaders(ShaderType.FRAGMENT) {
@@ -34,6 +34,7 @@ enum class ClientUniformDefine(val uboName: String, val size: Int) {
     GUI_BLUR("BlurData", std140Size { float + float + float }),
     BLEND("BlendData", std140Size { vec4 }),
     THEME_BACKGROUND("ThemeBackgroundData", std140Size { float + vec2 + vec2 }),
+    BREADCRUMBS("u_Breadcrumbs", std140Size { vec4 }),
     ;
 
     fun label(): String = "${LiquidBounce.CLIENT_NAME} Uniform ${this.uboName} (${this.size}b)"
@@ -32,6 +32,7 @@ import net.ccbluex.liquidbounce.render.engine.type.Color4b
 import net.ccbluex.liquidbounce.utils.client.gpuDevice
 import net.minecraft.client.renderer.texture.AbstractTexture
 import org.joml.Matrix4fc
+import org.joml.Vector3fc
 import java.util.OptionalDouble
 import java.util.OptionalInt
 import java.util.function.Supplier
@@ -108,12 +109,13 @@ fun RenderPass.bindAndDraw(
 fun getDynamicTransformsUniform(
     modelView: Matrix4fc? = null,
     colorModulator: Color4b = Color4b.WHITE,
+    modelOffset: Vector3fc? = null,
 ): GpuBufferSlice {
     val slice = RenderSystem.getDynamicUniforms()
         .writeTransform(
             modelView ?: RenderSystem.getModelViewMatrix(),
             colorModulator.toVector4f(RenderPassRenderState.colorModulator),
-            RenderPassRenderState.modelOffset,
+            modelOffset ?: RenderPassRenderState.modelOffset,
             RenderPassRenderState.textureMatrix,
         )
 
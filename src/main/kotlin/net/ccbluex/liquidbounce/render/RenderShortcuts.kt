@@ -158,23 +158,23 @@ inline fun WorldRenderEnvironment.longLines(draw: WorldRenderEnvironment.() -> U
 }
 
 internal inline fun RenderTarget.drawGenericBlockESP(
-    renderState: RenderPassRenderState,
+    meshCache: SectionMeshCache,
     pipeline: RenderPipeline,
     distanceFade: DistanceFadeUniformValueGroup,
     dynamicTransforms: () -> GpuBufferSlice = ::getDynamicTransformsUniform,
 ): Boolean {
-    if (!renderState.ready) return false
+    if (!meshCache.ready) return false
 
     distanceFade.updateIfDirty()
     val dynamicTransforms = dynamicTransforms()
-    this.createRenderPass({ renderState.label + " Pass" }).use { pass ->
+    this.createRenderPass({ meshCache.label + " Pass" }).use { pass ->
         pass.setPipeline(pipeline)
 
         pass.bindProjectionUniform()
         pass.bindGlobalsUniform()
         pass.bindDynamicTransformsUniform(dynamicTransforms)
         distanceFade.bindUniform(pass)
-        renderState.bindAndDraw(pass)
+        meshCache.bindAndDraw(pass)
     }
     return true
 }
@@ -0,0 +1,212 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.render
+
+import com.mojang.blaze3d.buffers.GpuBuffer
+import com.mojang.blaze3d.pipeline.RenderPipeline
+import com.mojang.blaze3d.systems.RenderPass
+import com.mojang.blaze3d.systems.RenderSystem
+import com.mojang.blaze3d.vertex.PoseStack
+import com.mojang.blaze3d.vertex.VertexConsumer
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.ccbluex.liquidbounce.utils.render.begin
+import net.ccbluex.liquidbounce.utils.render.toGpuBuffer
+import org.lwjgl.system.MemoryUtil
+import java.nio.ByteBuffer
+import java.util.function.LongConsumer
+
+/**
+ * Retained mesh of static block geometry, split into chunk sections.
+ *
+ * The vertices of every section are kept in native memory, so only the sections marked by [markDirty] are rebuilt.
+ * After a change, all sections are packed into one vertex buffer on the GPU, which is drawn with a single call.
+ *
+ * Sections may be marked dirty from any thread, [update], [bindAndDraw] and [clear] must be called
+ * on the render thread.
+ */
+class SectionMeshCache(@JvmField val label: String) {
+
+    /**
+     * @param vertices allocated with [MemoryUtil.memAlloc], freed when the section is replaced
+     */
+    private class SectionMesh(val vertices: ByteBuffer, val vertexCount: Int)
+
+    /**
+     * [net.minecraft.core.SectionPos.asLong] -> vertices of the section
+     */
+    private val sections = Long2ObjectOpenHashMap<SectionMesh>()
+
+    private val dirtySections = LongOpenHashSet()
+
+    @Volatile
+    private var allDirty = true
+
+    private var pipeline: RenderPipeline? = null
+
+    /**
+     * Vertices of all [sections], rebuilt by [update] when a section changed
+     */
+    private var packedVertices: GpuBuffer? = null
+
+    private var packedVertexCount = 0
+
+    /**
+     * If there is anything to draw
+     */
+    val ready: Boolean
+        get() = packedVertices != null
+
+    fun markDirty(sectionPos: Long) {
+        // Everything is rebuilt anyway, e.g. while the cache is unused after [clear]
+        if (allDirty) {
+            return
+        }
+
+        synchronized(dirtySections) {
+            dirtySections.add(sectionPos)
+        }
+    }
+
+    fun markAllDirty() {
+        allDirty = true
+    }
+
+    /**
+     * Rebuilds the dirty sections and uploads the packed mesh if anything changed.
+     *
+     * @param forEachSection provides every section which might contain geometry, used when all sections are dirty
+     * @param builder adds the vertices of one section
+     */
+    fun update(
+        pipeline: RenderPipeline,
+        forEachSection: (LongConsumer) -> Unit,
+        builder: VertexConsumer.(pose: PoseStack, sectionPos: Long) -> Unit,
+    ) {
+        val toBuild = synchronized(dirtySections) {
+            val dirty = dirtySections.toLongArray()
+            dirtySections.clear()
+            dirty
+        }
+
+        if (allDirty || this.pipeline !== pipeline) {
+            allDirty = false
+            this.pipeline = pipeline
+
+            freeSections()
+            forEachSection(LongConsumer { sectionPos -> buildSection(pipeline, sectionPos, builder) })
+        } else if (toBuild.isNotEmpty()) {
+            toBuild.forEach { sectionPos -> buildSection(pipeline, sectionPos, builder) }
+        } else {
+            return
+        }
+
+        uploadPacked()
+    }
+
+    private fun buildSection(
+        pipeline: RenderPipeline,
+        sectionPos: Long,
+        builder: VertexConsumer.(pose: PoseStack, sectionPos: Long) -> Unit,
+    ) {
+        val byteBufferBuilder = ClientTesselator.allocator(pipeline)
+        val bufferBuilder = byteBufferBuilder.begin(pipeline)
+        usePoseStack {
+            bufferBuilder.builder(this, sectionPos)
+        }
+
+        sections.remove(sectionPos)?.let { MemoryUtil.memFree(it.vertices) }
+
+        bufferBuilder.build()?.use { meshData ->
+            val source = meshData.vertexBuffer()
+            val vertices = MemoryUtil.memAlloc(source.remaining())
+            MemoryUtil.memCopy(source, vertices)
+            sections.put(sectionPos, SectionMesh(vertices, meshData.drawState().vertexCount()))
+        }
+
+        byteBufferBuilder.clear()
+    }
+
+    /**
+     * Packs the vertices of all sections into one buffer. Sections only hold whole primitives,
+     * so the sequential index buffer stays valid across their boundaries.
+     */
+    private fun uploadPacked() {
+        packedVertices?.close()
+        packedVertices = null
+        packedVertexCount = 0
+
+        if (sections.isEmpty()) {
+            return
+        }
+
+        var size = 0
+        for (mesh in sections.values) {
+            size += mesh.vertices.remaining()
+            packedVertexCount += mesh.vertexCount
+        }
+
+        val packed = MemoryUtil.memAlloc(size)
+        try {
+            for (mesh in sections.values) {
+                packed.put(mesh.vertices.duplicate())
+            }
+            packed.flip()
+            packedVertices = packed.toGpuBuffer({ "$label Sections" }, GpuBuffer.USAGE_VERTEX)
+        } finally {
+            MemoryUtil.memFree(packed)
+        }
+    }
+
+    /**
+     * Draws all sections at once with the shared sequential index buffer. The pipeline has to be set on [pass] already.
+     */
+    fun bindAndDraw(pass: RenderPass) {
+        val vertexFormatMode = (pipeline ?: return).vertexFormatMode
+        val vertices = packedVertices ?: return
+
+        val indexCount = vertexFormatMode.indexCount(packedVertexCount)
+        val shapeIndexBuffer = RenderSystem.getSequentialBuffer(vertexFormatMode)
+        pass.setIndexBuffer(shapeIndexBuffer.getBuffer(indexCount), shapeIndexBuffer.type())
+        pass.setVertexBuffer(0, vertices)
+        pass.drawIndexed(0, 0, indexCount, 1)
+    }
+
+    private fun freeSections() {
+        for (mesh in sections.values) {
+            MemoryUtil.memFree(mesh.vertices)
+        }
+        sections.clear()
+    }
+
+    /**
+     * Drops all sections and releases their buffers. Everything is rebuilt on the next [update].
+     */
+    fun clear() {
+        freeSections()
+        packedVertices?.close()
+        packedVertices = null
+        packedVertexCount = 0
+        synchronized(dirtySections) {
+            dirtySections.clear()
+        }
+        allDirty = true
+        pipeline = null
+    }
+}
@@ -60,9 +60,21 @@ class FontGlyphPageManager(
         this.availableFonts = createGlyphRegistries(baseFonts, this.staticPage)
     }
 
+    /**
+     * Incremented whenever glyphs are added to or removed from the dynamic atlas.
+     * Layouts built with an older version might refer to freed atlas space or fallback glyphs.
+     */
+    var atlasVersion = 0
+        private set
+
     @Suppress("unused")
     private val renderHandler = handler<GameRenderEvent> {
-        this.dynamicFontManager.update().forEach { update ->
+        val changes = this.dynamicFontManager.update()
+        if (changes.isNotEmpty()) {
+            atlasVersion++
+        }
+
+        changes.forEach { update ->
             val key = GlyphIdentifier.asLong(update.descriptor.renderInfo.char, update.style)
 
             if (!update.removed) {
@@ -18,8 +18,11 @@
  */
 package net.ccbluex.liquidbounce.render.engine.font
 
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList
+import it.unimi.dsi.fastutil.floats.FloatArrayList
 import it.unimi.dsi.fastutil.ints.IntArrayList
 import it.unimi.dsi.fastutil.ints.IntStack
+import it.unimi.dsi.fastutil.objects.ObjectArrayList
 import net.ccbluex.liquidbounce.features.module.modules.misc.nameprotect.sanitizeForeignInput
 import net.ccbluex.liquidbounce.render.AbstractFontRenderer
 import net.ccbluex.liquidbounce.render.ClientRenderPipelines
@@ -39,6 +42,11 @@ import net.minecraft.client.gui.GuiGraphics
 import net.minecraft.network.chat.Component
 import java.awt.Font
 
+/**
+ * Amount of text layouts cached per font renderer
+ */
+private const val LAYOUT_CACHE_SIZE = 512
+
 class FontRenderer(
     /**
      * Glyph pages for the style of the font. If an element is null, fall back to `[0]`
@@ -56,6 +64,11 @@ class FontRenderer(
     override val size: Float = DEFAULT_FONT_SIZE
 ) : AbstractFontRenderer<MinecraftTextProcessor.RecyclingProcessedText>() {
 
+    /**
+     * Layouts of recently processed texts. Exposes hit-rate counters.
+     */
+    val layoutCache = TextLayoutCache(LAYOUT_CACHE_SIZE)
+
     // Caches
     private val underlinesIdxStack = IntArrayList()
     private val strikethroughIdxStack = IntArrayList()
@@ -79,7 +92,148 @@ class FontRenderer(
     }
 
     override fun process(text: Component, defaultColor: Color4b): MinecraftTextProcessor.RecyclingProcessedText {
-        return MinecraftTextProcessor.process(text.sanitizeForeignInput(), defaultColor)
+        val sanitized = text.sanitizeForeignInput()
+
+        layoutCache.get(sanitized, defaultColor, glyphManager.atlasVersion)?.let { layout ->
+            val result = MinecraftTextProcessor.TEXT_POOL.borrow()
+            result.chars.addAll(layout.chars)
+            result.underlines.addElements(0, layout.underlines)
+            result.strikeThroughs.addElements(0, layout.strikeThroughs)
+            result.layout = layout
+            return result
+        }
+
+        val result = MinecraftTextProcessor.process(sanitized, defaultColor)
+        val layout = buildLayout(result)
+        result.layout = layout
+
+        // Obfuscated characters are different on every call
+        if (result.chars.none { it.obfuscated }) {
+            layoutCache.put(sanitized, defaultColor, layout)
+        }
+
+        return result
+    }
+
+    /**
+     * @return the layout attached to [text] by [process], or a new one if it is missing or outdated
+     */
+    private fun layoutOf(text: ProcessedText): TextLayout {
+        val layout = (text as? MinecraftTextProcessor.RecyclingProcessedText)?.layout
+        if (layout != null && layout.owner === this && layout.atlasVersion == glyphManager.atlasVersion) {
+            return layout
+        }
+
+        return buildLayout(text).also {
+            (text as? MinecraftTextProcessor.RecyclingProcessedText)?.layout = it
+        }
+    }
+
+    @Suppress("CognitiveComplexMethod", "LongMethod")
+    private fun buildLayout(text: ProcessedText): TextLayout {
+        val atlasVersion = glyphManager.atlasVersion
+
+        val glyphs = ObjectArrayList<GlyphDescriptor>(text.chars.size)
+        val glyphColors = ObjectArrayList<Color4b>(text.chars.size)
+        val glyphQuads = FloatArrayList(text.chars.size * 8)
+        val lines = FloatArrayList()
+        val lineStrikeThrough = BooleanArrayList()
+        val lineColors = ObjectArrayList<Color4b>()
+
+        fun addLine(x0: Float, x1: Float, y: Float, color: Color4b, through: Boolean) {
+            lines.add(x0)
+            lines.add(x1)
+            lines.add(y)
+            lineStrikeThrough.add(through)
+            lineColors.add(color)
+        }
+
+        val underlineStack = loadUnderlines(text)
+        val strikethroughStack = loadStrikethroughs(text)
+
+        var x = 0.0f
+        var y = this.ascent
+        var color: Color4b? = null
+
+        var strikeThroughStartX: Float = Float.NaN
+        var underlineStartX: Float = Float.NaN
+
+        val fallbackGlyph = this.glyphManager.getFallbackGlyph(this.font)
+
+        text.chars.forEachIndexed { charIdx, processedChar ->
+            val glyph = this.glyphManager.requestGlyph(this.font, processedChar.font, processedChar.char)
+                ?: fallbackGlyph
+            color = processedChar.color
+
+            if (!underlineStack.isEmpty && underlineStack.topInt() == charIdx) {
+                underlineStack.popInt()
+                underlineStartX = x
+            }
+            if (!strikethroughStack.isEmpty && strikethroughStack.topInt() == charIdx) {
+                strikethroughStack.popInt()
+                strikeThroughStartX = x
+            }
+
+            val renderInfo = glyph.renderInfo
+            // We don't need to render whitespaces.
+            if (renderInfo.atlasLocation != null) {
+                glyphs.add(glyph)
+                glyphColors.add(processedChar.color)
+
+                glyphQuads.add(x + renderInfo.glyphBounds.xMin)
+                glyphQuads.add(y + renderInfo.glyphBounds.yMin)
+                glyphQuads.add(x + renderInfo.glyphBounds.xMin + renderInfo.atlasLocation.atlasWidth)
+                glyphQuads.add(y + renderInfo.glyphBounds.yMin + renderInfo.atlasLocation.atlasHeight)
+
+                val uv1 = renderInfo.atlasLocation.uvCoordinatesOnTexture.min
+                val uv2 = renderInfo.atlasLocation.uvCoordinatesOnTexture.max
+                glyphQuads.add(uv1.u)
+                glyphQuads.add(uv1.v)
+                glyphQuads.add(uv2.u)
+                glyphQuads.add(uv2.v)
+            }
+
+            val layoutInfo =
+                if (!processedChar.obfuscated) glyph.renderInfo.layoutInfo else fallbackGlyph.renderInfo.layoutInfo
+
+            x += layoutInfo.advanceX
+            y += layoutInfo.advanceY
+
+            if (!underlineStack.isEmpty && underlineStack.topInt() == charIdx) {
+                underlineStack.popInt()
+                addLine(underlineStartX, x, y, processedChar.color, false)
+            }
+
+            if (!strikethroughStack.isEmpty && strikethroughStack.topInt() == charIdx) {
+                strikethroughStack.popInt()
+                addLine(strikeThroughStartX, x, y, processedChar.color, true)
+            }
+        }
+
+        if (!underlineStack.isEmpty && !underlineStartX.isNaN()) {
+            underlineStack.popInt()
+            addLine(underlineStartX, x, y, color!!, false)
+        }
+
+        if (!strikethroughStack.isEmpty && !strikeThroughStartX.isNaN()) {
+            strikethroughStack.popInt()
+            addLine(strikeThroughStartX, x, y, color!!, true)
+        }
+
+        return TextLayout(
+            owner = this,
+            atlasVersion = atlasVersion,
+            chars = text.chars.toList(),
+            underlines = text.underlines.toIntArray(),
+            strikeThroughs = text.strikeThroughs.toIntArray(),
+            width = x,
+            glyphs = glyphs.toTypedArray(),
+            glyphColors = glyphColors.toTypedArray(),
+            glyphQuads = glyphQuads.toFloatArray(),
+            lines = lines.toFloatArray(),
+            lineStrikeThrough = lineStrikeThrough.toBooleanArray(),
+            lineColors = lineColors.toTypedArray(),
+        )
     }
 
     context(ctx: GuiGraphics)
@@ -95,16 +249,16 @@ class FontRenderer(
     ): Float = commonDraw(text, parameters)
 
     context(ctx: Any)
-    @Suppress("CognitiveComplexMethod")
     private fun commonDraw(
         text: MinecraftTextProcessor.RecyclingProcessedText,
         parameters: DrawParameters,
     ): Float {
         val scale = parameters.scale
+        val layout = layoutOf(text)
 
         val x = parameters.horizontalAnchor?.anchorToDrawX(
             x = parameters.x,
-            width = getStringWidth(text, parameters.shadow),
+            width = if (parameters.shadow) layout.width + 2.0f else layout.width,
             scale,
         ) ?: parameters.x
 
@@ -120,7 +274,7 @@ class FontRenderer(
 
         if (parameters.shadow) {
             len = drawInternal(
-                text,
+                layout,
                 posX = x + 2.0f * scale,
                 posY = y + 2.0f * scale,
                 posZ = z,
@@ -131,7 +285,7 @@ class FontRenderer(
 
         len = maxOf(
             len,
-            drawInternal(text, x, y, if (z.isNaN()) z else z + 0.001f, scale, overrideColor = null)
+            drawInternal(layout, x, y, if (z.isNaN()) z else z + 0.001f, scale, overrideColor = null)
         )
 
         MinecraftTextProcessor.TEXT_POOL.recycle(text)
@@ -146,81 +300,72 @@ class FontRenderer(
      * @return The resulting x value
      */
     context(ctx: Any)
-    @Suppress("CognitiveComplexMethod")
     private fun drawInternal(
-        text: ProcessedText,
+        layout: TextLayout,
         posX: Float,
         posY: Float,
         posZ: Float,
         scale: Float,
         overrideColor: Color4b?,
     ): Float {
-        if (text.chars.isEmpty()) {
-            return posX
-        }
-
-        val underlineStack = loadUnderlines(text)
-        val strikethroughStack = loadStrikethroughs(text)
-
-        var x = posX
-        var y = posY + this.ascent * scale
-        var color: Color4b? = null
-
-        var strikeThroughStartX: Float = Float.NaN
-        var underlineStartX: Float = Float.NaN
-
-        val fallbackGlyph = this.glyphManager.getFallbackGlyph(this.font)
-
-        text.chars.forEachIndexed { charIdx, processedChar ->
-            val glyph = this.glyphManager.requestGlyph(this.font, processedChar.font, processedChar.char)
-                ?: fallbackGlyph
-            color = overrideColor ?: processedChar.color
-
-            if (!underlineStack.isEmpty && underlineStack.topInt() == charIdx) {
-                underlineStack.popInt()
-                underlineStartX = x
-            }
-            if (!strikethroughStack.isEmpty && strikethroughStack.topInt() == charIdx) {
-                strikethroughStack.popInt()
-                strikeThroughStartX = x
-            }
-
-            drawChar(glyph, x, y, posZ, scale, color)
-
-            val layoutInfo =
-                if (!processedChar.obfuscated) glyph.renderInfo.layoutInfo else fallbackGlyph.renderInfo.layoutInfo
-
-            x += layoutInfo.advanceX * scale
-            y += layoutInfo.advanceY * scale
-
-            if (!underlineStack.isEmpty && underlineStack.topInt() == charIdx) {
-                underlineStack.popInt()
-                drawLine(underlineStartX, x, y, posZ, color, false)
+        val quads = layout.glyphQuads
+        for (i in 0 until layout.glyphCount) {
+            val color = overrideColor ?: layout.glyphColors[i]
+            if (color.isTransparent) {
+                continue
             }
 
-            if (!strikethroughStack.isEmpty && strikethroughStack.topInt() == charIdx) {
-                strikethroughStack.popInt()
-                drawLine(strikeThroughStartX, x, y, posZ, color, true)
-            }
-        }
-
-        if (!underlineStack.isEmpty && !underlineStartX.isNaN()) {
-            underlineStack.popInt()
-            drawLine(underlineStartX, x, y, posZ, color!!, false)
+            val offset = i * 8
+            drawGlyphQuad(
+                layout.glyphs[i],
+                x0 = posX + quads[offset] * scale,
+                y0 = posY + quads[offset + 1] * scale,
+                x1 = posX + quads[offset + 2] * scale,
+                y1 = posY + quads[offset + 3] * scale,
+                z = posZ,
+                u1 = quads[offset + 4],
+                v1 = quads[offset + 5],
+                u2 = quads[offset + 6],
+                v2 = quads[offset + 7],
+                argb = color.argb,
+            )
         }
 
-        if (!strikethroughStack.isEmpty && !strikeThroughStartX.isNaN()) {
-            strikethroughStack.popInt()
-            drawLine(strikeThroughStartX, x, y, posZ, color!!, true)
+        val lines = layout.lines
+        for (i in 0 until layout.lineCount) {
+            val offset = i * 3
+            drawLine(
+                posX + lines[offset] * scale,
+                posX + lines[offset + 1] * scale,
+                posY + lines[offset + 2] * scale,
+                posZ,
+                overrideColor ?: layout.lineColors[i],
+                layout.lineStrikeThrough[i],
+            )
         }
 
-        return x
+        return posX + layout.width * scale
     }
 
     override fun getStringWidth(
         text: ProcessedText,
         shadow: Boolean
     ): Float {
+        val layout = (text as? MinecraftTextProcessor.RecyclingProcessedText)?.layout
+        val width = if (layout != null && layout.owner === this && layout.atlasVersion == glyphManager.atlasVersion) {
+            layout.width
+        } else {
+            measure(text)
+        }
+
+        return if (shadow) {
+            width + 2.0f
+        } else {
+            width
+        }
+    }
+
+    private fun measure(text: ProcessedText): Float {
         if (text.chars.isEmpty()) {
             return 0.0f
         }
@@ -239,11 +384,7 @@ class FontRenderer(
             x += layoutInfo.advanceX
         }
 
-        return if (shadow) {
-            x + 2.0f
-        } else {
-            x
-        }
+        return x
     }
 
     context(ctx: Any)
@@ -271,46 +412,40 @@ class FontRenderer(
     }
 
     context(ctx: Any)
-    private fun drawChar(
+    @Suppress("LongParameterList")
+    private fun drawGlyphQuad(
         glyph: GlyphDescriptor,
-        x: Float,
-        y: Float,
+        x0: Float,
+        y0: Float,
+        x1: Float,
+        y1: Float,
         z: Float,
-        scale: Float,
-        color: Color4b,
+        u1: Float,
+        v1: Float,
+        u2: Float,
+        v2: Float,
+        argb: Int,
     ) {
-        val renderInfo = glyph.renderInfo
-        // We don't need to render whitespaces.
-        if (renderInfo.atlasLocation != null && !color.isTransparent) {
-            val x0 = x + renderInfo.glyphBounds.xMin * scale
-            val y0 = y + renderInfo.glyphBounds.yMin * scale
-            val x1 = x + (renderInfo.glyphBounds.xMin + renderInfo.atlasLocation.atlasWidth) * scale
-            val y1 = y + (renderInfo.glyphBounds.yMin + renderInfo.atlasLocation.atlasHeight) * scale
-            val uv1 = renderInfo.atlasLocation.uvCoordinatesOnTexture.min
-            val uv2 = renderInfo.atlasLocation.uvCoordinatesOnTexture.max
-            val argb = color.argb
-
-            if (z.isNaN()) {
-                (ctx as GuiGraphics).drawGlyphOnCurrentLayer(
-                    glyph.page.texture.textureSetup,
-                    x0 = x0, y0 = y0, x1 = x1, y1 = y1,
-                    u1 = uv1.u, v1 = uv1.v, u2 = uv2.u, v2 = uv2.v, argb = argb,
-                )
-            } else {
-                (ctx as WorldRenderEnvironment).drawCustomMeshTextured(glyph.page.texture) { matrix ->
-                    addVertex(matrix, x0, y0, z)
-                        .setUv(uv1.u, uv1.v)
-                        .setColor(argb)
-                    addVertex(matrix, x0, y1, z)
-                        .setUv(uv1.u, uv2.v)
-                        .setColor(argb)
-                    addVertex(matrix, x1, y1, z)
-                        .setUv(uv2.u, uv2.v)
-                        .setColor(argb)
-                    addVertex(matrix, x1, y0, z)
-                        .setUv(uv2.u, uv1.v)
-                        .setColor(argb)
-                }
+        if (z.isNaN()) {
+            (ctx as GuiGraphics).drawGlyphOnCurrentLayer(
+                glyph.page.texture.textureSetup,
+                x0 = x0, y0 = y0, x1 = x1, y1 = y1,
+                u1 = u1, v1 = v1, u2 = u2, v2 = v2, argb = argb,
+            )
+        } else {
+            (ctx as WorldRenderEnvironment).drawCustomMeshTextured(glyph.page.texture) { matrix ->
+                addVertex(matrix, x0, y0, z)
+                    .setUv(u1, v1)
+                    .setColor(argb)
+                addVertex(matrix, x0, y1, z)
+                    .setUv(u1, v2)
+                    .setColor(argb)
+                addVertex(matrix, x1, y1, z)
+                    .setUv(u2, v2)
+                    .setColor(argb)
+                addVertex(matrix, x1, y0, z)
+                    .setUv(u2, v1)
+                    .setColor(argb)
             }
         }
     }
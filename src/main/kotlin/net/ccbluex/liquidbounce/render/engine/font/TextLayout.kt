@@ -0,0 +1,117 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.render.engine.font
+
+import net.ccbluex.liquidbounce.render.engine.font.processor.ProcessedText
+import net.ccbluex.liquidbounce.render.engine.type.Color4b
+import net.ccbluex.liquidbounce.utils.kotlin.LruCache
+import net.minecraft.network.chat.Component
+
+/**
+ * Glyph run of a [ProcessedText] laid out by [owner].
+ *
+ * Positions are unscaled and relative to the draw position, so one layout serves every scale.
+ */
+class TextLayout(
+    @JvmField val owner: FontRenderer,
+    /**
+     * [FontGlyphPageManager.atlasVersion] the glyphs were resolved with
+     */
+    @JvmField val atlasVersion: Int,
+    @JvmField val chars: List<ProcessedText.ProcessedChar>,
+    @JvmField val underlines: IntArray,
+    @JvmField val strikeThroughs: IntArray,
+    /**
+     * Sum of the advances, without shadow
+     */
+    @JvmField val width: Float,
+    /**
+     * Glyphs which have to be drawn, whitespaces are skipped
+     */
+    @JvmField val glyphs: Array<GlyphDescriptor>,
+    @JvmField val glyphColors: Array<Color4b>,
+    /**
+     * x0, y0, x1, y1, u1, v1, u2, v2 for each of [glyphs]
+     */
+    @JvmField val glyphQuads: FloatArray,
+    /**
+     * Underlines and strikethroughs: x0, x1, pen y for each line
+     */
+    @JvmField val lines: FloatArray,
+    @JvmField val lineStrikeThrough: BooleanArray,
+    @JvmField val lineColors: Array<Color4b>,
+) {
+    val glyphCount: Int get() = glyphs.size
+    val lineCount: Int get() = lineColors.size
+}
+
+/**
+ * LRU cache of [TextLayout]s keyed by the sanitized text and its default color.
+ *
+ * The cache is bound to one [FontRenderer], which covers the font face and size.
+ * Everything is dropped when the glyph atlas changes.
+ */
+class TextLayoutCache(maxSize: Int) {
+
+    private val layouts = LruCache<Key, TextLayout>(maxSize)
+
+    private var atlasVersion = 0
+
+    var hits = 0L
+        private set
+
+    var misses = 0L
+        private set
+
+    val hitRate: Double
+        get() {
+            val total = hits + misses
+            return if (total == 0L) 0.0 else hits.toDouble() / total
+        }
+
+    val size: Int get() = layouts.size
+
+    fun get(text: Component, defaultColor: Color4b, atlasVersion: Int): TextLayout? {
+        if (this.atlasVersion != atlasVersion) {
+            layouts.clear()
+            this.atlasVersion = atlasVersion
+        }
+
+        val layout = layouts[Key(text, defaultColor)]
+        if (layout == null) {
+            misses++
+        } else {
+            hits++
+        }
+        return layout
+    }
+
+    fun put(text: Component, defaultColor: Color4b, layout: TextLayout) {
+        if (layout.atlasVersion == atlasVersion) {
+            layouts[Key(text, defaultColor)] = layout
+        }
+    }
+
+    fun clear() {
+        layouts.clear()
+    }
+
+    @JvmRecord
+    private data class Key(val text: Component, val defaultColor: Color4b)
+}
@@ -21,6 +21,7 @@ package net.ccbluex.liquidbounce.render.engine.font.processor
 
 import it.unimi.dsi.fastutil.ints.IntArrayList
 import net.ccbluex.fastutil.Pool
+import net.ccbluex.liquidbounce.render.engine.font.TextLayout
 import net.ccbluex.liquidbounce.render.engine.type.Color4b
 import net.minecraft.network.chat.Component
 import net.minecraft.network.chat.Style
@@ -39,13 +40,20 @@ object MinecraftTextProcessor : TextProcessor<MinecraftTextProcessor.RecyclingPr
         it.chars.clear()
         it.underlines.clear()
         it.strikeThroughs.clear()
+        it.layout = null
     }
 
     class RecyclingProcessedText(
         override val chars: ArrayList<ProcessedText.ProcessedChar>,
         override val underlines: IntArrayList,
         override val strikeThroughs: IntArrayList,
-    ) : ProcessedText
+    ) : ProcessedText {
+        /**
+         * Layout of this text, if it was processed by a [net.ccbluex.liquidbounce.render.engine.font.FontRenderer]
+         */
+        @JvmField
+        var layout: TextLayout? = null
+    }
 
     override fun process(
         text: Component,
@@ -40,7 +40,6 @@ import net.ccbluex.liquidbounce.utils.client.variable
 import net.minecraft.network.chat.HoverEvent
 import org.graalvm.polyglot.Context
 import org.graalvm.polyglot.HostAccess
-import org.graalvm.polyglot.Source
 import org.graalvm.polyglot.Value
 import org.graalvm.polyglot.io.IOAccess
 import java.io.File
@@ -57,6 +56,7 @@ class PolyglotScript(
 ) : AutoCloseable {
 
     private val context: Context = Context.newBuilder(language)
+        .applySharedEngine()
         .allowHostAccess(HostAccess.ALL) // Allow access to all Java classes
         .allowHostClassLookup { true }
         .currentWorkingDirectory(file.parentFile.toPath())
@@ -71,12 +71,23 @@ class PolyglotScript(
             // Global instances
             val bindings = getBindings(language)
 
-            this.setupContext(language, bindings)
+            this.setupContext(language, bindings, this@PolyglotScript)
 
             // Global functions
             bindings.putMember("registerScript", RegisterScript())
         }
 
+    /**
+     * Debug options are engine options, so scripts using them need an engine of their own
+     */
+    private fun Context.Builder.applySharedEngine(): Context.Builder {
+        val engine = ScriptManager.sharedEngine
+        if (engine != null && !debugOptions.enabled) {
+            engine(engine)
+        }
+        return this
+    }
+
     private fun Context.Builder.applyJsFeatures(): Context.Builder {
         if (language == "js") {
             option("js.nashorn-compat", "true") // Enable Nashorn compatibility
@@ -139,6 +150,11 @@ class PolyglotScript(
         return this
     }
 
+    /**
+     * Identifies the script in the [ScriptProfiler]
+     */
+    internal val profilerKey: String by lazy { ScriptProfiler.keyOf(file) }
+
     // Script information
     lateinit var scriptName: String
     lateinit var scriptVersion: String
@@ -162,12 +178,59 @@ class PolyglotScript(
      * Initialization of scripts
      */
     fun initScript() {
+        parse()
+        evaluate()
+        load()
+    }
+
+    /**
+     * Source parsed by [parse], until it is evaluated
+     */
+    private var parsed: Value? = null
+
+    /**
+     * Reads and parses the source of the script without running any of its code, so it may run on any thread.
+     */
+    internal fun parse() {
+        try {
+            val duration = measureTime {
+                parsed = context.parse(ScriptManager.sourceOf(language, file))
+            }
+            logger.debug("[ScriptAPI] Parsed script '${file.name}' in ${duration.inWholeMilliseconds}ms.")
+        } catch (e: Exception) {
+            logger.error("[ScriptAPI] Failed to parse script '${file.name}'.", e)
+            context.close()
+            throw e
+        }
+    }
+
+    /**
+     * Runs the top-level code of the parsed script. It may register modules, hook events and use the client,
+     * so this must run on the thread loading the scripts.
+     */
+    internal fun evaluate() {
+        val parsed = checkNotNull(parsed) { "Script '${file.name}' has not been parsed" }
+        this.parsed = null
+
         try {
-            // Evaluate script
             val duration = measureTime {
-                context.eval(Source.newBuilder(language, file).build())
+                parsed.execute()
+            }
+            logger.debug("[ScriptAPI] Evaluated script '${file.name}' in ${duration.inWholeMilliseconds}ms.")
+        } catch (e: Exception) {
+            logger.error("[ScriptAPI] Failed to evaluate script '${file.name}'.", e)
+            context.close()
+            throw e
+        }
+    }
 
-                // Call load event
+    /**
+     * Calls the load event of an evaluated script, which registers its modules, commands and modes.
+     * Must run on the thread loading the scripts.
+     */
+    internal fun load() {
+        try {
+            val duration = measureTime {
                 callGlobalEvent("load")
 
                 if (!::scriptName.isInitialized || !::scriptVersion.isInitialized || !::scriptAuthors.isInitialized) {
@@ -229,7 +292,7 @@ class PolyglotScript(
      */
     @Suppress("unused")
     fun registerCommand(commandObject: Value) {
-        val commandBuilder = ScriptCommandBuilder(commandObject)
+        val commandBuilder = ScriptCommandBuilder(this, commandObject)
         registeredCommands += commandBuilder.build()
     }
 
@@ -24,11 +24,15 @@ import net.ccbluex.liquidbounce.features.marketplace.MarketplaceManager
 import net.ccbluex.liquidbounce.features.module.modules.render.ModuleClickGui
 import net.ccbluex.liquidbounce.script.bindings.api.ScriptAsyncUtil
 import net.ccbluex.liquidbounce.script.bindings.api.ScriptContextProvider
+import net.ccbluex.liquidbounce.utils.client.env
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.ccbluex.liquidbounce.utils.client.mc
+import net.minecraft.util.Util
 import org.graalvm.polyglot.Engine
 import org.graalvm.polyglot.Source
 import java.io.File
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * The ScriptManager allows to extend the client by loading supported scripts at runtime.
@@ -55,18 +59,96 @@ object ScriptManager {
         }
     }
 
+    /**
+     * Engine shared by all scripts without debug options, so parsed sources and compiled code are reused
+     * between scripts. Null if disabled through `LB_SCRIPT_SHARED_ENGINE=false`.
+     */
+    @Volatile
+    internal var sharedEngine: Engine? = null
+        private set
+
+    private val useSharedEngine =
+        env("LB_SCRIPT_SHARED_ENGINE", "net.ccbluex.liquidbounce.script.sharedEngine")?.toBoolean() ?: true
+
+    /**
+     * Compiled code of the shared engine, only supported by runtimes providing the `engine.CacheStore` option
+     */
+    private val compilationCacheFile = File(root, ".compilation-cache")
+
+    /**
+     * Sources of the loaded scripts, cleared on [reload]
+     */
+    private val sources = ConcurrentHashMap<File, CachedSource>()
+
+    private class CachedSource(val lastModified: Long, val length: Long, val source: Source)
+
     fun initializeEngine() {
         ScriptAsyncUtil.TickScheduler
+        ScriptProfiler
 
         // Initialize the script engine and log its version and supported languages.
-        val engine = Engine.create()
-        logger.info(
-            "[ScriptAPI] Engine Version: ${engine.version}, " +
-                "Supported languages: [ ${engine.languages.keys.joinToString(", ")} ]"
-        )
+        val supportsCompilationCache = Engine.create().use { engine ->
+            logger.info(
+                "[ScriptAPI] Engine Version: ${engine.version}, " +
+                    "Supported languages: [ ${engine.languages.keys.joinToString(", ")} ]"
+            )
+
+            engine.options.get("engine.CacheStore") != null
+        }
+
+        if (useSharedEngine) {
+            sharedEngine = Engine.newBuilder()
+                .allowExperimentalOptions(true)
+                .apply {
+                    if (!supportsCompilationCache) {
+                        return@apply
+                    }
+
+                    if (compilationCacheFile.exists()) {
+                        option("engine.CacheLoad", compilationCacheFile.absolutePath)
+                    }
+                    option("engine.CacheStore", compilationCacheFile.absolutePath)
+                }
+                .build()
+            logger.info("[ScriptAPI] Using a shared engine (compilation cache: $supportsCompilationCache).")
+        }
+
         isInitialized = true
     }
 
+    /**
+     * Closes the shared engine, which persists its compilation cache if supported.
+     */
+    fun closeEngine() {
+        val engine = sharedEngine ?: return
+        sharedEngine = null
+
+        runCatching {
+            engine.close(true)
+        }.onFailure {
+            logger.error("[ScriptAPI] Failed to close the shared engine.", it)
+        }
+    }
+
+    /**
+     * Returns a [Source] of [file], which is the same instance as long as the file did not change.
+     * The shared engine only reuses parsed and compiled code for the same source.
+     */
+    internal fun sourceOf(language: String, file: File): Source {
+        val lastModified = file.lastModified()
+        val length = file.length()
+
+        val cached = sources[file]
+        if (cached != null && cached.lastModified == lastModified && cached.length == length &&
+            cached.source.language == language) {
+            return cached.source
+        }
+
+        val source = Source.newBuilder(language, file).cached(true).build()
+        sources[file] = CachedSource(lastModified, length, source)
+        return source
+    }
+
     /**
      * Loads all scripts found in the scripts directory. This method scans the directory for script files
      * and directories containing a main script file. It then loads and enables all found scripts.
@@ -79,21 +161,30 @@ object ScriptManager {
             item.getInstallationFolder()
         }
 
-        files.forEach { file ->
+        val mainFiles = files.mapNotNull { file ->
             if (file.isDirectory) {
                 // If a directory is found, look for a main script file inside it.
-                val mainFile = file.listFiles { dirFile ->
+                file.listFiles { dirFile ->
                     dirFile.nameWithoutExtension == "main" && Source.findLanguage(dirFile) != null
-                }?.firstOrNull()
-
-                if (mainFile != null) {
-                    loadCatched(mainFile)
-                } else {
-                    logger.warn("Unable to find main inside the directory ${file.name}.")
+                }?.firstOrNull().also { mainFile ->
+                    if (mainFile == null) {
+                        logger.warn("Unable to find main inside the directory ${file.name}.")
+                    }
                 }
             } else {
                 // If the file is a script, load it immediately.
-                loadCatched(file)
+                file
+            }
+        }
+
+        // Only parsing runs in parallel, script code may use the client and runs in order on this thread
+        val parsing = mainFiles.map { file ->
+            CompletableFuture.supplyAsync({ parseCatched(file) }, Util.backgroundExecutor())
+        }
+        for (future in parsing) {
+            val script = future.join() ?: continue
+            if (loadCatched(script)) {
+                scripts += script
             }
         }
 
@@ -113,17 +204,29 @@ object ScriptManager {
     }
 
     /**
-     * Loads a script from a file and catches any exceptions that occur during the loading process.
+     * Creates a script from a file and parses it, catching any exceptions that occur.
      * This ensures that a single faulty script does not prevent other scripts from being loaded.
      *
-     * @param file The script file to load.
+     * @param file The script file to parse.
      */
-    private fun loadCatched(file: File) = runCatching {
-        loadScript(file)
+    private fun parseCatched(file: File) = runCatching {
+        PolyglotScript(Source.findLanguage(file), file).apply { parse() }
     }.onFailure {
         logger.error("Unable to load script ${file.name}.", it)
     }.getOrNull()
 
+    /**
+     * Evaluates a parsed script and calls its load event, catching any exceptions that occur.
+     *
+     * @return false if the script failed to load
+     */
+    private fun loadCatched(script: PolyglotScript) = runCatching {
+        script.evaluate()
+        script.load()
+    }.onFailure {
+        logger.error("Unable to load script ${script.file.name}.", it)
+    }.isSuccess
+
     /**
      * Loads a script from a file. This method creates a new Script object, initializes it, and adds it to the list
      * of loaded scripts.
@@ -190,6 +293,7 @@ object ScriptManager {
         }
 
         // Load
+        sources.clear()
         loadAll()
         enableAll()
 
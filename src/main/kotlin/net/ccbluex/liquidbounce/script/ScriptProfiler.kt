@@ -0,0 +1,241 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.script
+
+import net.ccbluex.liquidbounce.event.EventListener
+import net.ccbluex.liquidbounce.event.events.GameTickEvent
+import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.utils.client.chat
+import net.ccbluex.liquidbounce.utils.client.inGame
+import net.ccbluex.liquidbounce.utils.client.logger
+import net.ccbluex.liquidbounce.utils.client.markAsError
+import net.ccbluex.liquidbounce.utils.client.regular
+import net.ccbluex.liquidbounce.utils.client.variable
+import net.ccbluex.liquidbounce.utils.client.warning
+import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.FIRST_PRIORITY
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.time.LocalDateTime
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Measures the time and allocations of script code called by the client: module events, tick callbacks
+ * of [net.ccbluex.liquidbounce.script.bindings.api.ScriptAsyncUtil] and command executions.
+ *
+ * Disabled by default, in which case [profile] only calls its block.
+ * Scripts are keyed by their path relative to the scripts root, as it is known before the script registered itself
+ * and stays unique for scripts in directories, which all have a main file.
+ */
+object ScriptProfiler : EventListener {
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+    @Volatile
+    var isEnabled = false
+        private set
+
+    /**
+     * Soft limit of the time a single script may spend per tick, 0 to disable
+     */
+    @Volatile
+    var tickBudgetNanos = 0L
+
+    /**
+     * Whether script modules exceeding [tickBudgetNanos] are disabled instead of only being reported
+     */
+    @Volatile
+    var disableOverBudget = false
+
+    private val scripts = ConcurrentHashMap<String, ScriptStats>()
+
+    private var startedAt: LocalDateTime? = null
+
+    class ScriptStats(val name: String) {
+        val sections = ConcurrentHashMap<String, Section>()
+
+        /**
+         * Time spent in the current tick
+         */
+        internal val tickNanos = AtomicLong()
+
+        @Volatile
+        var overBudgetTicks = 0
+            internal set
+
+        val totalNanos get() = sections.values.sumOf { it.totalNanos }
+    }
+
+    class Section(val name: String) {
+        var count = 0L
+            private set
+        var totalNanos = 0L
+            private set
+        var maxNanos = 0L
+            private set
+
+        /**
+         * Bytes allocated by the calling thread, negative if the JVM does not support measuring it
+         */
+        var allocatedBytes = 0L
+            private set
+
+        @Synchronized
+        internal fun record(nanos: Long, allocated: Long) {
+            count++
+            totalNanos += nanos
+            maxNanos = maxOf(maxNanos, nanos)
+            allocatedBytes = if (allocated < 0 || allocatedBytes < 0) -1L else allocatedBytes + allocated
+        }
+    }
+
+    /**
+     * Starts a new profiling session and drops the results of the previous one.
+     */
+    fun start() {
+        scripts.clear()
+        startedAt = LocalDateTime.now()
+        isEnabled = true
+    }
+
+    fun stop() {
+        isEnabled = false
+    }
+
+    val results: Collection<ScriptStats> get() = scripts.values
+
+    /**
+     * Runs [block] as [section] of [script], e.g. `Module::playerTick`.
+     */
+    inline fun <T> profile(script: PolyglotScript, section: String, block: () -> T): T {
+        if (!isEnabled && tickBudgetNanos <= 0L) {
+            return block()
+        }
+
+        val start = System.nanoTime()
+        val allocatedBefore = allocatedBytes()
+        try {
+            return block()
+        } finally {
+            val allocated = if (allocatedBefore < 0) -1L else allocatedBytes() - allocatedBefore
+            record(script, section, System.nanoTime() - start, allocated)
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, or a negative value if the JVM does not support measuring it
+     */
+    fun allocatedBytes(): Long {
+        val bean = threadBean ?: return -1L
+        return runCatching { bean.currentThreadAllocatedBytes }.getOrDefault(-1L)
+    }
+
+    fun record(script: PolyglotScript, section: String, nanos: Long, allocated: Long) {
+        val stats = scripts.computeIfAbsent(script.profilerKey, ::ScriptStats)
+        stats.tickNanos.addAndGet(nanos)
+
+        if (isEnabled) {
+            stats.sections.computeIfAbsent(section, ::Section).record(nanos, allocated)
+        }
+    }
+
+    /**
+     * Whether [script] spent more than [tickBudgetNanos] in the current tick
+     */
+    fun isOverBudget(script: PolyglotScript): Boolean {
+        val budget = tickBudgetNanos
+        return budget > 0L && (scripts[script.profilerKey]?.tickNanos?.get() ?: 0L) > budget
+    }
+
+    /**
+     * Path of the script relative to the scripts root. Scripts installed elsewhere, e.g. from the marketplace,
+     * are keyed by their installation folder and file name.
+     */
+    internal fun keyOf(file: File): String {
+        val relative = file.absoluteFile.relativeToOrNull(ScriptManager.root.absoluteFile)
+        return if (relative != null && !relative.startsWith("..")) {
+            relative.invariantSeparatorsPath
+        } else {
+            "${file.parentFile.name}/${file.name}"
+        }
+    }
+
+    @Suppress("unused")
+    private val tickHandler = handler<GameTickEvent>(priority = FIRST_PRIORITY) {
+        val budget = tickBudgetNanos
+
+        for (stats in scripts.values) {
+            val spent = stats.tickNanos.getAndSet(0L)
+            if (budget <= 0L || spent <= budget) {
+                continue
+            }
+
+            // Only the first tick over budget is reported, the count shows up in the results
+            if (stats.overBudgetTicks++ == 0) {
+                logger.warn(
+                    "[ScriptAPI] Script ${stats.name} took ${spent / 1_000_000.0}ms in a single tick, " +
+                        "budget is ${budget / 1_000_000.0}ms."
+                )
+
+                if (inGame) {
+                    chat(
+                        regular("["),
+                        warning(stats.name),
+                        regular("] took "),
+                        markAsError("%.2fms".format(spent / 1_000_000.0)),
+                        regular(" in a single tick, budget is "),
+                        variable("%.2fms".format(budget / 1_000_000.0)),
+                    )
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the results as CSV to [file].
+     */
+    fun export(file: File) {
+        val report = buildString {
+            appendLine("# Script profile started at ${startedAt ?: "-"}, exported at ${LocalDateTime.now()}")
+            appendLine("script,section,count,totalMs,maxMs,averageMs,allocatedBytes,overBudgetTicks")
+
+            for (stats in scripts.values.sortedByDescending { it.totalNanos }) {
+                for (section in stats.sections.values.sortedByDescending { it.totalNanos }) {
+                    appendLine(
+                        "%s,%s,%d,%.3f,%.3f,%.4f,%d,%d".format(
+                            Locale.ROOT,
+                            stats.name,
+                            section.name,
+                            section.count,
+                            section.totalNanos / 1_000_000.0,
+                            section.maxNanos / 1_000_000.0,
+                            section.totalNanos / 1_000_000.0 / section.count.coerceAtLeast(1L),
+                            section.allocatedBytes,
+                            stats.overBudgetTicks,
+                        )
+                    )
+                }
+            }
+        }
+
+        file.writeText(report)
+    }
+
+}
@@ -24,7 +24,9 @@ import net.ccbluex.liquidbounce.api.core.HttpClient.sendAsync
 import net.ccbluex.liquidbounce.event.EventListener
 import net.ccbluex.liquidbounce.event.events.GameTickEvent
 import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.script.PolyglotScript
 import net.ccbluex.liquidbounce.script.ScriptApiRequired
+import net.ccbluex.liquidbounce.script.ScriptProfiler
 import net.ccbluex.liquidbounce.utils.client.mc
 import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.FIRST_PRIORITY
 import net.minecraft.util.Util
@@ -45,7 +47,8 @@ import java.util.function.Supplier
  * @author MukjepScarlet
  */
 class ScriptAsyncUtil(
-    private val jsPromiseConstructor: Value
+    private val jsPromiseConstructor: Value,
+    private val script: PolyglotScript,
 ) {
 
     companion object TickScheduler : EventListener {
@@ -89,9 +92,13 @@ class ScriptAsyncUtil(
             ProxyExecutable { (onResolve, onReject) ->
                 scriptFutures += this
                 this.thenAcceptAsync( { value ->
-                    onResolve.executeVoid(value)
+                    ScriptProfiler.profile(script, "AsyncUtil::resolve") {
+                        onResolve.executeVoid(value)
+                    }
                 }, mc).exceptionallyAsync( { e ->
-                    onReject.executeVoid(e)
+                    ScriptProfiler.profile(script, "AsyncUtil::reject") {
+                        onReject.executeVoid(e)
+                    }
                     null
                 }, mc)
             }
@@ -131,16 +138,18 @@ class ScriptAsyncUtil(
             var waitingTick = 0
             schedule {
                 waitingTick++
-                try {
-                    if (condition.asBoolean) {
-                        onResolve.executeVoid(waitingTick)
+                ScriptProfiler.profile(script, "AsyncUtil::tick") {
+                    try {
+                        if (condition.asBoolean) {
+                            onResolve.executeVoid(waitingTick)
+                            true
+                        } else {
+                            false
+                        }
+                    } catch (e: Throwable) {
+                        onReject.executeVoid(e)
                         true
-                    } else {
-                        false
                     }
-                } catch (e: Throwable) {
-                    onReject.executeVoid(e)
-                    true
                 }
             }
 
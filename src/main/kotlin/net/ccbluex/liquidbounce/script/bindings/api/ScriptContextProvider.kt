@@ -19,6 +19,7 @@
 package net.ccbluex.liquidbounce.script.bindings.api
 
 import com.mojang.math.Axis
+import net.ccbluex.liquidbounce.script.PolyglotScript
 import net.ccbluex.liquidbounce.script.bindings.features.ScriptSetting
 import net.ccbluex.liquidbounce.utils.client.mc
 import net.minecraft.core.BlockPos
@@ -41,7 +42,7 @@ object ScriptContextProvider {
         localStorage.clear()
     }
 
-    internal fun Context.setupContext(language: String, bindings: Value) {
+    internal fun Context.setupContext(language: String, bindings: Value, script: PolyglotScript) {
         bindings.apply {
             // Class bindings
             // -> Client API
@@ -77,7 +78,7 @@ object ScriptContextProvider {
             // Async support (JavaScript only)
             if (language.equals("js", true)) {
                 // Init Promise constructor
-                val asyncUtil = ScriptAsyncUtil(getBindings(language).getMember("Promise"))
+                val asyncUtil = ScriptAsyncUtil(getBindings(language).getMember("Promise"), script)
                 putMember("AsyncUtil", asyncUtil)
             }
         }
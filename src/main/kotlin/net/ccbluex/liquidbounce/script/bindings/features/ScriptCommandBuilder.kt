@@ -25,11 +25,13 @@ import net.ccbluex.liquidbounce.features.command.Parameter.Verificator.Result
 import net.ccbluex.liquidbounce.features.command.builder.CommandBuilder
 import net.ccbluex.liquidbounce.features.command.builder.ParameterBuilder
 import net.ccbluex.liquidbounce.features.command.builder.ParameterBuilder.Companion.STRING_VALIDATOR
+import net.ccbluex.liquidbounce.script.PolyglotScript
+import net.ccbluex.liquidbounce.script.ScriptProfiler
 import net.ccbluex.liquidbounce.script.asArray
 import net.ccbluex.liquidbounce.utils.kotlin.unmodifiable
 import org.graalvm.polyglot.Value
 
-class ScriptCommandBuilder(private val commandObject: Value) {
+class ScriptCommandBuilder(private val script: PolyglotScript, private val commandObject: Value) {
 
     private fun createCommand(commandObject: Value): Command {
         val aliases = if (commandObject.hasMember("aliases")) {
@@ -38,8 +40,9 @@ class ScriptCommandBuilder(private val commandObject: Value) {
             emptyArray()
         }
 
+        val name = commandObject.getMember("name").asString()
         val commandBuilder = CommandBuilder
-            .begin(commandObject.getMember("name").asString())
+            .begin(name)
             .alias(aliases = aliases)
 
         if (commandObject.hasMember("subcommands")) {
@@ -60,10 +63,13 @@ class ScriptCommandBuilder(private val commandObject: Value) {
 
         if (commandObject.hasMember("onExecute")) {
             val handler = commandObject.getMember("onExecute")
+            val section = "Command::$name"
 
             @Suppress("SpreadOperator")
             commandBuilder.handler {
-                handler.execute(*args)
+                ScriptProfiler.profile(script, section) {
+                    handler.execute(*args)
+                }
             }
         }
 
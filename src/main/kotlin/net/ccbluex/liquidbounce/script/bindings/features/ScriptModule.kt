@@ -27,6 +27,7 @@ import net.ccbluex.liquidbounce.event.newEventHook
 import net.ccbluex.liquidbounce.features.module.ClientModule
 import net.ccbluex.liquidbounce.features.module.ModuleCategories
 import net.ccbluex.liquidbounce.script.PolyglotScript
+import net.ccbluex.liquidbounce.script.ScriptProfiler
 import net.ccbluex.liquidbounce.utils.client.MessageMetadata
 import net.ccbluex.liquidbounce.utils.client.chat
 import net.ccbluex.liquidbounce.utils.client.highlight
@@ -44,6 +45,11 @@ class ScriptModule(val script: PolyglotScript, moduleObject: Map<String, Any>) :
 ) {
 
     private val events = hashMapOf<String, org.graalvm.polyglot.Value>()
+
+    /**
+     * Profiler section names by event, built once so calls do not concatenate strings
+     */
+    private val sections = hashMapOf<String, String>()
     private val _values = linkedMapOf<String, Value<*>>()
     override var tag: String? = null
         set(value) {
@@ -92,6 +98,7 @@ class ScriptModule(val script: PolyglotScript, moduleObject: Map<String, Any>) :
         }
 
         events[eventName] = handler
+        sections[eventName] = "$name::$eventName"
         hookHandler(eventName)
     }
 
@@ -106,7 +113,25 @@ class ScriptModule(val script: PolyglotScript, moduleObject: Map<String, Any>) :
      */
     private fun callEvent(event: String, payload: Event? = null) {
         try {
-            events[event]?.executeVoid(payload)
+            val handler = events[event] ?: return
+            ScriptProfiler.profile(script, sections[event] ?: event) {
+                handler.executeVoid(payload)
+            }
+
+            if (ScriptProfiler.disableOverBudget && ScriptProfiler.isOverBudget(script) && enabled) {
+                logger.warn("${script.scriptName}::$name exceeded the script tick budget and has been disabled")
+                if (inGame) {
+                    chat(
+                        regular("["),
+                        warning(script.file.name),
+                        regular("] "),
+                        markAsError(name),
+                        regular(" exceeded the script tick budget and has been disabled"),
+                        metadata = MessageMetadata(prefix = false)
+                    )
+                }
+                enabled = false
+            }
         } catch (throwable: Throwable) {
             if (inGame) {
                 chat(
@@ -18,17 +18,27 @@
  */
 package net.ccbluex.liquidbounce.utils.block
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet
 import it.unimi.dsi.fastutil.longs.LongSet
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.shorts.Short2ObjectOpenHashMap
 import net.ccbluex.fastutil.forEachLong
 import net.ccbluex.liquidbounce.utils.math.contains
+import net.minecraft.client.renderer.culling.Frustum
 import net.minecraft.core.BlockPos
+import net.minecraft.core.SectionPos
 import net.minecraft.world.level.ChunkPos
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.chunk.LevelChunk
+import net.minecraft.world.phys.AABB
+import net.minecraft.world.phys.Vec3
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.locks.ReentrantReadWriteLock
+import java.util.function.BiConsumer
+import java.util.function.LongConsumer
 import java.util.function.LongPredicate
 import java.util.function.Predicate
 import kotlin.concurrent.read
@@ -246,4 +256,286 @@ sealed class AbstractBlockLocationTracker<T> : ChunkScanner.BlockChangeSubscribe
             }
         }
     }
+
+    /**
+     * This base implementation buckets [BlockPos] and state [T] by chunk and section.
+     *
+     * Unloading a chunk drops its bucket in O(1), untracking only touches one section,
+     * and [forEachInRange] and [forEachInFrustum] only visit sections which might contain results.
+     * Every chunk bucket has its own lock, so readers and writers of different chunks never contend.
+     *
+     * @see AbstractBlockLocationTracker
+     */
+    abstract class ChunkBucketed<T : Any> : AbstractBlockLocationTracker<T>() {
+        private val chunks = Long2ObjectOpenHashMap<ChunkBucket<T>>()
+
+        private val chunksLock = ReentrantReadWriteLock()
+
+        private val size = AtomicInteger()
+
+        private fun buckets(): Array<ChunkBucket<T>> = chunksLock.read {
+            chunks.values.toTypedArray()
+        }
+
+        /**
+         * Called after positions in the section [sectionPos] ([SectionPos.asLong]) have changed,
+         * before [onUpdated].
+         */
+        protected open fun onSectionUpdated(sectionPos: Long) {
+            // NOP
+        }
+
+        final override fun allPositions() = iterate().map { it.key }
+
+        final override fun iterate() = sequence<Map.Entry<BlockPos, T>> {
+            val entry = MutableEntry<T>()
+            for (bucket in buckets()) {
+                bucket.lock.read {
+                    for (section in bucket.sections.int2ObjectEntrySet()) {
+                        for (tracked in section.value.short2ObjectEntrySet()) {
+                            entry.set(bucket, section.intKey, tracked.shortKey, tracked.value)
+                            yield(entry)
+                        }
+                    }
+                }
+            }
+        }
+
+        final override fun isEmpty() = size.get() == 0
+
+        final override fun track(pos: BlockPos, state: T) {
+            val chunkKey = ChunkPos.asLong(pos)
+            val sectionY = SectionPos.blockToSectionCoord(pos.y)
+            val index = SectionPos.sectionRelativePos(pos)
+
+            while (true) {
+                val bucket = chunksLock.read { chunks.get(chunkKey) } ?: chunksLock.write {
+                    chunks.get(chunkKey) ?: ChunkBucket<T>(
+                        SectionPos.blockToSectionCoord(pos.x),
+                        SectionPos.blockToSectionCoord(pos.z),
+                    ).also { chunks.put(chunkKey, it) }
+                }
+
+                val changed = bucket.lock.write {
+                    // The chunk has been cleared in the meantime
+                    if (bucket.removed) {
+                        return@write null
+                    }
+
+                    val section = bucket.sections.get(sectionY)
+                        ?: Short2ObjectOpenHashMap<T>().also { bucket.sections.put(sectionY, it) }
+                    val previous = section.put(index, state)
+                    if (previous == null) {
+                        bucket.size++
+                        size.incrementAndGet()
+                    }
+                    previous != state
+                } ?: continue
+
+                if (changed) {
+                    onSectionUpdated(SectionPos.asLong(bucket.chunkX, sectionY, bucket.chunkZ))
+                    onUpdated()
+                }
+                return
+            }
+        }
+
+        final override fun untrack(pos: BlockPos): Boolean {
+            val bucket = chunksLock.read { chunks.get(ChunkPos.asLong(pos)) } ?: return false
+            val sectionY = SectionPos.blockToSectionCoord(pos.y)
+
+            val removed = bucket.lock.write {
+                val section = bucket.sections.get(sectionY) ?: return@write false
+                if (section.remove(SectionPos.sectionRelativePos(pos)) == null) {
+                    return@write false
+                }
+
+                if (section.isEmpty()) {
+                    bucket.sections.remove(sectionY)
+                }
+                bucket.size--
+                size.decrementAndGet()
+                true
+            }
+
+            if (removed) {
+                onSectionUpdated(SectionPos.asLong(bucket.chunkX, sectionY, bucket.chunkZ))
+                onUpdated()
+            }
+            return removed
+        }
+
+        final override fun clearAllChunks() {
+            val removed = chunksLock.write {
+                val removed = chunks.values.toTypedArray()
+                chunks.clear()
+                removed
+            }
+            for (bucket in removed) {
+                retire(bucket).forEach { sectionY ->
+                    onSectionUpdated(SectionPos.asLong(bucket.chunkX, sectionY, bucket.chunkZ))
+                }
+            }
+
+            onUpdated()
+        }
+
+        final override fun clearChunk(pos: ChunkPos) {
+            val bucket = chunksLock.write { chunks.remove(pos.toLong()) } ?: return
+
+            val sections = retire(bucket)
+            if (sections.isNotEmpty()) {
+                sections.forEach { sectionY ->
+                    onSectionUpdated(SectionPos.asLong(bucket.chunkX, sectionY, bucket.chunkZ))
+                }
+                onUpdated()
+            }
+        }
+
+        /**
+         * Marks a bucket, which is no longer part of [chunks], as removed.
+         *
+         * @return section Ys which contained tracked positions
+         */
+        private fun retire(bucket: ChunkBucket<T>): IntArray = bucket.lock.write {
+            bucket.removed = true
+            size.addAndGet(-bucket.size)
+            bucket.sections.keys.toIntArray()
+        }
+
+        /**
+         * Calls [action] with the [SectionPos.asLong] of every section containing tracked positions.
+         */
+        fun forEachSection(action: LongConsumer) {
+            for (bucket in buckets()) {
+                val sectionYs = bucket.lock.read { bucket.sections.keys.toIntArray() }
+                for (sectionY in sectionYs) {
+                    action.accept(SectionPos.asLong(bucket.chunkX, sectionY, bucket.chunkZ))
+                }
+            }
+        }
+
+        /**
+         * Calls [action] for every tracked position in the section [sectionPos] ([SectionPos.asLong]).
+         *
+         * [action] receives a [BlockPos.MutableBlockPos] and must not modify this tracker.
+         */
+        fun forEachInSection(sectionPos: Long, action: BiConsumer<BlockPos, T>) {
+            val chunkX = SectionPos.x(sectionPos)
+            val sectionY = SectionPos.y(sectionPos)
+            val chunkZ = SectionPos.z(sectionPos)
+            val bucket = chunksLock.read { chunks.get(ChunkPos.asLong(chunkX, chunkZ)) } ?: return
+
+            val mutable = BlockPos.MutableBlockPos()
+            bucket.lock.read {
+                val section = bucket.sections.get(sectionY) ?: return
+                for (tracked in section.short2ObjectEntrySet()) {
+                    bucket.setBlockPos(mutable, sectionY, tracked.shortKey)
+                    action.accept(mutable, tracked.value)
+                }
+            }
+        }
+
+        /**
+         * Calls [action] for every tracked position within [radius] blocks of [center].
+         *
+         * [action] receives a [BlockPos.MutableBlockPos] and must not modify this tracker.
+         */
+        fun forEachInRange(center: Vec3, radius: Double, action: BiConsumer<BlockPos, T>) {
+            val radiusSq = radius * radius
+            val minChunkX = SectionPos.blockToSectionCoord(center.x - radius)
+            val maxChunkX = SectionPos.blockToSectionCoord(center.x + radius)
+            val minChunkZ = SectionPos.blockToSectionCoord(center.z - radius)
+            val maxChunkZ = SectionPos.blockToSectionCoord(center.z + radius)
+            val minSectionY = SectionPos.blockToSectionCoord(center.y - radius)
+            val maxSectionY = SectionPos.blockToSectionCoord(center.y + radius)
+
+            val mutable = BlockPos.MutableBlockPos()
+            for (bucket in buckets()) {
+                if (bucket.chunkX !in minChunkX..maxChunkX || bucket.chunkZ !in minChunkZ..maxChunkZ) {
+                    continue
+                }
+
+                bucket.lock.read {
+                    for (section in bucket.sections.int2ObjectEntrySet()) {
+                        if (section.intKey !in minSectionY..maxSectionY) {
+                            continue
+                        }
+
+                        for (tracked in section.value.short2ObjectEntrySet()) {
+                            bucket.setBlockPos(mutable, section.intKey, tracked.shortKey)
+                            if (mutable.distToCenterSqr(center) <= radiusSq) {
+                                action.accept(mutable, tracked.value)
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Calls [action] for every tracked position in a section visible in [frustum].
+         *
+         * [action] receives a [BlockPos.MutableBlockPos] and must not modify this tracker.
+         */
+        fun forEachInFrustum(frustum: Frustum, action: BiConsumer<BlockPos, T>) {
+            val mutable = BlockPos.MutableBlockPos()
+            for (bucket in buckets()) {
+                bucket.lock.read {
+                    for (section in bucket.sections.int2ObjectEntrySet()) {
+                        val minX = SectionPos.sectionToBlockCoord(bucket.chunkX).toDouble()
+                        val minY = SectionPos.sectionToBlockCoord(section.intKey).toDouble()
+                        val minZ = SectionPos.sectionToBlockCoord(bucket.chunkZ).toDouble()
+                        if (!frustum.isVisible(AABB(minX, minY, minZ, minX + 16.0, minY + 16.0, minZ + 16.0))) {
+                            continue
+                        }
+
+                        for (tracked in section.value.short2ObjectEntrySet()) {
+                            bucket.setBlockPos(mutable, section.intKey, tracked.shortKey)
+                            action.accept(mutable, tracked.value)
+                        }
+                    }
+                }
+            }
+        }
+
+        private class ChunkBucket<T : Any>(@JvmField val chunkX: Int, @JvmField val chunkZ: Int) {
+            @JvmField
+            val lock = ReentrantReadWriteLock()
+
+            /**
+             * Section Y -> (index in section -> state)
+             *
+             * @see SectionPos.sectionRelativePos
+             */
+            @JvmField
+            val sections = Int2ObjectOpenHashMap<Short2ObjectOpenHashMap<T>>()
+
+            @JvmField
+            var size = 0
+
+            @JvmField
+            var removed = false
+
+            fun setBlockPos(mutable: BlockPos.MutableBlockPos, sectionY: Int, index: Short): BlockPos.MutableBlockPos =
+                mutable.set(
+                    SectionPos.sectionToBlockCoord(chunkX, SectionPos.sectionRelativeX(index).toInt()),
+                    SectionPos.sectionToBlockCoord(sectionY, SectionPos.sectionRelativeY(index).toInt()),
+                    SectionPos.sectionToBlockCoord(chunkZ, SectionPos.sectionRelativeZ(index).toInt()),
+                )
+        }
+
+        private class MutableEntry<T> : Map.Entry<BlockPos, T> {
+            override val key = BlockPos.MutableBlockPos()
+
+            @Suppress("UNCHECKED_CAST")
+            override var value: T = null as T
+                private set
+
+            fun set(bucket: ChunkBucket<*>, sectionY: Int, index: Short, value: T) {
+                bucket.setBlockPos(key, sectionY, index)
+                this.value = value
+            }
+        }
+    }
 }
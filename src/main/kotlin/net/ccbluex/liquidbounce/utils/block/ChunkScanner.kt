@@ -24,29 +24,39 @@ import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineExceptionHandler
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.joinAll
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import net.ccbluex.fastutil.mapToArray
 import net.ccbluex.liquidbounce.event.EventListener
 import net.ccbluex.liquidbounce.event.events.ChunkLoadEvent
-import net.ccbluex.liquidbounce.event.events.PacketEvent
+import net.ccbluex.liquidbounce.event.events.GameTickEvent
+import net.ccbluex.liquidbounce.event.events.TransferOrigin.INCOMING
 import net.ccbluex.liquidbounce.event.events.WorldChangeEvent
 import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.event.packetHandler
 import net.ccbluex.liquidbounce.features.module.MinecraftShortcuts
+import net.ccbluex.liquidbounce.features.module.modules.render.ModuleDebug.debugParameter
 import net.ccbluex.liquidbounce.utils.client.logger
 import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.FIRST_PRIORITY
 import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.READ_FINAL_STATE
+import net.ccbluex.liquidbounce.utils.kotlin.MinecraftDispatcher
 import net.ccbluex.liquidbounce.utils.kotlin.joinAll
+import net.ccbluex.liquidbounce.utils.world.snapshot.SectionSnapshot
+import net.ccbluex.liquidbounce.utils.world.snapshot.WorldSnapshot
+import net.ccbluex.liquidbounce.utils.world.snapshot.WorldSnapshots
 import net.minecraft.core.BlockPos
 import net.minecraft.network.protocol.game.ClientboundBlockUpdatePacket
 import net.minecraft.network.protocol.game.ClientboundForgetLevelChunkPacket
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket
 import net.minecraft.network.protocol.game.ClientboundSectionBlocksUpdatePacket
 import net.minecraft.world.level.ChunkPos
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.chunk.LevelChunk
 import java.util.concurrent.CopyOnWriteArrayList
-import java.util.function.BiConsumer
 import java.util.function.Predicate
 import kotlin.time.measureTime
 
@@ -58,6 +68,11 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
 
     private val subscribers = CopyOnWriteArrayList<BlockChangeSubscriber>()
 
+    /**
+     * Block updates are coalesced per section and handed to the subscribers once per tick.
+     */
+    private val updateQueue = SectionUpdateQueue()
+
     fun subscribe(newSubscriber: BlockChangeSubscriber) {
         if (!this.subscribers.addIfAbsent(newSubscriber)) {
             error("Subscriber ${newSubscriber.debugName} already registered")
@@ -93,32 +108,85 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
 
         if (subscribers.isEmpty()) return@handler
 
-        UpdateRequest.ChunkLoad(chunk).runAsync()
+        val snapshot = if (subscribers.any { it.shouldCallRecordBlockOnChunkUpdate }) {
+            WorldSnapshots.capture(chunk)
+        } else {
+            null
+        }
+
+        UpdateRequest.ChunkLoad(chunk, snapshot).runAsync()
     }
 
+    /**
+     * Updates queued before the chunk packet are older than its data and must not overwrite it.
+     * This runs on the netty thread in packet order, so updates arriving after the packet,
+     * but before the chunk is loaded on the render thread, are kept.
+     */
     @Suppress("unused")
-    private val packetHandler = handler<PacketEvent>(READ_FINAL_STATE) { event ->
-        if (subscribers.isEmpty() || event.isCancelled) return@handler
+    private val chunkDataHandler = packetHandler<ClientboundLevelChunkWithLightPacket>(
+        INCOMING, READ_FINAL_STATE
+    ) { event, packet ->
+        if (subscribers.isEmpty() || event.isCancelled) return@packetHandler
 
-        when (val packet = event.packet) {
-            is ClientboundBlockUpdatePacket ->
-                UpdateRequest.BlockUpdate(packet.pos, packet.blockState).runAsync()
+        updateQueue.removeChunk(ChunkPos(packet.x, packet.z))
+    }
 
-            // All updates are in one section
-            is ClientboundSectionBlocksUpdatePacket ->
-                UpdateRequest.ChunkSectionUpdate(packet).runAsync()
+    @Suppress("unused")
+    private val blockUpdateHandler = packetHandler<ClientboundBlockUpdatePacket>(
+        INCOMING, READ_FINAL_STATE
+    ) { event, packet ->
+        if (subscribers.isEmpty() || event.isCancelled) return@packetHandler
 
-            is ClientboundForgetLevelChunkPacket -> mc.execute {
-                loadedChunks.remove(packet.pos.toLong())
-                UpdateRequest.ChunkUnload(packet.pos).runAsync()
-            }
+        updateQueue.enqueue(packet.pos, packet.blockState)
+    }
+
+    @Suppress("unused")
+    private val sectionBlocksUpdateHandler = packetHandler<ClientboundSectionBlocksUpdatePacket>(
+        INCOMING, READ_FINAL_STATE
+    ) { event, packet ->
+        if (subscribers.isEmpty() || event.isCancelled) return@packetHandler
+
+        // All updates are in one section
+        packet.runUpdates(updateQueue::enqueue)
+    }
+
+    @Suppress("unused")
+    private val forgetChunkHandler = packetHandler<ClientboundForgetLevelChunkPacket>(
+        INCOMING, READ_FINAL_STATE
+    ) { event, packet ->
+        if (subscribers.isEmpty() || event.isCancelled) return@packetHandler
+
+        mc.execute {
+            loadedChunks.remove(packet.pos.toLong())
+            updateQueue.removeChunk(packet.pos)
+            UpdateRequest.ChunkUnload(packet.pos).runAsync()
+        }
+    }
+
+    @Suppress("unused")
+    private val tickHandler = handler<GameTickEvent> {
+        val drained = updateQueue.drain()
+
+        debugParameter("Queue Depth") { updateQueue.pendingSections }
+        debugParameter("Drained Sections") { updateQueue.lastDrainedSections }
+        debugParameter("Drained Blocks") { updateQueue.lastDrainedBlocks }
+        debugParameter("Merged Updates") { updateQueue.mergedCount }
+        debugParameter("Dropped Updates") { updateQueue.droppedCount }
+        debugParameter("Cached Snapshot Sections") { WorldSnapshots.cachedSections }
+        debugParameter("Copied Snapshot Sections") { WorldSnapshots.copiedSections }
+
+        if (drained.isEmpty() || subscribers.isEmpty()) {
+            return@handler
         }
+
+        UpdateRequest.SectionUpdates(drained).runAsync()
     }
 
     @Suppress("unused")
     private val worldChangeHandler = handler<WorldChangeEvent>(FIRST_PRIORITY) {
         cancelCurrentJobs()
         loadedChunks.clear()
+        updateQueue.clear()
         subscribers.forEach(BlockChangeSubscriber::clearAllChunks)
     }
 
@@ -154,33 +222,73 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
     }
 
     /**
-     * @see LevelChunk.getBlockState
+     * Scans all captured sections of [chunk] for [subscribers] which want [BlockChangeSubscriber.recordBlock]
+     * to be called on chunk updates.
+     *
+     * The sections are read from [snapshot], so the live world is never touched from the scanner threads.
+     * The palette of each section is checked against [BlockChangeSubscriber.chunkScanFilter] first,
+     * so sections without any relevant state are skipped without reading a single block.
+     *
+     * @param snapshot captured by [WorldSnapshots.capture] for [chunk]
      */
     private suspend fun scanChunkSections(
         chunk: LevelChunk,
-        action: BiConsumer<BlockPos, BlockState>
+        snapshot: WorldSnapshot,
+        subscribers: List<BlockChangeSubscriber>,
     ) {
+        val jobs = ObjectArrayList<Job>(chunk.highestFilledSectionIndex + 1)
+
         // 0 rangeTo chunk.highestNonEmptySection
-        Array(chunk.highestFilledSectionIndex + 1) { sectionIndex ->
-            scope.launch {
-                val startX = chunk.pos.minBlockX
-                val startZ = chunk.pos.minBlockZ
-                val blockPos = threadLocalBlockPos.get()
-                val section = chunk.getSection(sectionIndex)
-
-                for (sectionY in 0..15) {
-                    // index == (y >> 4) - (bottomY >> 4)
-                    val y = (sectionIndex + (chunk.minY shr 4)) shl 4 or sectionY
-                    for (x in 0..15) {
-                        for (z in 0..15) {
-                            val blockState = section.getBlockState(x, sectionY, z)
-                            val pos = blockPos.set(startX or x, y, startZ or z)
-                            action.accept(pos, blockState)
+        for (sectionIndex in 0..chunk.highestFilledSectionIndex) {
+            val sectionY = chunk.getSectionYFromSectionIndex(sectionIndex)
+            val section = snapshot.getSection(chunk.pos.x, sectionY, chunk.pos.z) ?: continue
+
+            val interested = subscribers.filter { subscriber ->
+                subscriber.chunkScanFilter?.let(section::maybeHas) ?: true
+            }
+            if (interested.isEmpty()) {
+                continue
+            }
+
+            jobs += scope.launch {
+                scanChunkSection(chunk, sectionY, section, interested.toTypedArray())
+            }
+        }
+
+        jobs.joinAll()
+    }
+
+    private fun scanChunkSection(
+        chunk: LevelChunk,
+        sectionY: Int,
+        section: SectionSnapshot,
+        subscribers: Array<BlockChangeSubscriber>,
+    ) {
+        val startX = chunk.pos.minBlockX
+        val startZ = chunk.pos.minBlockZ
+        val startY = sectionY shl 4
+        val blockPos = threadLocalBlockPos.get()
+
+        // The filters of the subscribers already passed on the only state of a uniform section (see maybeHas)
+        val filters = Array(subscribers.size) { i ->
+            if (section.isUniform) null else subscribers[i].chunkScanFilter
+        }
+
+        for (y in 0..15) {
+            for (x in 0..15) {
+                for (z in 0..15) {
+                    val blockState = section.getBlockState(x, y, z)
+                    val pos = blockPos.set(startX or x, startY or y, startZ or z)
+                    for (i in subscribers.indices) {
+                        if (filters[i]?.test(blockState) == false) {
+                            continue
                         }
+
+                        subscribers[i].recordBlock(pos, blockState, cleared = true)
                     }
                 }
             }
-        }.joinAll()
+        }
     }
 
     sealed interface UpdateRequest {
@@ -202,10 +310,11 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
                         subscriber.chunkUpdate(it)
                     }
                     if (subscriber.shouldCallRecordBlockOnChunkUpdate) {
+                        val subscribers = listOf(subscriber)
                         chunks.forEach {
-                            scanChunkSections(it) { pos, state ->
-                                subscriber.recordBlock(pos, state, cleared = true)
-                            }
+                            // One capture per task, so subscribing never stalls the client thread for long
+                            val snapshot = withContext(MinecraftDispatcher) { WorldSnapshots.capture(it) }
+                            scanChunkSections(it, snapshot, subscribers)
                         }
                     }
                 }
@@ -220,8 +329,9 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
          * Scans single new chunk
          *
          * @param chunk should be non-empty
+         * @param snapshot of [chunk], null if no subscriber wants [BlockChangeSubscriber.recordBlock] to be called
          */
-        class ChunkLoad(val chunk: LevelChunk) : UpdateRequest {
+        class ChunkLoad(val chunk: LevelChunk, val snapshot: WorldSnapshot?) : UpdateRequest {
             override suspend fun run() {
                 val duration = measureTime {
                     subscribers.mapToArray {
@@ -233,13 +343,11 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
                         it.shouldCallRecordBlockOnChunkUpdate
                     }
 
-                    if (subscribersForRecordBlock.isEmpty()) {
+                    if (subscribersForRecordBlock.isEmpty() || snapshot == null) {
                         return@measureTime
                     }
 
-                    scanChunkSections(chunk) { pos, state ->
-                        subscribersForRecordBlock.forEach { it.recordBlock(pos, state, cleared = true) }
-                    }
+                    scanChunkSections(chunk, snapshot, subscribersForRecordBlock)
                 }
 
                 logger.debug(
@@ -248,13 +356,18 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
             }
         }
 
-        class ChunkSectionUpdate(val packet: ClientboundSectionBlocksUpdatePacket) : UpdateRequest {
+        /**
+         * Hands the coalesced block updates of one tick to the subscribers, one job per section
+         */
+        class SectionUpdates(val sections: Array<SectionBlockUpdates>) : UpdateRequest {
             override suspend fun run() {
-                packet.runUpdates { blockPos, state ->
-                    subscribers.forEach {
-                        it.recordBlock(blockPos, state, cleared = false)
+                Array(sections.size) { i ->
+                    scope.launch {
+                        subscribers.forEach {
+                            it.recordBlocks(sections[i])
+                        }
                     }
-                }
+                }.joinAll()
             }
         }
 
@@ -265,14 +378,6 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
                 }
             }
         }
-
-        class BlockUpdate(val blockPos: BlockPos, val newState: BlockState) : UpdateRequest {
-            override suspend fun run() {
-                subscribers.forEach {
-                    it.recordBlock(blockPos, newState, cleared = false)
-                }
-            }
-        }
     }
 
     interface BlockChangeSubscriber {
@@ -285,6 +390,16 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
         val shouldCallRecordBlockOnChunkUpdate: Boolean
             get() = true
 
+        /**
+         * States which [recordBlock] might track in a cleared section, or null if any state might be tracked.
+         *
+         * On chunk updates, sections whose palette contains no matching state are skipped entirely
+         * and [recordBlock] is only called for matching states.
+         * Single block updates are not filtered, because they might untrack a position.
+         */
+        val chunkScanFilter: Predicate<BlockState>?
+            get() = null
+
         /**
          * Registers a block update and asks the subscriber to make a decision about what should be done.
          * This method must be **thread-safe**.
@@ -295,6 +410,18 @@ object ChunkScanner : EventListener, MinecraftShortcuts {
          */
         fun recordBlock(pos: BlockPos, state: BlockState, cleared: Boolean)
 
+        /**
+         * Is called once per tick for each section with block updates. Updates of the same position are merged.
+         * This method must be **thread-safe**.
+         *
+         * The default implementation calls [recordBlock] for each updated position.
+         */
+        fun recordBlocks(updates: SectionBlockUpdates) {
+            updates.forEach { pos, state ->
+                recordBlock(pos, state, cleared = false)
+            }
+        }
+
         /**
          * Is called when a chunk is initially loaded or entirely updated.
          *
@@ -0,0 +1,194 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.block
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.shorts.Short2ObjectOpenHashMap
+import net.minecraft.core.BlockPos
+import net.minecraft.core.SectionPos
+import net.minecraft.world.level.ChunkPos
+import net.minecraft.world.level.block.state.BlockState
+import java.util.function.BiConsumer
+
+/**
+ * Coalesces single block updates per chunk section until they are drained.
+ *
+ * Multiple updates of the same position between two drains are merged, only the latest state is kept.
+ * This class is thread-safe.
+ *
+ * @see ChunkScanner
+ */
+internal class SectionUpdateQueue {
+
+    private val pending = Long2ObjectOpenHashMap<SectionBlockUpdates>()
+
+    private var pendingBlocks = 0
+
+    /**
+     * Amount of updates which replaced an already pending update of the same position
+     */
+    private var merged = 0L
+
+    val mergedCount: Long
+        get() = synchronized(pending) { merged }
+
+    /**
+     * Amount of updates which were discarded because their chunk has been unloaded before the drain
+     */
+    private var dropped = 0L
+
+    val droppedCount: Long
+        get() = synchronized(pending) { dropped }
+
+    /**
+     * Amount of sections and blocks handed out by the last [drain]
+     */
+    var lastDrainedSections = 0
+        private set
+    var lastDrainedBlocks = 0
+        private set
+
+    val pendingSections: Int
+        get() = synchronized(pending) { pending.size }
+
+    fun enqueue(pos: BlockPos, state: BlockState) {
+        synchronized(pending) {
+            val key = SectionPos.asLong(pos)
+            val updates = pending.get(key) ?: SectionBlockUpdates(key).also { pending.put(key, it) }
+
+            if (updates.set(pos, state)) {
+                pendingBlocks++
+            } else {
+                merged++
+            }
+        }
+    }
+
+    /**
+     * Discards all pending updates of the chunk at [pos].
+     */
+    fun removeChunk(pos: ChunkPos) {
+        synchronized(pending) {
+            val iterator = pending.values.iterator()
+            while (iterator.hasNext()) {
+                val updates = iterator.next()
+                if (SectionPos.x(updates.sectionPos) == pos.x && SectionPos.z(updates.sectionPos) == pos.z) {
+                    iterator.remove()
+                    pendingBlocks -= updates.size
+                    dropped += updates.size
+                }
+            }
+        }
+    }
+
+    fun clear() {
+        synchronized(pending) {
+            pending.clear()
+            pendingBlocks = 0
+        }
+    }
+
+    /**
+     * Takes all pending updates out of the queue.
+     */
+    fun drain(): Array<SectionBlockUpdates> = synchronized(pending) {
+        if (pending.isEmpty()) {
+            lastDrainedSections = 0
+            lastDrainedBlocks = 0
+            return emptyArray()
+        }
+
+        val drained = pending.values.toTypedArray()
+        lastDrainedSections = drained.size
+        lastDrainedBlocks = pendingBlocks
+
+        pending.clear()
+        pendingBlocks = 0
+
+        drained
+    }
+
+}
+
+/**
+ * Coalesced block updates of a single chunk section.
+ *
+ * Dirty positions are kept in a bitset indexed by [SectionPos.sectionRelativePos].
+ */
+class SectionBlockUpdates(
+    /**
+     * @see SectionPos.asLong
+     */
+    val sectionPos: Long,
+) {
+
+    private val dirty = LongArray(SECTION_VOLUME / Long.SIZE_BITS)
+
+    private val states = Short2ObjectOpenHashMap<BlockState>()
+
+    val size: Int
+        get() = states.size
+
+    /**
+     * @return true if [pos] was not dirty before
+     */
+    internal fun set(pos: BlockPos, state: BlockState): Boolean {
+        val index = SectionPos.sectionRelativePos(pos)
+        states.put(index, state)
+
+        val word = index.toInt() ushr 6
+        val bit = 1L shl index.toInt()
+        val isNew = dirty[word] and bit == 0L
+        dirty[word] = dirty[word] or bit
+        return isNew
+    }
+
+    /**
+     * Iterates over all dirty positions in index order.
+     *
+     * @param action receives a [BlockPos.MutableBlockPos], copy it if it needs to be saved
+     */
+    fun forEach(action: BiConsumer<BlockPos, BlockState>) {
+        val startX = SectionPos.sectionToBlockCoord(SectionPos.x(sectionPos))
+        val startY = SectionPos.sectionToBlockCoord(SectionPos.y(sectionPos))
+        val startZ = SectionPos.sectionToBlockCoord(SectionPos.z(sectionPos))
+        val mutable = BlockPos.MutableBlockPos()
+
+        for (word in dirty.indices) {
+            var bits = dirty[word]
+            while (bits != 0L) {
+                val index = word shl 6 or java.lang.Long.numberOfTrailingZeros(bits)
+                bits = bits and (bits - 1)
+
+                // Layout of SectionPos.sectionRelativePos: x << 8 | z << 4 | y
+                mutable.set(
+                    startX + (index ushr 8 and 15),
+                    startY + (index and 15),
+                    startZ + (index ushr 4 and 15),
+                )
+                action.accept(mutable, states.get(index.toShort()))
+            }
+        }
+    }
+
+    private companion object {
+        private const val SECTION_VOLUME = 16 * 16 * 16
+    }
+
+}
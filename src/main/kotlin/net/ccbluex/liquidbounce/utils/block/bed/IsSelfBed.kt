@@ -23,9 +23,10 @@ import net.ccbluex.liquidbounce.config.types.group.Mode
 import net.ccbluex.liquidbounce.config.types.group.ModeValueGroup
 import net.ccbluex.liquidbounce.event.events.KeyboardKeyEvent
 import net.ccbluex.liquidbounce.event.events.NotificationEvent
-import net.ccbluex.liquidbounce.event.events.PacketEvent
+import net.ccbluex.liquidbounce.event.events.TransferOrigin.INCOMING
 import net.ccbluex.liquidbounce.event.events.WorldChangeEvent
 import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.event.packetHandler
 import net.ccbluex.liquidbounce.utils.block.anotherBedPartDirection
 import net.ccbluex.liquidbounce.utils.block.getState
 import net.ccbluex.liquidbounce.utils.block.isBed
@@ -95,16 +96,14 @@ sealed class IsSelfBedMode(name: String, final override val parent: ModeValueGro
         }
 
         @Suppress("unused")
-        private val gameStartHandler = handler<PacketEvent>(FIRST_PRIORITY) {
-            val packet = it.packet
-
-            if (packet is ClientboundPlayerPositionPacket) {
-                val pos = packet.change.position
-                val distSq = player.position().distanceToSqr(pos.x, pos.y, pos.z)
-
-                if (distSq > 16.0 * 16.0) {
-                    trackedSpawnLocation.set(pos.x, pos.y, pos.z)
-                }
+        private val gameStartHandler = packetHandler<ClientboundPlayerPositionPacket>(
+            INCOMING, FIRST_PRIORITY
+        ) { _, packet ->
+            val pos = packet.change.position
+            val distSq = player.position().distanceToSqr(pos.x, pos.y, pos.z)
+
+            if (distSq > 16.0 * 16.0) {
+                trackedSpawnLocation.set(pos.x, pos.y, pos.z)
             }
         }
 
@@ -0,0 +1,195 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.block.hole
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
+import net.minecraft.core.BlockPos
+import net.minecraft.core.SectionPos
+import net.minecraft.world.level.levelgen.structure.BoundingBox
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import java.util.function.Consumer
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Stores holes keyed by the chunk section of their minimum corner, with every cell of a hole mapped to it.
+ *
+ * Looking up the hole of a position is a single hash lookup, and region operations only visit sections
+ * instead of every hole. Holes never share cells. This class is thread-safe.
+ *
+ * [onAdded] and [onRemoved] are called while the write lock is held, so they see the changes in order.
+ */
+class HoleIndex(
+    private val onAdded: Consumer<Hole>,
+    private val onRemoved: Consumer<Hole>,
+) {
+
+    /**
+     * Key -> [SectionPos.asLong] of [BoundingBox.minX], [BoundingBox.minY], [BoundingBox.minZ]
+     */
+    private val bySection = Long2ObjectOpenHashMap<ReferenceOpenHashSet<Hole>>()
+
+    /**
+     * Key -> [BlockPos.asLong] of each cell in [Hole.positions]
+     */
+    private val byCell = Long2ObjectOpenHashMap<Hole>()
+
+    private val lock = ReentrantReadWriteLock()
+
+    operator fun contains(pos: BlockPos): Boolean = lock.read { byCell.containsKey(pos.asLong()) }
+
+    /**
+     * @return false if one of the cells of [hole] already belongs to another hole
+     */
+    fun add(hole: Hole): Boolean {
+        val positions = hole.positions
+
+        lock.write {
+            for (x in positions.minX()..positions.maxX()) {
+                for (z in positions.minZ()..positions.maxZ()) {
+                    if (byCell.containsKey(BlockPos.asLong(x, positions.minY(), z))) {
+                        return false
+                    }
+                }
+            }
+
+            for (x in positions.minX()..positions.maxX()) {
+                for (z in positions.minZ()..positions.maxZ()) {
+                    byCell.put(BlockPos.asLong(x, positions.minY(), z), hole)
+                }
+            }
+
+            val key = sectionKeyOf(hole)
+            val section = bySection[key] ?: ReferenceOpenHashSet<Hole>(4).also { bySection.put(key, it) }
+            section.add(hole)
+            onAdded.accept(hole)
+        }
+
+        return true
+    }
+
+    /**
+     * Removes the hole which has a cell at the given position.
+     */
+    fun removeAt(x: Int, y: Int, z: Int) {
+        lock.write {
+            byCell[BlockPos.asLong(x, y, z)]?.let(::removeUnlocked)
+        }
+    }
+
+    /**
+     * Removes all holes intersecting [region].
+     */
+    fun removeIntersecting(region: BoundingBox) {
+        removeIf(region, keepInside = false)
+    }
+
+    /**
+     * Removes all holes not intersecting [region].
+     */
+    fun retainIntersecting(region: BoundingBox) {
+        removeIf(region, keepInside = true)
+    }
+
+    private fun removeIf(region: BoundingBox, keepInside: Boolean) {
+        lock.write {
+            val iterator = bySection.long2ObjectEntrySet().fastIterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                val key = entry.longKey
+
+                // Holes are at most 2 blocks wide, so they may reach one block into the next section
+                val minX = SectionPos.sectionToBlockCoord(SectionPos.x(key))
+                val minY = SectionPos.sectionToBlockCoord(SectionPos.y(key))
+                val minZ = SectionPos.sectionToBlockCoord(SectionPos.z(key))
+                val reach = BoundingBox(minX, minY, minZ, minX + 16, minY + 15, minZ + 16)
+
+                if (!reach.intersects(region)) {
+                    if (keepInside) {
+                        entry.value.forEach(::removeCells)
+                        iterator.remove()
+                    }
+                    continue
+                }
+
+                val holes = entry.value
+                val holeIterator = holes.iterator()
+                while (holeIterator.hasNext()) {
+                    val hole = holeIterator.next()
+                    if (hole.positions.intersects(region) != keepInside) {
+                        holeIterator.remove()
+                        removeCells(hole)
+                    }
+                }
+
+                if (holes.isEmpty()) {
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    fun clear() {
+        lock.write {
+            bySection.values.forEach { it.forEach(onRemoved) }
+            bySection.clear()
+            byCell.clear()
+        }
+    }
+
+    fun forEach(action: Consumer<Hole>) {
+        lock.read {
+            bySection.values.forEach { it.forEach(action) }
+        }
+    }
+
+    private fun removeUnlocked(hole: Hole) {
+        val key = sectionKeyOf(hole)
+        val section = bySection[key] ?: return
+        if (!section.remove(hole)) {
+            return
+        }
+
+        if (section.isEmpty()) {
+            bySection.remove(key)
+        }
+        removeCells(hole)
+    }
+
+    private fun removeCells(hole: Hole) {
+        val positions = hole.positions
+        for (x in positions.minX()..positions.maxX()) {
+            for (z in positions.minZ()..positions.maxZ()) {
+                byCell.remove(BlockPos.asLong(x, positions.minY(), z))
+            }
+        }
+        onRemoved.accept(hole)
+    }
+
+    private fun sectionKeyOf(hole: Hole): Long {
+        val positions = hole.positions
+        return SectionPos.asLong(
+            SectionPos.blockToSectionCoord(positions.minX()),
+            SectionPos.blockToSectionCoord(positions.minY()),
+            SectionPos.blockToSectionCoord(positions.minZ()),
+        )
+    }
+
+}
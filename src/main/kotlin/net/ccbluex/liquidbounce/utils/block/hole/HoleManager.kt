@@ -20,6 +20,7 @@ package net.ccbluex.liquidbounce.utils.block.hole
 
 import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
 import net.ccbluex.liquidbounce.event.EventListener
+import net.ccbluex.liquidbounce.event.events.GameTickEvent
 import net.ccbluex.liquidbounce.event.events.PlayerPostTickEvent
 import net.ccbluex.liquidbounce.event.handler
 import net.ccbluex.liquidbounce.features.module.MinecraftShortcuts
@@ -42,6 +43,8 @@ object HoleManager : EventListener, MinecraftShortcuts {
         if (activeModules.size == 1) {
             ChunkScanner.subscribe(HoleTracker)
             mc.player?.blockPosition()?.let(::updateScanRegion)
+        } else {
+            HoleTracker.forEachHole(subscriber::onHoleAdded)
         }
     }
 
@@ -49,10 +52,22 @@ object HoleManager : EventListener, MinecraftShortcuts {
         activeModules -= subscriber
         if (activeModules.isEmpty()) {
             ChunkScanner.unsubscribe(HoleTracker)
+            HoleTracker.discardDeltas()
             movableRegionScanner.clearRegion()
         }
     }
 
+    @Suppress("unused")
+    private val deltaHandler = handler<GameTickEvent> {
+        for (delta in HoleTracker.drainDeltas()) {
+            if (delta.added) {
+                activeModules.forEach { it.onHoleAdded(delta.hole) }
+            } else {
+                activeModules.forEach { it.onHoleRemoved(delta.hole) }
+            }
+        }
+    }
+
     @Suppress("unused")
     private val movementHandler = handler<PlayerPostTickEvent> {
         val currentPos = player.blockPosition()
@@ -84,7 +99,7 @@ object HoleManager : EventListener, MinecraftShortcuts {
 
         with(HoleTracker) {
             // Remove blocks out of the area
-            holes.removeIf { !it.positions.intersects(region) }
+            retainIntersecting(region)
 
             // Update new area
             changedAreas.forEach {
@@ -98,4 +113,17 @@ object HoleManager : EventListener, MinecraftShortcuts {
 interface HoleManagerSubscriber {
     fun horizontalDistance(): Int
     fun verticalDistance(): Int
+
+    /**
+     * Is called on the client thread for every hole found after subscribing,
+     * including the ones that were already known.
+     */
+    fun onHoleAdded(hole: Hole) {}
+
+    /**
+     * Is called on the client thread for every hole which became invalid or left the scan region.
+     * Holes are reported by identity, the same instance was passed to [onHoleAdded] before.
+     * Nothing is reported after unsubscribing, so subscribers have to drop their holes themselves.
+     */
+    fun onHoleRemoved(hole: Hole) {}
 }
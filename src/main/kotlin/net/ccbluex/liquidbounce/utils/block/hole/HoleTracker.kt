@@ -19,14 +19,15 @@
 package net.ccbluex.liquidbounce.utils.block.hole
 
 import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap
+import it.unimi.dsi.fastutil.objects.ObjectArrayList
 import net.ccbluex.fastutil.referenceHashSetOf
 import net.ccbluex.liquidbounce.features.module.MinecraftShortcuts
 import net.ccbluex.liquidbounce.utils.block.ChunkScanner
 import net.ccbluex.liquidbounce.utils.block.DIRECTIONS_EXCLUDING_UP
+import net.ccbluex.liquidbounce.utils.block.SectionBlockUpdates
 import net.ccbluex.liquidbounce.utils.block.getState
 import net.ccbluex.liquidbounce.utils.kotlin.getValue
 import net.ccbluex.liquidbounce.utils.math.expendToBlockBox
-import net.ccbluex.liquidbounce.utils.math.iterate
 import net.ccbluex.liquidbounce.utils.math.iterator
 import net.ccbluex.liquidbounce.utils.math.size
 import net.ccbluex.liquidbounce.utils.math.toBlockBox
@@ -38,20 +39,36 @@ import net.minecraft.world.level.block.Block
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.chunk.LevelChunk
 import net.minecraft.world.level.levelgen.structure.BoundingBox
-import java.util.concurrent.ConcurrentSkipListSet
+import java.util.function.Consumer
+import kotlin.math.max
+import kotlin.math.min
 
 private const val INDESTRUCTIBLE = (-2).toByte()
 private const val BLAST_RESISTANT = (-1).toByte()
 private const val AIR = 0.toByte()
 private const val BREAKABLE = 1.toByte()
 
+/**
+ * Bits of all [Direction.BY_2D_DATA] entries
+ */
+private const val ALL_HORIZONTAL = 0b1111
+
 // BlockState types
 private typealias State = Byte
 private typealias BlockStateBuffer = Long2ByteOpenHashMap
 
 object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
 
-    val holes = ConcurrentSkipListSet<Hole>()
+    private val holes = HoleIndex(
+        onAdded = { hole -> enqueueDelta(hole, added = true) },
+        onRemoved = { hole -> enqueueDelta(hole, added = false) },
+    )
+
+    /**
+     * Added and removed holes in the order they happened, until [HoleManager] hands them to its subscribers.
+     */
+    private val pendingDeltas = ObjectArrayList<HoleDelta>()
+
     private val mutable by ThreadLocal.withInitial(BlockPos::MutableBlockPos)
     private val BLAST_RESISTANT_BLOCKS: Set<Block> by lazy {
         BuiltInRegistries.BLOCK.filterTo(referenceHashSetOf()) {
@@ -68,23 +85,105 @@ object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
     override val shouldCallRecordBlockOnChunkUpdate: Boolean
         get() = false
 
+    fun forEachHole(action: Consumer<Hole>) {
+        holes.forEach(action)
+    }
+
     override fun recordBlock(pos: BlockPos, state: BlockState, cleared: Boolean) {
-        // Invalidate old ones
-        if (state.isAir) {
-            // if one of the neighbor blocks becomes air, invalidate the hole
-            holes.removeIf { it.positions.iterate().any { p -> p.distManhattan(pos) == 1 } }
-        } else {
-            holes.removeIf { it.blockInvalidators.isInside(pos) }
+        invalidateAround(pos)
+        pos.expendToBlockBox(2, 3, 2).clippedUpdate()
+    }
+
+    override fun recordBlocks(updates: SectionBlockUpdates) {
+        // All updates of the section are covered by a single rescan
+        val bounds = intArrayOf(
+            Int.MAX_VALUE, Int.MAX_VALUE, Int.MAX_VALUE,
+            Int.MIN_VALUE, Int.MIN_VALUE, Int.MIN_VALUE,
+        )
+        updates.forEach { pos, _ ->
+            invalidateAround(pos)
+            bounds[0] = min(bounds[0], pos.x)
+            bounds[1] = min(bounds[1], pos.y)
+            bounds[2] = min(bounds[2], pos.z)
+            bounds[3] = max(bounds[3], pos.x)
+            bounds[4] = max(bounds[4], pos.y)
+            bounds[5] = max(bounds[5], pos.z)
+        }
+
+        if (bounds[0] > bounds[3]) {
+            return
         }
 
-        // Check new ones
-        val region = pos.expendToBlockBox(2, 3, 2)
-        invalidate(region)
-        region.cachedUpdate()
+        BoundingBox(
+            bounds[0] - 2, bounds[1] - 3, bounds[2] - 2,
+            bounds[3] + 2, bounds[4] + 3, bounds[5] + 2,
+        ).clippedUpdate()
+    }
+
+    /**
+     * Removes the holes which depend on [pos]: a hole cell needs a solid floor below it, two free blocks
+     * above it and solid walls next to it.
+     */
+    private fun invalidateAround(pos: BlockPos) {
+        val x = pos.x
+        val y = pos.y
+        val z = pos.z
+
+        holes.removeAt(x, y + 1, z)
+        holes.removeAt(x, y, z)
+        holes.removeAt(x, y - 1, z)
+        holes.removeAt(x, y - 2, z)
+        holes.removeAt(x - 1, y, z)
+        holes.removeAt(x + 1, y, z)
+        holes.removeAt(x, y, z - 1)
+        holes.removeAt(x, y, z + 1)
+    }
+
+    /**
+     * Removes all holes outside of [region].
+     */
+    internal fun retainIntersecting(region: BoundingBox) {
+        holes.retainIntersecting(region)
     }
 
-    private fun invalidate(region: BoundingBox) {
-        holes.removeIf { it.positions.intersects(region) }
+    private fun enqueueDelta(hole: Hole, added: Boolean) {
+        synchronized(pendingDeltas) {
+            pendingDeltas.add(HoleDelta(hole, added))
+        }
+    }
+
+    /**
+     * Takes all pending deltas out of the queue.
+     */
+    internal fun drainDeltas(): Array<HoleDelta> = synchronized(pendingDeltas) {
+        if (pendingDeltas.isEmpty) {
+            return emptyArray()
+        }
+
+        val drained = pendingDeltas.toTypedArray()
+        pendingDeltas.clear()
+        drained
+    }
+
+    internal fun discardDeltas() {
+        synchronized(pendingDeltas) {
+            pendingDeltas.clear()
+        }
+    }
+
+    /**
+     * Scans the part of this box which lies in the current scan region of [HoleManager].
+     */
+    private fun BoundingBox.clippedUpdate() {
+        val region = HoleManager.movableRegionScanner.currentRegion
+        if (!intersects(region)) {
+            return
+        }
+
+        BoundingBox(
+            max(minX(), region.minX()), max(minY(), region.minY()), max(minZ(), region.minZ()),
+            min(maxX(), region.maxX()), min(maxY(), region.maxY()), min(maxZ(), region.maxZ()),
+        ).cachedUpdate()
     }
 
     @Suppress("CognitiveComplexMethod", "LongMethod", "LoopWithTooManyJumpStatements")
@@ -95,27 +194,21 @@ object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
 
         val topY = world.maxY - 2
 
-        val holesInRegion = if (holes.size >= 32) {
-            holes.subSet(
-                Hole(Hole.Type.ONE_ONE, BoundingBox(mutableLocal.set(minX() - 2, minY() - 2, minZ() - 2))), true,
-                Hole(Hole.Type.ONE_ONE, BoundingBox(mutableLocal.set(maxX() + 2, maxY() + 2, maxZ() + 2))), true
-            )
-        } else {
-            holes
-        }
-
         // Only check positions in this chunk (pos is BlockPos.Mutable)
         for (pos in this) {
-            if (pos.y >= topY || holesInRegion.any { pos in it } || !buffer.checkSameXZ(pos)) {
+            if (pos.y >= topY || pos in holes || !buffer.checkSameXZ(pos)) {
                 continue
             }
 
-            val surroundings = Direction.BY_2D_DATA.filterTo(ArrayList(4)) { direction ->
-                val cached = buffer.cache(mutable.setWithOffset(pos, direction))
-                cached == BLAST_RESISTANT || cached == INDESTRUCTIBLE
+            // Bit i is set if the block towards Direction.BY_2D_DATA[i] is blast resistant
+            var surroundings = 0
+            for (i in Direction.BY_2D_DATA.indices) {
+                if (buffer.isBlastResistant(pos, Direction.BY_2D_DATA[i])) {
+                    surroundings = surroundings or (1 shl i)
+                }
             }
 
-            when (surroundings.size) {
+            when (Integer.bitCount(surroundings)) {
                 // 1*1
                 4 -> {
                     val bedrockOnly = DIRECTIONS_EXCLUDING_UP.all { direction ->
@@ -123,31 +216,26 @@ object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
                         cached == INDESTRUCTIBLE
                     }
 
-                    holes += Hole(Hole.Type.ONE_ONE, BoundingBox(pos), bedrockOnly)
+                    holes.add(Hole(Hole.Type.ONE_ONE, BoundingBox(pos), bedrockOnly))
                 }
                 // 1*2
                 3 -> {
-                    val airDirection = Direction.BY_2D_DATA.first { it !in surroundings }
-                    val another = pos.relative(airDirection)
+                    val airDirection = Direction.BY_2D_DATA[Integer.numberOfTrailingZeros(surroundings.inv())]
+                    val another = mutableLocal.setWithOffset(pos, airDirection)
 
                     if (!buffer.checkSameXZ(another)) {
                         continue
                     }
 
-                    val airOpposite = airDirection.opposite
-                    var idx = 0
-                    val checkDirections = Array(3) {
-                        val value = Direction.BY_2D_DATA[idx++]
-                        if (value === airOpposite) Direction.BY_2D_DATA[idx++] else value
-                    }
-
-                    if (buffer.checkSurroundings(another, checkDirections)) {
-                        holes += Hole(Hole.Type.ONE_TWO, BoundingBox.fromCorners(pos, another))
+                    if (buffer.checkSurroundings(another, except = airDirection.opposite)) {
+                        holes.add(Hole(Hole.Type.ONE_TWO, BoundingBox.fromCorners(pos, another)))
                     }
                 }
                 // 2*2
                 2 -> {
-                    val (direction1, direction2) = Direction.BY_2D_DATA.filterTo(ArrayList(2)) { it !in surroundings }
+                    val airDirections = surroundings.inv() and ALL_HORIZONTAL
+                    val direction1 = Direction.BY_2D_DATA[Integer.numberOfTrailingZeros(airDirections)]
+                    val direction2 = Direction.BY_2D_DATA[31 - Integer.numberOfLeadingZeros(airDirections)]
 
                     if (!buffer.checkState(
                             mutableLocal.setWithOffset(pos, direction1),
@@ -169,7 +257,7 @@ object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
                         continue
                     }
 
-                    holes += Hole(Hole.Type.TWO_TWO, BoundingBox.fromCorners(pos, mutableLocal))
+                    holes.add(Hole(Hole.Type.TWO_TWO, BoundingBox.fromCorners(pos, mutableLocal)))
                 }
             }
         }
@@ -209,33 +297,37 @@ object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
         return true
     }
 
-    private fun BlockStateBuffer.checkSurroundings(
-        blockPos: BlockPos,
-        directions: Array<out Direction>
-    ): Boolean {
-        return directions.all {
-            val cached = cache(mutable.setWithOffset(blockPos, it))
-            cached == BLAST_RESISTANT || cached == INDESTRUCTIBLE
-        }
+    private fun BlockStateBuffer.isBlastResistant(blockPos: BlockPos, direction: Direction): Boolean {
+        val cached = cache(mutable.setWithOffset(blockPos, direction))
+        return cached == BLAST_RESISTANT || cached == INDESTRUCTIBLE
+    }
+
+    /**
+     * Checks all horizontal sides of [blockPos] except [except].
+     */
+    private fun BlockStateBuffer.checkSurroundings(blockPos: BlockPos, except: Direction): Boolean {
+        return Direction.BY_2D_DATA.all { it === except || isBlastResistant(blockPos, it) }
     }
 
     private fun BlockStateBuffer.checkState(
         blockPos: BlockPos,
-        vararg directions: Direction
+        direction1: Direction,
+        direction2: Direction,
     ): Boolean {
-        return checkSameXZ(blockPos) && checkSurroundings(blockPos, directions)
+        return checkSameXZ(blockPos) && isBlastResistant(blockPos, direction1) && isBlastResistant(blockPos, direction2)
     }
 
     override fun chunkUpdate(chunk: LevelChunk) {
-        val region = chunk.toBlockBox()
+        // Walls of holes in the neighbor chunks might have changed as well
+        val region = chunk.toBlockBox().inflatedBy(1, 0, 1)
         if (region.intersects(HoleManager.movableRegionScanner.currentRegion)) {
-            invalidate(region)
-            region.cachedUpdate()
+            holes.removeIntersecting(region)
+            region.clippedUpdate()
         }
     }
 
     override fun clearChunk(pos: ChunkPos) {
-        invalidate(pos.toBlockBox())
+        holes.removeIntersecting(pos.toBlockBox())
     }
 
     override fun clearAllChunks() {
@@ -243,3 +335,6 @@ object HoleTracker : ChunkScanner.BlockChangeSubscriber, MinecraftShortcuts {
     }
 
 }
+
+@JvmRecord
+internal data class HoleDelta(val hole: Hole, val added: Boolean)
@@ -20,8 +20,8 @@ package net.ccbluex.liquidbounce.utils.block.placer
 
 import net.ccbluex.liquidbounce.config.types.group.ToggleableValueGroup
 import net.ccbluex.liquidbounce.event.EventListener
-import net.ccbluex.liquidbounce.event.events.PacketEvent
-import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.event.events.TransferOrigin.INCOMING
+import net.ccbluex.liquidbounce.event.packetHandler
 import net.ccbluex.liquidbounce.event.tickHandler
 import net.ccbluex.liquidbounce.features.module.ClientModule
 import net.ccbluex.liquidbounce.utils.aiming.NoRotationMode
@@ -120,11 +120,10 @@ class CrystalDestroyFeature(eventListener: EventListener, private val module: Cl
     }
 
     @Suppress("unused")
-    val destroyEntityHandler = handler<PacketEvent> {
-        val target = currentTarget ?: return@handler
+    val destroyEntityHandler = packetHandler<ClientboundRemoveEntitiesPacket>(INCOMING) { _, packet ->
+        val target = currentTarget ?: return@packetHandler
 
-        val packet = it.packet
-        if (packet is ClientboundRemoveEntitiesPacket && target.id in packet.entityIds) {
+        if (target.id in packet.entityIds) {
             currentTarget = null
         }
     }
@@ -0,0 +1,111 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.client
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.time.LocalDateTime
+
+/**
+ * Records wall time and heap allocation of the client startup phases.
+ *
+ * Allocations are counted over all threads, so work a phase hands to workers is included,
+ * but so is anything else running at the same time.
+ */
+object StartupTimeline {
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+    private val phases = ObjectArrayList<Phase>()
+
+    /**
+     * Time the client started, phases are reported relative to it
+     */
+    @Volatile
+    private var startNanos = System.nanoTime()
+
+    class Phase(val name: String, val startNanos: Long, val wallNanos: Long, val allocatedBytes: Long)
+
+    /**
+     * Called by the client entrypoint, so the timeline does not start with the first phase.
+     */
+    fun start() {
+        startNanos = System.nanoTime()
+    }
+
+    /**
+     * Runs [block] as the phase [name]. Phases may be nested, their names should tell.
+     */
+    inline fun <T> phase(name: String, block: () -> T): T {
+        val start = System.nanoTime()
+        val allocatedBefore = allocatedBytes()
+        try {
+            return block()
+        } finally {
+            val allocated = if (allocatedBefore < 0) -1L else allocatedBytes() - allocatedBefore
+            record(name, start, System.nanoTime() - start, allocated)
+        }
+    }
+
+    /**
+     * Total bytes allocated by all threads so far, or a negative value if the JVM does not support measuring it
+     */
+    fun allocatedBytes(): Long {
+        val bean = threadBean ?: return -1L
+        return runCatching { bean.totalThreadAllocatedBytes }.getOrDefault(-1L)
+    }
+
+    fun record(name: String, startNanos: Long, wallNanos: Long, allocatedBytes: Long) {
+        synchronized(phases) {
+            phases.add(Phase(name, startNanos, wallNanos, allocatedBytes))
+        }
+    }
+
+    /**
+     * Logs the recorded phases and writes them to [file].
+     */
+    fun write(file: File) {
+        val report = buildString {
+            appendLine("Startup timeline (${LocalDateTime.now()})")
+            appendLine("%-32s %10s %10s %12s".format("Phase", "Start ms", "Wall ms", "Alloc MB"))
+
+            synchronized(phases) {
+                for (phase in phases.sortedBy { it.startNanos }) {
+                    appendLine(
+                        "%-32s %10.1f %10.1f %12s".format(
+                            phase.name,
+                            (phase.startNanos - startNanos) / 1_000_000.0,
+                            phase.wallNanos / 1_000_000.0,
+                            if (phase.allocatedBytes < 0) "n/a" else "%.1f".format(phase.allocatedBytes / 1048576.0),
+                        )
+                    )
+                }
+            }
+        }
+
+        logger.info(report)
+        runCatching {
+            file.writeText(report)
+        }.onFailure {
+            logger.error("Unable to write startup timeline", it)
+        }
+    }
+
+}
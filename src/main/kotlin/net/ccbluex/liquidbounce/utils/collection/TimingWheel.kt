@@ -0,0 +1,146 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.collection
+
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList
+import java.util.function.Consumer
+
+private const val SLOT_BITS = 6
+private const val SLOTS = 1 shl SLOT_BITS
+private const val SLOT_MASK = SLOTS - 1L
+private const val LEVELS = 4
+
+/**
+ * A hierarchical timing wheel scheduling values for a target tick.
+ *
+ * Level 0 has one slot per tick, every further level [SLOTS] times coarser slots.
+ * A value waits in the coarsest level it fits in and is moved down once its slot comes up,
+ * so scheduling and advancing is O(1) amortized, no matter how far ahead values are scheduled.
+ * Values further ahead than all levels wait in an overflow bucket.
+ *
+ * Not thread-safe.
+ */
+class TimingWheel<T> {
+
+    private val levels = Array(LEVELS) { Array(SLOTS) { Bucket<T>() } }
+
+    private val overflow = Bucket<T>()
+
+    /**
+     * The last tick passed to [advance]
+     */
+    var currentTick = 0L
+        private set
+
+    var size = 0
+        private set
+
+    fun isEmpty() = size == 0
+
+    /**
+     * Schedules [value] to be passed to the consumer of [advance] at [targetTick].
+     * If [targetTick] is not after [currentTick], it fires on the next [advance].
+     */
+    fun schedule(targetTick: Long, value: T) {
+        place(maxOf(targetTick, currentTick + 1), value)
+        size++
+    }
+
+    private fun place(targetTick: Long, value: T) {
+        val delta = targetTick - currentTick
+
+        for (level in 0 until LEVELS) {
+            val shift = SLOT_BITS * level
+            if (delta < 1L shl (shift + SLOT_BITS)) {
+                levels[level][((targetTick ushr shift) and SLOT_MASK).toInt()].add(targetTick, value)
+                return
+            }
+        }
+
+        overflow.add(targetTick, value)
+    }
+
+    /**
+     * Moves to the next tick and passes every value scheduled for it to [consumer].
+     */
+    fun advance(consumer: Consumer<T>) {
+        val tick = ++currentTick
+
+        if (tick and ((1L shl SLOT_BITS * LEVELS) - 1) == 0L && !overflow.isEmpty()) {
+            // Values might still be too far ahead and go back into the overflow
+            val pending = Bucket<T>()
+            overflow.drainTo(pending::add)
+            pending.drainTo(::place)
+        }
+
+        // Coarser levels first, their values might move into a finer slot which is due now
+        for (level in LEVELS - 1 downTo 1) {
+            val shift = SLOT_BITS * level
+            if (tick and ((1L shl shift) - 1) == 0L) {
+                levels[level][((tick ushr shift) and SLOT_MASK).toInt()].drainTo(::place)
+            }
+        }
+
+        val due = levels[0][(tick and SLOT_MASK).toInt()]
+        if (due.isEmpty()) {
+            return
+        }
+
+        size -= due.size
+        // Values scheduled by the consumer are at least one tick ahead, so they never land in this slot
+        due.drainTo { _, value -> consumer.accept(value) }
+    }
+
+    fun clear() {
+        levels.forEach { level -> level.forEach(Bucket<T>::clear) }
+        overflow.clear()
+        size = 0
+    }
+
+    private class Bucket<T> {
+        private val targets = LongArrayList()
+        private val values = ReferenceArrayList<T>()
+
+        val size get() = targets.size
+
+        fun isEmpty() = targets.isEmpty
+
+        fun add(targetTick: Long, value: T) {
+            targets.add(targetTick)
+            values.add(value)
+        }
+
+        /**
+         * Hands out all values and empties the bucket. [action] must not add to this bucket.
+         */
+        inline fun drainTo(action: (Long, T) -> Unit) {
+            for (i in 0 until targets.size) {
+                action(targets.getLong(i), values[i])
+            }
+            clear()
+        }
+
+        fun clear() {
+            targets.clear()
+            values.clear()
+        }
+    }
+
+}
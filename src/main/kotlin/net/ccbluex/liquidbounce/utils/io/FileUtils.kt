@@ -19,8 +19,16 @@
 
 package net.ccbluex.liquidbounce.utils.io
 
+import java.io.File
 import java.io.IOException
+import java.io.OutputStream
 import java.io.RandomAccessFile
+import java.io.Writer
+import java.nio.channels.FileChannel
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
 import java.util.BitSet
 
 /**
@@ -51,6 +59,42 @@ fun RandomAccessFile.skipLine(): Long {
     return read
 }
 
+/**
+ * Replaces the content of [file] with what [write] writes, without ever leaving a truncated file behind.
+ *
+ * The content goes into a temporary file next to [file], which is synced to disk and then moved over [file].
+ * [write] may close the writer.
+ */
+@Throws(IOException::class)
+inline fun writeAtomically(file: File, write: (Writer) -> Unit) {
+    writeBytesAtomically(file) { output -> output.bufferedWriter().use(write) }
+}
+
+/**
+ * Same as [writeAtomically] for binary content. [write] receives a buffered stream and may close it.
+ */
+@Throws(IOException::class)
+inline fun writeBytesAtomically(file: File, write: (OutputStream) -> Unit) {
+    val temp = File(file.parentFile, "${file.name}.tmp")
+
+    try {
+        temp.outputStream().buffered().use { output -> write(output) }
+        FileChannel.open(temp.toPath(), StandardOpenOption.WRITE).use { channel -> channel.force(true) }
+
+        try {
+            Files.move(
+                temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+            )
+        } catch (_: AtomicMoveNotSupportedException) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        }
+    } catch (e: Throwable) {
+        temp.delete()
+        throw e
+    }
+}
+
 @JvmField
 val ILLEGAL_FILE_NAME_CHARS_WINDOWS = BitSet(128).apply {
     set('\\'.code)
@@ -0,0 +1,307 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.io
+
+import net.ccbluex.liquidbounce.LiquidBounce.CLIENT_NAME
+import org.apache.logging.log4j.LogManager
+import org.apache.logging.log4j.Logger
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Interval in which the writer thread drains the queue of every open stream
+ */
+private const val DRAIN_INTERVAL_MILLIS = 100L
+
+private const val SEGMENT_EXTENSION = "lbr"
+
+/**
+ * Streams records to disk on a background thread, so recording never holds more than [capacity] records in memory.
+ *
+ * Producers only [offer] records into a bounded, lock-free queue. The writer thread encodes them and appends them
+ * length-prefixed (unsigned varint length, then the encoded bytes) to segment files named
+ * `<baseName>.<index>.lbr`, with `.gz` appended if [compress] is set. A segment is rotated once it holds
+ * [segmentBytes] of encoded data. Records offered while the queue is full are dropped and counted.
+ *
+ * The segments are read back with [readRecords], e.g. to convert them into JSON with [RecordConverter].
+ */
+class RecordStream<T : Any>(
+    private val folder: File,
+    val baseName: String,
+    private val capacity: Int = 1 shl 16,
+    private val segmentBytes: Long = 64L shl 20,
+    private val compress: Boolean = false,
+    private val encoder: (T) -> ByteArray,
+) {
+
+    private val queue = ConcurrentLinkedQueue<T>()
+    private val queued = AtomicInteger()
+
+    private val accepted = AtomicLong()
+    private val droppedRecords = AtomicLong()
+
+    /**
+     * Number of records accepted by [offer]
+     */
+    val recorded: Long get() = accepted.get()
+
+    /**
+     * Number of records dropped because the writer could not keep up
+     */
+    val dropped: Long get() = droppedRecords.get()
+
+    private val segmentFiles = mutableListOf<File>()
+    private var output: OutputStream? = null
+    private var writtenToSegment = 0L
+
+    @Volatile
+    private var closed = false
+
+    private val drainTask: ScheduledFuture<*> = executor.scheduleWithFixedDelay(
+        ::drainCatching, DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS
+    )
+
+    /**
+     * Queues [record] for writing. Must not be modified afterward, as it is encoded on the writer thread.
+     *
+     * @return false if the stream is closed or full and the record was dropped
+     */
+    fun offer(record: T): Boolean {
+        if (closed) {
+            return false
+        }
+
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet()
+            droppedRecords.incrementAndGet()
+            return false
+        }
+
+        queue.offer(record)
+        accepted.incrementAndGet()
+        return true
+    }
+
+    /**
+     * Writes the remaining records and closes the current segment.
+     *
+     * @return the written segments in order, completed on the writer thread
+     */
+    fun close(): CompletableFuture<List<File>> {
+        closed = true
+        drainTask.cancel(false)
+
+        return CompletableFuture.supplyAsync({
+            try {
+                drain()
+            } finally {
+                output?.close()
+                output = null
+            }
+
+            if (dropped > 0) {
+                logger.warn("Dropped $dropped records of $baseName, the writer could not keep up")
+            }
+            segmentFiles.toList()
+        }, executor)
+    }
+
+    /**
+     * Any exception escaping would cancel the scheduled drain task, so nothing would be written anymore.
+     */
+    private fun drainCatching() {
+        try {
+            drain()
+        } catch (e: Exception) {
+            logger.error("Failed to write records of $baseName", e)
+        }
+    }
+
+    private fun drain() {
+        while (true) {
+            val record = queue.poll() ?: break
+            queued.decrementAndGet()
+
+            val bytes = try {
+                encoder(record)
+            } catch (e: Exception) {
+                logger.error("Failed to encode a record of $baseName", e)
+                continue
+            }
+            val output = segmentFor(bytes.size)
+
+            writeVarInt(output, bytes.size)
+            output.write(bytes)
+            writtenToSegment += bytes.size
+        }
+
+        output?.flush()
+    }
+
+    private fun segmentFor(recordSize: Int): OutputStream {
+        val current = output
+        if (current != null && (writtenToSegment == 0L || writtenToSegment + recordSize <= segmentBytes)) {
+            return current
+        }
+
+        current?.close()
+
+        folder.mkdirs()
+        val name = "$baseName.${segmentFiles.size}.$SEGMENT_EXTENSION" + if (compress) ".gz" else ""
+        val file = folder.resolve(name)
+        segmentFiles += file
+
+        val fileOutput = file.outputStream()
+        val next = BufferedOutputStream(if (compress) GZIPOutputStream(fileOutput, 1 shl 16) else fileOutput, 1 shl 16)
+        output = next
+        writtenToSegment = 0L
+        return next
+    }
+
+    companion object {
+
+        private val logger: Logger = LogManager.getLogger("$CLIENT_NAME/RecordStream")
+
+        private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+            Thread(runnable, "$CLIENT_NAME Record Writer").apply { isDaemon = true }
+        }
+
+        /**
+         * Reads the records of [segments] in order and passes each to [consumer].
+         */
+        @Throws(IOException::class)
+        fun readRecords(segments: List<File>, consumer: (ByteArray) -> Unit) {
+            for (segment in segments) {
+                val fileInput = segment.inputStream()
+                val input = BufferedInputStream(
+                    if (segment.name.endsWith(".gz")) GZIPInputStream(fileInput, 1 shl 16) else fileInput,
+                    1 shl 16
+                )
+
+                input.use {
+                    while (true) {
+                        val length = readVarInt(it)
+                        if (length < 0) {
+                            break
+                        }
+
+                        consumer(it.readNBytes(length).also { bytes ->
+                            if (bytes.size != length) {
+                                throw EOFException("Truncated record in ${segment.name}")
+                            }
+                        })
+                    }
+                }
+            }
+        }
+
+        private fun writeVarInt(output: OutputStream, value: Int) {
+            var remaining = value
+            while (remaining and 0x7F.inv() != 0) {
+                output.write(remaining and 0x7F or 0x80)
+                remaining = remaining ushr 7
+            }
+            output.write(remaining)
+        }
+
+        /**
+         * @return the value, or -1 at the end of the stream
+         */
+        private fun readVarInt(input: InputStream): Int {
+            var value = 0
+            var shift = 0
+
+            while (true) {
+                val byte = input.read()
+                if (byte < 0) {
+                    if (shift == 0) {
+                        return -1
+                    }
+                    throw EOFException("Truncated record length")
+                }
+
+                value = value or (byte and 0x7F shl shift)
+                if (byte and 0x80 == 0) {
+                    return value
+                }
+
+                shift += 7
+                if (shift > 28) {
+                    throw IOException("Record length is too long")
+                }
+            }
+        }
+
+    }
+
+}
+
+/**
+ * Regenerates readable files from the segments of a [RecordStream].
+ */
+object RecordConverter {
+
+    /**
+     * Writes records which are JSON documents as a single JSON array to [output].
+     */
+    @Throws(IOException::class)
+    fun toJsonArray(segments: List<File>, output: File) {
+        output.outputStream().buffered(1 shl 16).use { stream ->
+            var first = true
+
+            stream.write('['.code)
+            RecordStream.readRecords(segments) { record ->
+                if (!first) {
+                    stream.write(','.code)
+                }
+                first = false
+                stream.write(record)
+            }
+            stream.write(']'.code)
+        }
+    }
+
+    /**
+     * Writes records as lines to [output], e.g. rows of a CSV file.
+     */
+    @Throws(IOException::class)
+    fun toLines(segments: List<File>, output: File) {
+        output.outputStream().buffered(1 shl 16).use { stream ->
+            RecordStream.readRecords(segments) { record ->
+                stream.write(record)
+                stream.write('\n'.code)
+            }
+        }
+    }
+
+}
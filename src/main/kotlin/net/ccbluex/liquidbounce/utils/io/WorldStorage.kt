@@ -0,0 +1,50 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.io
+
+import net.ccbluex.liquidbounce.config.ConfigSystem
+import net.ccbluex.liquidbounce.utils.client.mc
+import java.io.File
+
+/**
+ * Returns a folder under the config root to persist data of [feature] for the current server and dimension.
+ * The folder is not created.
+ *
+ * @return null if there is no world
+ */
+fun worldStorageFolder(feature: String): File? {
+    val world = mc.level ?: return null
+    val server = mc.currentServer?.ip ?: mc.singleplayerServer?.worldData?.levelName ?: return null
+    val dimension = world.dimension().identifier()
+
+    return ConfigSystem.rootFolder
+        .resolve(feature)
+        .resolve(server.toSafeFileName())
+        .resolve("${dimension.namespace}_${dimension.path}".toSafeFileName())
+}
+
+/**
+ * Replaces all characters which are not allowed in file names on any platform.
+ */
+fun String.toSafeFileName(): String = buildString(length) {
+    for (char in this@toSafeFileName) {
+        val code = char.code
+        append(if (code < ' '.code || code < 128 && ILLEGAL_FILE_NAME_CHARS_WINDOWS.get(code)) '_' else char)
+    }
+}
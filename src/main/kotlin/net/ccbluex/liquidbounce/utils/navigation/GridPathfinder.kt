@@ -0,0 +1,315 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.navigation
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.minecraft.core.BlockPos
+import net.minecraft.core.SectionPos
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.min
+
+private const val STRAIGHT_COST = 10
+private const val DIAGONAL_COST = 14
+private const val JUMP_COST = 10
+private const val FALL_COST_PER_BLOCK = 4
+private const val SWIM_COST = 10
+
+private const val MAX_FALL = 3
+
+// Straight directions first, diagonals last
+private val DX = intArrayOf(1, -1, 0, 0, 1, 1, -1, -1)
+private val DZ = intArrayOf(0, 0, 1, -1, 1, -1, 1, -1)
+
+/**
+ * A* search for walking paths on a [PassabilityView].
+ *
+ * Nodes are feet positions packed by [BlockPos.asLong]. A node is walkable if the player fits into it and it is
+ * supported by a solid block, water or a low block. From every node the player can walk or swim to its 8 neighbours,
+ * jump one block up or fall up to [MAX_FALL] blocks down.
+ *
+ * An instance keeps per-search state and must only be used by one thread at a time.
+ *
+ * @param maxIterations upper bound of expanded nodes per search
+ * @param maxRange maximum horizontal distance of nodes from the start
+ */
+class GridPathfinder(
+    private val view: PassabilityView,
+    private val maxIterations: Int = 20_000,
+    private val maxRange: Int = 96,
+) {
+
+    private var cachedSectionKey = Long.MIN_VALUE
+    private var cachedSection: ByteArray? = null
+    private var cachedLoaded = false
+
+    private val gScores = Long2IntOpenHashMap().apply { defaultReturnValue(Int.MAX_VALUE) }
+    private val parents = Long2LongOpenHashMap()
+    private val closed = LongOpenHashSet()
+    private val open = LongMinHeap()
+
+    /**
+     * Number of nodes expanded by the last search
+     */
+    var lastIterations = 0
+        private set
+
+    fun cell(x: Int, y: Int, z: Int): Byte {
+        val key = SectionPos.asLong(x shr 4, y shr 4, z shr 4)
+        if (key != cachedSectionKey) {
+            cachedSectionKey = key
+            cachedSection = view.getSection(x shr 4, y shr 4, z shr 4)
+            cachedLoaded = cachedSection != null || view.isLoaded(x shr 4, z shr 4)
+        }
+
+        val section = cachedSection ?: return if (cachedLoaded) PathCell.AIR else PathCell.UNKNOWN
+        return section[(((y and 15) shl 4 or (z and 15)) shl 4) or (x and 15)]
+    }
+
+    private fun fitsFeet(cell: Byte) = cell == PathCell.AIR || cell == PathCell.LOW || cell == PathCell.WATER
+
+    private fun fitsHead(cell: Byte) = cell == PathCell.AIR || cell == PathCell.WATER
+
+    /**
+     * If the player fits into the position, regardless of its support
+     */
+    fun isOpen(x: Int, y: Int, z: Int): Boolean = fitsFeet(cell(x, y, z)) && fitsHead(cell(x, y + 1, z))
+
+    /**
+     * If the player can stand at the position
+     */
+    fun isWalkable(x: Int, y: Int, z: Int): Boolean {
+        val feet = cell(x, y, z)
+        if (!fitsFeet(feet) || !fitsHead(cell(x, y + 1, z))) {
+            return false
+        }
+
+        if (feet == PathCell.LOW || feet == PathCell.WATER) {
+            return true
+        }
+
+        val below = cell(x, y - 1, z)
+        return below == PathCell.SOLID || below == PathCell.WATER
+    }
+
+    /**
+     * @param goalRange horizontal (chebyshev) distance to [goal] at which the goal counts as reached
+     * @return the feet positions from the first step after [start] to the goal. If the goal can't be reached,
+     * the path leads to the position closest to it. Empty if no step brings the player closer.
+     */
+    fun findPath(start: Long, goal: Long, goalRange: Int = 1): LongArray {
+        gScores.clear()
+        parents.clear()
+        closed.clear()
+        open.clear()
+        cachedSectionKey = Long.MIN_VALUE
+        cachedSection = null
+
+        val startX = BlockPos.getX(start)
+        val startZ = BlockPos.getZ(start)
+        val goalX = BlockPos.getX(goal)
+        val goalY = BlockPos.getY(goal)
+        val goalZ = BlockPos.getZ(goal)
+
+        gScores.put(start, 0)
+        open.add(start, heuristic(start, goalX, goalY, goalZ))
+
+        var best = start
+        var bestHeuristic = heuristic(start, goalX, goalY, goalZ)
+        var iterations = 0
+
+        while (!open.isEmpty && iterations < maxIterations) {
+            val node = open.poll()
+            if (!closed.add(node)) {
+                continue
+            }
+            iterations++
+
+            val x = BlockPos.getX(node)
+            val y = BlockPos.getY(node)
+            val z = BlockPos.getZ(node)
+            if (abs(x - goalX) <= goalRange && abs(z - goalZ) <= goalRange && abs(y - goalY) <= 1) {
+                best = node
+                break
+            }
+
+            val h = heuristic(node, goalX, goalY, goalZ)
+            if (h < bestHeuristic) {
+                best = node
+                bestHeuristic = h
+            }
+
+            val g = gScores.get(node)
+            forEachNeighbour(x, y, z) { next, cost ->
+                if (abs(BlockPos.getX(next) - startX) > maxRange || abs(BlockPos.getZ(next) - startZ) > maxRange) {
+                    return@forEachNeighbour
+                }
+
+                val tentative = g + cost
+                if (tentative < gScores.get(next)) {
+                    gScores.put(next, tentative)
+                    parents.put(next, node)
+                    open.add(next, tentative + heuristic(next, goalX, goalY, goalZ))
+                }
+            }
+        }
+
+        lastIterations = iterations
+        return buildPath(start, best)
+    }
+
+    private inline fun forEachNeighbour(x: Int, y: Int, z: Int, action: (next: Long, cost: Int) -> Unit) {
+        val swimming = cell(x, y, z) == PathCell.WATER
+        val extraCost = if (swimming) SWIM_COST else 0
+        val canJump = fitsHead(cell(x, y + 2, z))
+
+        for (i in DX.indices) {
+            val dx = DX[i]
+            val dz = DZ[i]
+            val diagonal = dx != 0 && dz != 0
+
+            // Don't cut corners
+            if (diagonal && (!isOpen(x + dx, y, z) || !isOpen(x, y, z + dz))) {
+                continue
+            }
+
+            val nx = x + dx
+            val nz = z + dz
+            val cost = (if (diagonal) DIAGONAL_COST else STRAIGHT_COST) + extraCost
+
+            when {
+                isWalkable(nx, y, nz) -> action(BlockPos.asLong(nx, y, nz), cost)
+                canJump && isWalkable(nx, y + 1, nz) -> action(BlockPos.asLong(nx, y + 1, nz), cost + JUMP_COST)
+                isOpen(nx, y, nz) -> {
+                    for (drop in 1..MAX_FALL) {
+                        if (isWalkable(nx, y - drop, nz)) {
+                            action(BlockPos.asLong(nx, y - drop, nz), cost + drop * FALL_COST_PER_BLOCK)
+                            break
+                        }
+
+                        if (!fitsFeet(cell(nx, y - drop, nz))) {
+                            break
+                        }
+                    }
+                }
+            }
+        }
+
+        if (swimming && isWalkable(x, y + 1, z)) {
+            action(BlockPos.asLong(x, y + 1, z), STRAIGHT_COST)
+        }
+    }
+
+    private fun heuristic(node: Long, goalX: Int, goalY: Int, goalZ: Int): Int {
+        val dx = abs(BlockPos.getX(node) - goalX)
+        val dz = abs(BlockPos.getZ(node) - goalZ)
+        val dy = goalY - BlockPos.getY(node)
+        val vertical = if (dy > 0) dy * JUMP_COST else -dy * FALL_COST_PER_BLOCK
+
+        return STRAIGHT_COST * max(dx, dz) + (DIAGONAL_COST - STRAIGHT_COST) * min(dx, dz) + vertical
+    }
+
+    private fun buildPath(start: Long, end: Long): LongArray {
+        val path = LongArrayList()
+        var node = end
+        while (node != start) {
+            path.add(node)
+            node = parents.get(node)
+        }
+
+        val result = path.toLongArray()
+        result.reverse()
+        return result
+    }
+
+}
+
+/**
+ * Binary min-heap of nodes keyed by their f-score. A node may be contained multiple times,
+ * stale entries are skipped by the closed set of the search.
+ */
+private class LongMinHeap {
+
+    private var nodes = LongArray(256)
+    private var keys = IntArray(256)
+    private var size = 0
+
+    val isEmpty: Boolean
+        get() = size == 0
+
+    fun clear() {
+        size = 0
+    }
+
+    fun add(node: Long, key: Int) {
+        if (size == nodes.size) {
+            nodes = nodes.copyOf(size * 2)
+            keys = keys.copyOf(size * 2)
+        }
+
+        var index = size++
+        while (index > 0) {
+            val parent = (index - 1) ushr 1
+            if (keys[parent] <= key) {
+                break
+            }
+
+            nodes[index] = nodes[parent]
+            keys[index] = keys[parent]
+            index = parent
+        }
+
+        nodes[index] = node
+        keys[index] = key
+    }
+
+    fun poll(): Long {
+        val result = nodes[0]
+        val lastNode = nodes[--size]
+        val lastKey = keys[size]
+
+        var index = 0
+        while (true) {
+            var child = index * 2 + 1
+            if (child >= size) {
+                break
+            }
+
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++
+            }
+
+            if (keys[child] >= lastKey) {
+                break
+            }
+
+            nodes[index] = nodes[child]
+            keys[index] = keys[child]
+            index = child
+        }
+
+        nodes[index] = lastNode
+        keys[index] = lastKey
+        return result
+    }
+
+}
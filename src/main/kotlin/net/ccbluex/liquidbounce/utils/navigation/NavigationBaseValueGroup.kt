@@ -41,11 +41,23 @@ import net.minecraft.world.phys.Vec3
 abstract class NavigationBaseValueGroup<T>(
     parent: EventListener? = null,
     name: String,
-    enabled: Boolean
+    enabled: Boolean,
+    defaultPathfinding: Boolean = false,
 ) : ToggleableValueGroup(parent, name, enabled) {
 
     private val autoAction by multiEnumChoice("Auto", AutoAction.entries)
 
+    private val navigator = PathNavigator()
+
+    /**
+     * Walks along a path around obstacles instead of straight towards the goal
+     */
+    private val pathfinding by boolean("Pathfinding", defaultPathfinding).onChanged { enabled ->
+        if (!enabled) {
+            navigator.reset()
+        }
+    }
+
     private inline val autoJump get() = AutoAction.JUMP in autoAction
     private inline val autoSwim get() = AutoAction.SWIM in autoAction
     private inline val autoSprint get() = AutoAction.SPRINT in autoAction
@@ -111,8 +123,27 @@ abstract class NavigationBaseValueGroup<T>(
             ModuleDebug.DebuggedPoint(goal, Color4b.BLUE, size = 0.4)
         )
 
-        event.directionalInput = calculateDirectionalInput(event.directionalInput, goal)
+        // Falls back to the goal itself while no path is known
+        val waypoint = if (pathfinding) navigator.nextWaypoint(player.position(), goal) else null
+        if (waypoint != null) {
+            ModuleDebug.debugGeometry(
+                this,
+                "Waypoint",
+                ModuleDebug.DebuggedPoint(waypoint, Color4b.GREEN, size = 0.3)
+            )
+        }
+
+        event.directionalInput = calculateDirectionalInput(event.directionalInput, waypoint ?: goal)
         handleMovementAssist(event, context)
+
+        if (autoJump && waypoint != null && waypoint.y > player.y + 0.5 && player.onGround()) {
+            event.jump = true
+        }
+    }
+
+    override fun onDisabled() {
+        navigator.reset()
+        super.onDisabled()
     }
 
     @Suppress("unused")
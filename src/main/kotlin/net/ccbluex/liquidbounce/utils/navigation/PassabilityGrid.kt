@@ -0,0 +1,189 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.navigation
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.ccbluex.fastutil.referenceHashSetOf
+import net.ccbluex.liquidbounce.utils.block.ChunkScanner
+import net.minecraft.core.BlockPos
+import net.minecraft.core.Direction
+import net.minecraft.core.SectionPos
+import net.minecraft.tags.BlockTags
+import net.minecraft.tags.FluidTags
+import net.minecraft.world.level.ChunkPos
+import net.minecraft.world.level.EmptyBlockGetter
+import net.minecraft.world.level.block.Block
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.level.chunk.LevelChunk
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import java.util.function.Predicate
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Number of block changes [PassabilityGrid.collectChanges] can catch up on
+ */
+private const val CHANGE_LOG_SIZE = 1024
+
+private val DANGER_BLOCKS: Set<Block> = referenceHashSetOf(
+    Blocks.CACTUS,
+    Blocks.MAGMA_BLOCK,
+    Blocks.SWEET_BERRY_BUSH,
+    Blocks.COBWEB,
+    Blocks.POWDER_SNOW,
+    Blocks.WITHER_ROSE,
+    Blocks.CAMPFIRE,
+    Blocks.SOUL_CAMPFIRE,
+)
+
+/**
+ * [PathCell]s of the loaded chunks, kept up to date by [ChunkScanner].
+ *
+ * The grid is only filled while it is subscribed, see [PathfindingService.acquire].
+ * Sections which contain only [PathCell.AIR] are not stored.
+ */
+object PassabilityGrid : PassabilityView, ChunkScanner.BlockChangeSubscriber {
+
+    private val sections = Long2ObjectOpenHashMap<ByteArray>()
+    private val loadedChunks = LongOpenHashSet()
+    private val lock = ReentrantReadWriteLock()
+
+    private val changeLog = LongArray(CHANGE_LOG_SIZE)
+
+    /**
+     * Number of cell changes by block updates, guarded by [changeLog]
+     */
+    private var changeCount = 0L
+
+    override val debugName: String
+        get() = "PassabilityGrid"
+
+    override val chunkScanFilter: Predicate<BlockState> = Predicate { !it.isAir }
+
+    override fun getSection(sectionX: Int, sectionY: Int, sectionZ: Int): ByteArray? =
+        lock.read { sections[SectionPos.asLong(sectionX, sectionY, sectionZ)] }
+
+    override fun isLoaded(chunkX: Int, chunkZ: Int): Boolean =
+        lock.read { ChunkPos.asLong(chunkX, chunkZ) in loadedChunks }
+
+    val changeVersion: Long
+        get() = synchronized(changeLog) { changeCount }
+
+    /**
+     * Adds the positions whose cell changed since [since] to [dest].
+     *
+     * @return the new version to pass next time, or -1 if more changes happened than were kept.
+     * In that case, the caller has to treat everything as changed and continue with [changeVersion].
+     */
+    fun collectChanges(since: Long, dest: LongArrayList): Long = synchronized(changeLog) {
+        if (changeCount - since > CHANGE_LOG_SIZE) {
+            return -1
+        }
+
+        for (i in since until changeCount) {
+            dest.add(changeLog[(i % CHANGE_LOG_SIZE).toInt()])
+        }
+        changeCount
+    }
+
+    override fun recordBlock(pos: BlockPos, state: BlockState, cleared: Boolean) {
+        val cell = classify(state)
+        val key = SectionPos.asLong(pos)
+        val index = (((pos.y and 15) shl 4 or (pos.z and 15)) shl 4) or (pos.x and 15)
+
+        val section = lock.read { sections[key] } ?: run {
+            if (cell == PathCell.AIR) {
+                return
+            }
+
+            lock.write {
+                // Ignore updates of chunks which are not loaded (anymore)
+                if (ChunkPos.asLong(pos.x shr 4, pos.z shr 4) !in loadedChunks) {
+                    return
+                }
+
+                sections.computeIfAbsent(key) { ByteArray(16 * 16 * 16) }
+            }
+        }
+
+        val previous = section[index]
+        section[index] = cell
+
+        if (!cleared && previous != cell) {
+            synchronized(changeLog) {
+                changeLog[(changeCount % CHANGE_LOG_SIZE).toInt()] = pos.asLong()
+                changeCount++
+            }
+        }
+    }
+
+    override fun chunkUpdate(chunk: LevelChunk) {
+        lock.write {
+            removeColumn(chunk.pos.x, chunk.pos.z, chunk.minSectionY, chunk.maxSectionY)
+            loadedChunks.add(chunk.pos.toLong())
+        }
+    }
+
+    override fun clearChunk(pos: ChunkPos) {
+        lock.write {
+            loadedChunks.remove(pos.toLong())
+            sections.keys.removeIf { SectionPos.x(it) == pos.x && SectionPos.z(it) == pos.z }
+        }
+    }
+
+    private fun removeColumn(chunkX: Int, chunkZ: Int, minSectionY: Int, maxSectionY: Int) {
+        for (sectionY in minSectionY..maxSectionY) {
+            sections.remove(SectionPos.asLong(chunkX, sectionY, chunkZ))
+        }
+    }
+
+    override fun clearAllChunks() {
+        lock.write {
+            sections.clear()
+            loadedChunks.clear()
+        }
+    }
+
+    private fun classify(state: BlockState): Byte {
+        if (state.isAir) {
+            return PathCell.AIR
+        }
+
+        val fluid = state.fluidState
+        if (fluid.`is`(FluidTags.LAVA) || state.block in DANGER_BLOCKS || state.`is`(BlockTags.FIRE)) {
+            return PathCell.DANGER
+        }
+
+        val shape = state.getCollisionShape(EmptyBlockGetter.INSTANCE, BlockPos.ZERO)
+        if (shape.isEmpty) {
+            return if (fluid.`is`(FluidTags.WATER)) PathCell.WATER else PathCell.AIR
+        }
+
+        val height = shape.max(Direction.Axis.Y)
+        return when {
+            height > 1.0 -> PathCell.TALL
+            height <= 0.5 -> PathCell.LOW
+            else -> PathCell.SOLID
+        }
+    }
+
+}
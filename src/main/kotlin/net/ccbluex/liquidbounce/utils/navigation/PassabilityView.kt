@@ -0,0 +1,72 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.navigation
+
+/**
+ * Cell types of a [PassabilityView]
+ */
+object PathCell {
+    /**
+     * The chunk is not loaded
+     */
+    const val UNKNOWN: Byte = -1
+
+    /**
+     * No collision, e.g. air, grass or crops
+     */
+    const val AIR: Byte = 0
+
+    /**
+     * Full collision, can be stood on
+     */
+    const val SOLID: Byte = 1
+
+    /**
+     * Collision of at most half a block, e.g. carpets or slabs. The player stands inside of it
+     */
+    const val LOW: Byte = 2
+
+    /**
+     * Collision higher than a block, e.g. fences and walls. Can neither be passed nor stood on
+     */
+    const val TALL: Byte = 3
+
+    const val WATER: Byte = 4
+
+    /**
+     * Hurts or traps the player, e.g. lava, fire, cactus or cobwebs
+     */
+    const val DANGER: Byte = 5
+}
+
+/**
+ * Read access to a grid of [PathCell]s, split into 16x16x16 sections.
+ * Implementations have to be safe to read from worker threads.
+ */
+interface PassabilityView {
+
+    /**
+     * @return the cells of the section indexed by `(y shl 4 or z) shl 4 or x`, or null if the section contains
+     * only [PathCell.AIR] or is not loaded. Must not be modified.
+     */
+    fun getSection(sectionX: Int, sectionY: Int, sectionZ: Int): ByteArray?
+
+    fun isLoaded(chunkX: Int, chunkZ: Int): Boolean
+
+}
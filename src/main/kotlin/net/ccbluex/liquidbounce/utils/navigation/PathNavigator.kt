@@ -0,0 +1,235 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.navigation
+
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import net.minecraft.core.BlockPos
+import net.minecraft.world.phys.Vec3
+import java.util.concurrent.CompletableFuture
+
+private val EMPTY_PATH = LongArray(0)
+
+/**
+ * Distance at which the player has to be from the current waypoint before the path is recomputed
+ */
+private const val MAX_DEVIATION_SQ = 4.0 * 4.0
+
+/**
+ * Delay before a path which ended short of the goal is searched again
+ */
+private const val RETRY_DELAY_MS = 1000L
+
+/**
+ * Follows paths of the [PathfindingService] towards a goal that may change every tick.
+ *
+ * A path is requested whenever the goal moves to another block. While a search is running, the previous path
+ * (if any) keeps being followed. Block changes on the remaining path only recompute the part of the path after the
+ * last intact waypoint.
+ *
+ * Must only be used on the client thread.
+ *
+ * @param goalRange see [GridPathfinder.findPath]
+ */
+class PathNavigator(private val goalRange: Int = 1) {
+
+    private var acquired = false
+
+    private var goal = Long.MIN_VALUE
+
+    var path: LongArray = EMPTY_PATH
+        private set
+
+    /**
+     * Index of the waypoint the player is currently walking to
+     */
+    var index = 0
+        private set
+
+    private var pending: CompletableFuture<LongArray>? = null
+
+    /**
+     * Waypoints which stay in front of the result of [pending]
+     */
+    private var pendingPrefix = EMPTY_PATH
+
+    private var changeVersion = 0L
+    private val changes = LongArrayList()
+
+    private var lastRequest = 0L
+
+    /**
+     * @param position the current position of the player
+     * @return the waypoint to walk to (bottom center of the block), or null while there is no path
+     */
+    fun nextWaypoint(position: Vec3, goal: Vec3): Vec3? {
+        if (!acquired) {
+            PathfindingService.acquire()
+            acquired = true
+            changeVersion = PassabilityGrid.changeVersion
+        }
+
+        val feet = BlockPos.containing(position).asLong()
+        val goalKey = BlockPos.containing(goal).asLong()
+        if (goalKey != this.goal) {
+            this.goal = goalKey
+            path = EMPTY_PATH
+            index = 0
+            request(feet, EMPTY_PATH)
+        }
+
+        pollPending()
+        repairChangedWaypoints(feet)
+
+        while (index < path.size && isReached(position, path[index])) {
+            index++
+        }
+
+        if (index >= path.size) {
+            // Either the goal was reached or the path ended short of it
+            if (pending == null && System.currentTimeMillis() - lastRequest > RETRY_DELAY_MS) {
+                request(feet, EMPTY_PATH)
+            }
+            return null
+        }
+
+        val waypoint = path[index]
+        val x = BlockPos.getX(waypoint) + 0.5
+        val z = BlockPos.getZ(waypoint) + 0.5
+        if (pending == null && position.distanceToSqr(x, position.y, z) > MAX_DEVIATION_SQ) {
+            request(feet, EMPTY_PATH)
+        }
+
+        return Vec3(x, BlockPos.getY(waypoint).toDouble(), z)
+    }
+
+    private fun isReached(position: Vec3, waypoint: Long): Boolean {
+        val dx = BlockPos.getX(waypoint) + 0.5 - position.x
+        val dz = BlockPos.getZ(waypoint) + 0.5 - position.z
+        val dy = BlockPos.getY(waypoint) - position.y
+        return dx * dx + dz * dz < 0.35 * 0.35 && dy > -1.0 && dy < 0.6
+    }
+
+    private fun request(start: Long, prefix: LongArray) {
+        pending?.cancel(false)
+        pending = PathfindingService.findPath(start, goal, goalRange)
+        pendingPrefix = prefix
+        lastRequest = System.currentTimeMillis()
+    }
+
+    private fun pollPending() {
+        val pending = pending ?: return
+        if (!pending.isDone) {
+            return
+        }
+
+        this.pending = null
+        val prefix = pendingPrefix
+        pendingPrefix = EMPTY_PATH
+
+        // Cancelled by a world change
+        if (pending.isCompletedExceptionally) {
+            return
+        }
+
+        val result = pending.getNow(EMPTY_PATH)
+        if (prefix.isEmpty()) {
+            path = result
+            index = 0
+        } else {
+            // The player is still on the intact part of the path
+            path = prefix + result
+            index = index.coerceAtMost(prefix.size)
+        }
+    }
+
+    /**
+     * Recomputes the path behind the first remaining waypoint whose blocks have changed
+     */
+    private fun repairChangedWaypoints(feet: Long) {
+        changes.clear()
+        val version = PassabilityGrid.collectChanges(changeVersion, changes)
+        if (version < 0) {
+            changeVersion = PassabilityGrid.changeVersion
+            request(feet, EMPTY_PATH)
+            return
+        }
+        changeVersion = version
+
+        if (changes.isEmpty || index >= path.size) {
+            return
+        }
+
+        var broken = -1
+        for (i in index until path.size) {
+            if (affects(path[i])) {
+                broken = i
+                break
+            }
+        }
+
+        if (broken < 0) {
+            return
+        }
+
+        if (broken > index) {
+            // Keep walking the intact part, the new part starts at its last waypoint
+            request(path[broken - 1], path.copyOf(broken))
+        } else {
+            path = EMPTY_PATH
+            index = 0
+            request(feet, EMPTY_PATH)
+        }
+    }
+
+    /**
+     * If any of the [changes] is at the feet, head or floor of [waypoint]
+     */
+    private fun affects(waypoint: Long): Boolean {
+        val x = BlockPos.getX(waypoint)
+        val y = BlockPos.getY(waypoint)
+        val z = BlockPos.getZ(waypoint)
+
+        for (i in 0 until changes.size) {
+            val change = changes.getLong(i)
+            if (BlockPos.getX(change) == x && BlockPos.getZ(change) == z && BlockPos.getY(change) - y in -1..1) {
+                return true
+            }
+        }
+
+        return false
+    }
+
+    /**
+     * Drops the path and releases the [PathfindingService]
+     */
+    fun reset() {
+        pending?.cancel(false)
+        pending = null
+        pendingPrefix = EMPTY_PATH
+        path = EMPTY_PATH
+        index = 0
+        goal = Long.MIN_VALUE
+
+        if (acquired) {
+            acquired = false
+            PathfindingService.release()
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.navigation
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineExceptionHandler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.future.future
+import net.ccbluex.liquidbounce.event.EventListener
+import net.ccbluex.liquidbounce.event.events.WorldChangeEvent
+import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.utils.block.ChunkScanner
+import net.ccbluex.liquidbounce.utils.client.logger
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Computes walking paths on the [PassabilityGrid] on a dedicated worker.
+ *
+ * Requests are handled one after another, so a single [GridPathfinder] is reused for all of them.
+ */
+object PathfindingService : EventListener {
+
+    private val pathfinder = GridPathfinder(PassabilityGrid)
+
+    private var users = 0
+
+    private val job = SupervisorJob()
+
+    private val scope = CoroutineScope(
+        Dispatchers.Default.limitedParallelism(1) + job + CoroutineExceptionHandler { _, throwable ->
+            if (throwable !is CancellationException) {
+                logger.warn("Pathfinding error", throwable)
+            }
+        }
+    )
+
+    /**
+     * Subscribes the [PassabilityGrid] to the [ChunkScanner] for the first user. Must be called on the client thread.
+     */
+    fun acquire() {
+        if (users++ == 0) {
+            ChunkScanner.subscribe(PassabilityGrid)
+        }
+    }
+
+    /**
+     * Unsubscribes the [PassabilityGrid] after the last user. Must be called on the client thread.
+     */
+    fun release() {
+        check(users > 0) { "PathfindingService released more often than acquired" }
+
+        if (--users == 0) {
+            job.cancelChildren()
+            ChunkScanner.unsubscribe(PassabilityGrid)
+        }
+    }
+
+    /**
+     * @see GridPathfinder.findPath
+     */
+    fun findPath(start: Long, goal: Long, goalRange: Int): CompletableFuture<LongArray> = scope.future {
+        pathfinder.findPath(start, goal, goalRange)
+    }
+
+    @Suppress("unused")
+    private val worldChangeHandler = handler<WorldChangeEvent> {
+        job.cancelChildren()
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.world.snapshot
+
+import net.minecraft.core.BlockPos
+import net.minecraft.world.level.BlockGetter
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.level.chunk.LevelChunkSection
+import net.minecraft.world.level.chunk.PalettedContainer
+import net.minecraft.world.phys.shapes.VoxelShape
+import java.util.function.Predicate
+
+/**
+ * Read-only copy of the block states of one [LevelChunkSection].
+ *
+ * Sections which consist of a single state (e.g. air or stone) do not copy the palette at all.
+ * A snapshot never changes after it was taken, so it can be read from any thread. When the live section changes,
+ * [WorldSnapshots] takes a new snapshot with a higher [version] instead.
+ *
+ * @param sectionPos [net.minecraft.core.SectionPos.asLong]
+ */
+class SectionSnapshot private constructor(
+    val sectionPos: Long,
+    val version: Long,
+    private val states: PalettedContainer<BlockState>?,
+    private val uniformState: BlockState?,
+) {
+
+    /**
+     * Collision shapes of the section indexed by [index], filled on first access.
+     * Concurrent fills compute the same shape, so races only waste work.
+     */
+    private var collisionShapes: Array<VoxelShape?>? = null
+
+    /**
+     * If every position of the section has the same state
+     */
+    val isUniform: Boolean
+        get() = uniformState != null
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param y local y coordinate (0-15)
+     * @param z local z coordinate (0-15)
+     */
+    fun getBlockState(x: Int, y: Int, z: Int): BlockState =
+        uniformState ?: states!!.get(x, y, z)
+
+    /**
+     * @see LevelChunkSection.maybeHas
+     */
+    fun maybeHas(predicate: Predicate<BlockState>): Boolean =
+        if (uniformState != null) predicate.test(uniformState) else states!!.maybeHas(predicate)
+
+    /**
+     * Collision shape of the block at [pos], which has to be inside this section.
+     *
+     * @param getter the snapshot the section belongs to, used by blocks whose shape depends on their neighbours
+     */
+    fun getCollisionShape(getter: BlockGetter, pos: BlockPos): VoxelShape {
+        val shapes = collisionShapes ?: arrayOfNulls<VoxelShape>(16 * 16 * 16).also { collisionShapes = it }
+        val index = index(pos.x and 15, pos.y and 15, pos.z and 15)
+
+        return shapes[index] ?: getBlockState(pos.x and 15, pos.y and 15, pos.z and 15)
+            .getCollisionShape(getter, pos)
+            .also { shapes[index] = it }
+    }
+
+    private fun index(x: Int, y: Int, z: Int) = (y shl 4 or z) shl 4 or x
+
+    companion object {
+
+        /**
+         * Copies the states of [section]. Must be called on the thread which modifies the section.
+         */
+        @JvmStatic
+        fun of(sectionPos: Long, version: Long, section: LevelChunkSection): SectionSnapshot {
+            if (section.hasOnlyAir()) {
+                return SectionSnapshot(sectionPos, version, null, Blocks.AIR.defaultBlockState())
+            }
+
+            val first = section.getBlockState(0, 0, 0)
+            return if (section.maybeHas { it !== first }) {
+                SectionSnapshot(sectionPos, version, section.states.copy(), null)
+            } else {
+                SectionSnapshot(sectionPos, version, null, first)
+            }
+        }
+
+    }
+
+}
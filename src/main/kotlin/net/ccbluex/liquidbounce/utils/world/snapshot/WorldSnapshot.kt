@@ -0,0 +1,84 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.world.snapshot
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import net.minecraft.core.BlockPos
+import net.minecraft.core.SectionPos
+import net.minecraft.world.level.BlockGetter
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.block.entity.BlockEntity
+import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.level.material.FluidState
+import net.minecraft.world.phys.shapes.Shapes
+import net.minecraft.world.phys.shapes.VoxelShape
+
+/**
+ * Consistent read-only view of a part of the client world, taken by [WorldSnapshots.capture].
+ *
+ * All reads are served from [SectionSnapshot]s, so a snapshot can be queried from worker threads while the
+ * live world keeps changing. Positions outside the captured chunks read as air, use [isCaptured] to tell them apart.
+ * Block entities are not captured.
+ */
+class WorldSnapshot internal constructor(
+    private val sections: Long2ObjectOpenHashMap<SectionSnapshot>,
+    private val minY: Int,
+    private val height: Int,
+) : BlockGetter {
+
+    val sectionCount: Int
+        get() = sections.size
+
+    /**
+     * @return the snapshot of the section, or null if it was not captured
+     */
+    fun getSection(sectionX: Int, sectionY: Int, sectionZ: Int): SectionSnapshot? =
+        sections[SectionPos.asLong(sectionX, sectionY, sectionZ)]
+
+    fun isCaptured(x: Int, y: Int, z: Int): Boolean =
+        getSection(x shr 4, y shr 4, z shr 4) != null
+
+    fun getBlockState(x: Int, y: Int, z: Int): BlockState {
+        if (y < minY || y >= minY + height) {
+            return Blocks.VOID_AIR.defaultBlockState()
+        }
+
+        val section = getSection(x shr 4, y shr 4, z shr 4) ?: return Blocks.AIR.defaultBlockState()
+        return section.getBlockState(x and 15, y and 15, z and 15)
+    }
+
+    override fun getBlockState(pos: BlockPos): BlockState = getBlockState(pos.x, pos.y, pos.z)
+
+    override fun getFluidState(pos: BlockPos): FluidState = getBlockState(pos).fluidState
+
+    override fun getBlockEntity(pos: BlockPos): BlockEntity? = null
+
+    /**
+     * Cached [BlockState.getCollisionShape] with an empty collision context
+     */
+    fun getCollisionShape(pos: BlockPos): VoxelShape {
+        val section = getSection(pos.x shr 4, pos.y shr 4, pos.z shr 4) ?: return Shapes.empty()
+        return section.getCollisionShape(this, pos)
+    }
+
+    override fun getHeight(): Int = height
+
+    override fun getMinY(): Int = minY
+
+}
@@ -0,0 +1,175 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.world.snapshot
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import net.ccbluex.liquidbounce.event.EventListener
+import net.ccbluex.liquidbounce.event.events.BlockChangeEvent
+import net.ccbluex.liquidbounce.event.events.ChunkDeltaUpdateEvent
+import net.ccbluex.liquidbounce.event.events.ChunkLoadEvent
+import net.ccbluex.liquidbounce.event.events.ChunkUnloadEvent
+import net.ccbluex.liquidbounce.event.events.GameTickEvent
+import net.ccbluex.liquidbounce.event.events.WorldChangeEvent
+import net.ccbluex.liquidbounce.event.handler
+import net.ccbluex.liquidbounce.features.module.MinecraftShortcuts
+import net.ccbluex.liquidbounce.utils.kotlin.EventPriorityConvention.FIRST_PRIORITY
+import net.minecraft.core.SectionPos
+import net.minecraft.world.level.chunk.LevelChunk
+
+/**
+ * Sections which were not part of a capture for this many ticks are dropped from the cache
+ */
+private const val EVICT_AFTER_TICKS = 200
+
+/**
+ * Takes [WorldSnapshot]s of the client world for consumers running on worker threads.
+ *
+ * Section snapshots are copy-on-write: a section is only copied when it is captured for the first time after it
+ * changed, every later capture shares the cached copy. Block updates, chunk loads and unloads drop the cached copy of
+ * the affected sections, so the next capture takes a new one with a higher [SectionSnapshot.version].
+ *
+ * Capturing has to happen on the client thread, the returned snapshots can be read from anywhere.
+ */
+object WorldSnapshots : EventListener, MinecraftShortcuts {
+
+    private class CachedSection(val snapshot: SectionSnapshot, var lastUsedTick: Int)
+
+    /**
+     * [SectionPos.asLong] -> cached copy of the live section
+     */
+    private val cache = Long2ObjectOpenHashMap<CachedSection>()
+
+    private var nextVersion = 0L
+
+    private var tick = 0
+
+    /**
+     * Number of sections copied since the last world change
+     */
+    var copiedSections = 0L
+        private set
+
+    val cachedSections: Int
+        get() = cache.size
+
+    /**
+     * Captures all sections of [chunk] up to its highest non-empty section
+     */
+    fun capture(chunk: LevelChunk): WorldSnapshot {
+        checkThread()
+
+        val sections = Long2ObjectOpenHashMap<SectionSnapshot>(chunk.highestFilledSectionIndex + 1)
+        captureChunk(chunk, sections)
+        return WorldSnapshot(sections, chunk.minY, chunk.height)
+    }
+
+    /**
+     * Captures all loaded chunks in the given range of chunk coordinates (inclusive)
+     */
+    fun capture(minChunkX: Int, minChunkZ: Int, maxChunkX: Int, maxChunkZ: Int): WorldSnapshot {
+        checkThread()
+
+        val world = world
+        val sections = Long2ObjectOpenHashMap<SectionSnapshot>()
+        for (chunkX in minChunkX..maxChunkX) {
+            for (chunkZ in minChunkZ..maxChunkZ) {
+                val chunk = world.chunkSource.getChunk(chunkX, chunkZ, false) ?: continue
+                captureChunk(chunk, sections)
+            }
+        }
+
+        return WorldSnapshot(sections, world.minY, world.height)
+    }
+
+    private fun captureChunk(chunk: LevelChunk, dest: Long2ObjectOpenHashMap<SectionSnapshot>) {
+        val chunkPos = chunk.pos
+        for (sectionIndex in 0..chunk.highestFilledSectionIndex) {
+            val sectionPos = SectionPos.asLong(
+                chunkPos.x,
+                chunk.getSectionYFromSectionIndex(sectionIndex),
+                chunkPos.z,
+            )
+
+            val cached = cache.get(sectionPos)
+            val snapshot = if (cached != null) {
+                cached.lastUsedTick = tick
+                cached.snapshot
+            } else {
+                copiedSections++
+                SectionSnapshot.of(sectionPos, nextVersion++, chunk.getSection(sectionIndex)).also {
+                    cache.put(sectionPos, CachedSection(it, tick))
+                }
+            }
+
+            dest.put(sectionPos, snapshot)
+        }
+    }
+
+    private fun checkThread() {
+        check(mc.isSameThread) { "World snapshots must be captured on the client thread" }
+    }
+
+    private fun invalidateColumn(chunkX: Int, chunkZ: Int) {
+        if (cache.isEmpty()) {
+            return
+        }
+
+        val world = mc.level ?: return
+        for (sectionY in world.minSectionY..world.maxSectionY) {
+            cache.remove(SectionPos.asLong(chunkX, sectionY, chunkZ))
+        }
+    }
+
+    @Suppress("unused")
+    private val blockChangeHandler = handler<BlockChangeEvent>(FIRST_PRIORITY) { event ->
+        cache.remove(SectionPos.asLong(event.blockPos))
+    }
+
+    @Suppress("unused")
+    private val chunkDeltaUpdateHandler = handler<ChunkDeltaUpdateEvent>(FIRST_PRIORITY) { event ->
+        // All updates are in one section
+        event.packet.runUpdates { pos, _ -> cache.remove(SectionPos.asLong(pos)) }
+    }
+
+    @Suppress("unused")
+    private val chunkLoadHandler = handler<ChunkLoadEvent>(FIRST_PRIORITY) { event ->
+        invalidateColumn(event.x, event.z)
+    }
+
+    @Suppress("unused")
+    private val chunkUnloadHandler = handler<ChunkUnloadEvent>(FIRST_PRIORITY) { event ->
+        invalidateColumn(event.pos.x, event.pos.z)
+    }
+
+    @Suppress("unused")
+    private val tickHandler = handler<GameTickEvent> {
+        tick++
+
+        if (tick % 20 == 0 && cache.isNotEmpty()) {
+            cache.values.removeIf { tick - it.lastUsedTick > EVICT_AFTER_TICKS }
+        }
+    }
+
+    @Suppress("unused")
+    private val worldChangeHandler = handler<WorldChangeEvent>(FIRST_PRIORITY) {
+        cache.clear()
+        copiedSections = 0L
+    }
+
+}
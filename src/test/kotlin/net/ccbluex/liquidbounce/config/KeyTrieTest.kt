@@ -0,0 +1,68 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.config
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class KeyTrieTest {
+
+    private val trie = KeyTrie().apply {
+        add("liquidbounce.module.killAura.range")
+        add("liquidbounce.module.killAura.rotations.turnSpeed")
+        add("liquidbounce.module.killAuraLegit.range")
+        add("liquidbounce.module.fly.mode")
+        add("liquidbounce.theme")
+    }
+
+    private fun keys(prefix: String) = trie.keysWithPrefix(prefix).toSortedSet()
+
+    @Test
+    fun `blank prefix yields all keys`() {
+        assertEquals(5, keys("").size)
+        assertEquals(5, trie.size)
+    }
+
+    @Test
+    fun `complete segments`() {
+        assertEquals(
+            sortedSetOf("liquidbounce.module.killAura.range", "liquidbounce.module.killAura.rotations.turnSpeed"),
+            keys("liquidbounce.module.killaura.")
+        )
+    }
+
+    @Test
+    fun `incomplete last segment ignores case`() {
+        assertEquals(
+            sortedSetOf(
+                "liquidbounce.module.killAura.range",
+                "liquidbounce.module.killAura.rotations.turnSpeed",
+                "liquidbounce.module.killAuraLegit.range",
+            ),
+            keys("LiquidBounce.Module.KillA")
+        )
+    }
+
+    @Test
+    fun `unknown prefix yields nothing`() {
+        assertEquals(emptySet(), keys("liquidbounce.modules."))
+        assertEquals(emptySet(), keys("liquidbounce.theme.x"))
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.collection
+
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class TimingWheelTest {
+
+    @Test
+    fun testFiresAtTargetTick() {
+        val wheel = TimingWheel<Long>()
+        val random = Random(42)
+        val targets = LongArrayList()
+
+        repeat(2000) {
+            val target = when (it % 4) {
+                0 -> random.nextLong(1, 64)
+                1 -> random.nextLong(64, 4096)
+                2 -> random.nextLong(4096, 300_000)
+                else -> random.nextLong(1, 20_000_000)
+            }
+            targets.add(target)
+            wheel.schedule(target, target)
+        }
+
+        val fired = LongArrayList()
+        while (!wheel.isEmpty()) {
+            wheel.advance { target ->
+                assertEquals(wheel.currentTick, target)
+                fired.add(target)
+            }
+        }
+
+        assertEquals(targets.size, fired.size)
+        assertEquals(targets.toLongArray().sorted(), fired.toLongArray().toList())
+    }
+
+    @Test
+    fun testScheduleWhileAdvancing() {
+        val wheel = TimingWheel<Int>()
+        var fired = 0
+
+        wheel.schedule(1, 0)
+        repeat(200) {
+            wheel.advance { delay ->
+                fired++
+                wheel.schedule(wheel.currentTick + delay + 1, delay + 1)
+            }
+        }
+
+        // Fires at ticks 1, 2, 4, 7, 11, ... so 20 times within 200 ticks
+        assertEquals(20, fired)
+        assertEquals(1, wheel.size)
+    }
+
+    @Test
+    fun testPastTargetFiresNextTick() {
+        val wheel = TimingWheel<String>()
+        repeat(10) { wheel.advance { } }
+
+        wheel.schedule(3, "late")
+
+        var fired = false
+        wheel.advance { fired = true }
+        assertTrue(fired)
+        assertTrue(wheel.isEmpty())
+    }
+
+}
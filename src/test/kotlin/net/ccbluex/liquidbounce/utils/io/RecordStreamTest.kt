@@ -0,0 +1,75 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.ccbluex.liquidbounce.utils.io
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class RecordStreamTest {
+
+    private val folder = Files.createTempDirectory("record-stream").toFile().apply { deleteOnExit() }
+
+    private fun roundTrip(compress: Boolean, segmentBytes: Long): Pair<List<File>, List<String>> {
+        val stream = RecordStream<String>(folder, "test-$compress", segmentBytes = segmentBytes, compress = compress) {
+            it.encodeToByteArray()
+        }
+
+        repeat(1000) { stream.offer("record-$it-" + "x".repeat(it % 300)) }
+
+        val segments = stream.close().get(10, TimeUnit.SECONDS)
+        val records = mutableListOf<String>()
+        RecordStream.readRecords(segments) { records += it.decodeToString() }
+
+        return segments to records
+    }
+
+    @Test
+    fun `records survive rotation in order`() {
+        val (segments, records) = roundTrip(compress = false, segmentBytes = 4096)
+
+        assertTrue(segments.size > 1)
+        assertEquals(List(1000) { "record-$it-" + "x".repeat(it % 300) }, records)
+    }
+
+    @Test
+    fun `compressed segments are read back`() {
+        val (_, records) = roundTrip(compress = true, segmentBytes = 64L shl 20)
+
+        assertEquals(1000, records.size)
+        assertEquals("record-999-" + "x".repeat(999 % 300), records.last())
+    }
+
+    @Test
+    fun `full stream drops records`() {
+        val stream = RecordStream<String>(folder, "bounded", capacity = 4) { it.encodeToByteArray() }
+
+        // The writer drains every 100ms, so these are offered before it gets to run
+        val accepted = (0 until 10).count { stream.offer("record-$it") }
+        stream.close().get(10, TimeUnit.SECONDS)
+
+        assertTrue(stream.dropped > 0)
+        assertEquals(accepted.toLong(), stream.recorded)
+        assertEquals(10L - accepted, stream.dropped)
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of LiquidBounce (https://github.com/CCBlueX/LiquidBounce)
+ *
+ * Copyright (c) 2015 - 2026 CCBlueX
+ *
+ * LiquidBounce is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LiquidBounce is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LiquidBounce. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.ccbluex.liquidbounce.utils.navigation
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import net.minecraft.core.BlockPos
+import net.minecraft.core.SectionPos
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class GridPathfinderTest {
+
+    /**
+     * Chunks -2..1 are loaded, with a solid floor at y = 63
+     */
+    private class TestView : PassabilityView {
+        private val sections = Long2ObjectOpenHashMap<ByteArray>()
+
+        init {
+            for (x in -32..31) {
+                for (z in -32..31) {
+                    set(x, 63, z, PathCell.SOLID)
+                }
+            }
+        }
+
+        fun set(x: Int, y: Int, z: Int, cell: Byte) {
+            val section = sections.computeIfAbsent(SectionPos.asLong(x shr 4, y shr 4, z shr 4)) { ByteArray(4096) }
+            section[(((y and 15) shl 4 or (z and 15)) shl 4) or (x and 15)] = cell
+        }
+
+        override fun getSection(sectionX: Int, sectionY: Int, sectionZ: Int): ByteArray? =
+            sections[SectionPos.asLong(sectionX, sectionY, sectionZ)]
+
+        override fun isLoaded(chunkX: Int, chunkZ: Int) = chunkX in -2..1 && chunkZ in -2..1
+    }
+
+    private fun LongArray.positions() = map { BlockPos.of(it) }
+
+    @Test
+    fun testStraightPath() {
+        val path = GridPathfinder(TestView())
+            .findPath(BlockPos.asLong(0, 64, 0), BlockPos.asLong(8, 64, 0), goalRange = 0)
+            .positions()
+
+        assertEquals(8, path.size)
+        assertEquals(BlockPos(8, 64, 0), path.last())
+        assertTrue(path.all { it.y == 64 && it.z == 0 })
+    }
+
+    @Test
+    fun testPathThroughGapInWall() {
+        val view = TestView()
+        for (z in -32..31) {
+            if (z != 10) {
+                view.set(5, 64, z, PathCell.TALL)
+            }
+        }
+
+        val path = GridPathfinder(view)
+            .findPath(BlockPos.asLong(0, 64, 0), BlockPos.asLong(10, 64, 0), goalRange = 0)
+            .positions()
+
+        assertEquals(BlockPos(10, 64, 0), path.last())
+        assertTrue(BlockPos(5, 64, 10) in path)
+    }
+
+    @Test
+    fun testJumpAndFall() {
+        val view = TestView()
+        view.set(3, 64, 0, PathCell.SOLID)
+
+        val up = GridPathfinder(view)
+            .findPath(BlockPos.asLong(0, 64, 0), BlockPos.asLong(3, 65, 0), goalRange = 0)
+            .positions()
+        assertEquals(BlockPos(3, 65, 0), up.last())
+
+        val down = GridPathfinder(view)
+            .findPath(BlockPos.asLong(3, 65, 0), BlockPos.asLong(6, 64, 0), goalRange = 0)
+            .positions()
+        assertEquals(BlockPos(6, 64, 0), down.last())
+    }
+
+    @Test
+    fun testUnreachableGoalLeadsClosest() {
+        val path = GridPathfinder(TestView())
+            .findPath(BlockPos.asLong(0, 64, 0), BlockPos.asLong(60, 64, 0), goalRange = 0)
+            .positions()
+
+        // The floor ends at the last loaded block
+        assertEquals(BlockPos(31, 64, 0), path.last())
+    }
+
+}